@@ -0,0 +1,63 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Minimal {@link Platform} over a temporary game directory, enough to construct ModSync's
+ * managers outside Minecraft. Networking and UI calls do nothing.
+ */
+public class BenchmarkPlatform implements Platform {
+    private final boolean server;
+    private final Path modsDir;
+    private final List<ModInfo> mods;
+    private final PacketHandlerRegistry packetHandlers = new PacketHandlerRegistry();
+
+    public BenchmarkPlatform(boolean server, List<ModInfo> mods) throws IOException {
+        this.server = server;
+        this.modsDir = Files.createTempDirectory("modsync-bench").resolve("mods");
+        this.mods = mods;
+        Files.createDirectories(modsDir);
+    }
+
+    /**
+     * {@code count} synthetic mods with stable IDs, versions and file names
+     */
+    public static List<ModInfo> syntheticMods(int count) {
+        List<ModInfo> mods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            mods.add(new ModInfo("mod" + i, "1." + (i % 20) + ".0", "Mod " + i, "mod" + i + "-1." + (i % 20) + ".0.jar"));
+        }
+        return mods;
+    }
+
+    @Override public LoaderType getLoaderType() { return LoaderType.FABRIC; }
+    @Override public boolean isClient() { return !server; }
+    @Override public boolean isServer() { return server; }
+    @Override public Path getModsDirectory() { return modsDir; }
+    @Override public List<ModInfo> getLoadedMods() { return mods; }
+    @Override public void sendToServer(String channel, byte[] data) {}
+    @Override public void sendToClient(Object player, String channel, byte[] data) {}
+    @Override public int getMaxClientboundPayloadSize() { return 1024 * 1024 - 1024; }
+    @Override public int getMaxServerboundPayloadSize() { return 32767 - 1024; }
+    @Override public void registerPacketHandler(String channel, PacketHandler handler) {
+        packetHandlers.register(channel, handler);
+    }
+    @Override public PacketHandlerRegistry getPacketHandlerRegistry() { return packetHandlers; }
+    @Override public void scheduleRestart() {}
+    @Override public void showNotification(String title, String message, NotificationType type) {}
+    @Override public CompletableFuture<DialogResult> showDialog(String title, String message, List<String> options) {
+        return CompletableFuture.completedFuture(DialogResult.DECLINE);
+    }
+    @Override public String getGameVersion() { return "1.21.1"; }
+    @Override public boolean isModLoaded(String modId) { return false; }
+    @Override public ModInfo getModInfo(String modId) { return null; }
+    @Override public void connectToServer(String serverAddress) {}
+    @Override public String getCurrentServerAddress() { return null; }
+    @Override public void disconnectFromServer(String reason) {}
+    @Override public void disconnectClient(Object connection, String reason) {}
+}
@@ -0,0 +1,65 @@
+package com.rat.modsync.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ModListManager#compareMods} against a server list where roughly one mod in ten has
+ * another version and one in twenty is missing, both with the client's cached index and with a
+ * list that has to be indexed on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompareModsBenchmark {
+    @Param({"50", "500", "5000"})
+    private int modCount;
+
+    private ModListManager modListManager;
+    private List<ModInfo> clientMods;
+    private List<ModInfo> uncachedClientMods;
+    private List<ModInfo> serverMods;
+
+    @Setup
+    public void setup() throws Exception {
+        List<ModInfo> installed = new ArrayList<>(BenchmarkPlatform.syntheticMods(modCount));
+        // Mods the server doesn't run
+        for (int i = 0; i < modCount / 20; i++) {
+            installed.add(new ModInfo("client" + i, "1.0.0", "Client " + i, "client" + i + ".jar"));
+        }
+
+        BenchmarkPlatform platform = new BenchmarkPlatform(false, installed);
+        modListManager = new ModListManager(platform, new ConfigManager(platform));
+        clientMods = modListManager.getClientMods();
+        uncachedClientMods = new ArrayList<>(clientMods);
+
+        serverMods = new ArrayList<>();
+        for (ModInfo mod : BenchmarkPlatform.syntheticMods(modCount)) {
+            int i = Integer.parseInt(mod.getModId().substring(3));
+            serverMods.add(i % 10 == 0 ? new ModInfo(mod.getModId(), "2.0.0", mod.getName(), mod.getFileName()) : mod);
+        }
+        for (int i = 0; i < modCount / 20; i++) {
+            serverMods.add(new ModInfo("server" + i, "1.0.0", "Server " + i, "server" + i + ".jar"));
+        }
+    }
+
+    @Benchmark
+    public ModListManager.ModListComparison compareCachedIndex() {
+        return modListManager.compareMods(clientMods, serverMods);
+    }
+
+    @Benchmark
+    public ModListManager.ModListComparison compareFreshIndex() {
+        return modListManager.compareMods(uncachedClientMods, serverMods);
+    }
+}
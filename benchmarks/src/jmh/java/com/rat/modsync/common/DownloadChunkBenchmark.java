@@ -0,0 +1,45 @@
+package com.rat.modsync.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Framing and parsing of {@link DownloadManager.DownloadChunk} at the chunk sizes ChunkSizer moves
+ * between.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DownloadChunkBenchmark {
+    @Param({"16384", "262144", "1000000"})
+    private int chunkSize;
+
+    private byte[] buffer;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        buffer = new byte[chunkSize];
+        new Random(42).nextBytes(buffer);
+        encoded = DownloadManager.DownloadChunk.encode("examplemod", 7, 7L * chunkSize, buffer, 0, chunkSize, false);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return DownloadManager.DownloadChunk.encode("examplemod", 7, 7L * chunkSize, buffer, 0, chunkSize, false);
+    }
+
+    @Benchmark
+    public DownloadManager.DownloadChunk decode() throws Exception {
+        return DownloadManager.DownloadChunk.decode(encoded);
+    }
+}
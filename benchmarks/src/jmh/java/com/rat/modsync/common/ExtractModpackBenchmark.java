@@ -0,0 +1,88 @@
+package com.rat.modsync.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * {@link DownloadManager#extractModpack} on a synthetic pack of 256 KiB jars, each extracted into
+ * a fresh mods directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExtractModpackBenchmark {
+    private static final int JAR_SIZE = 256 * 1024;
+
+    @Param({"50", "200"})
+    private int jarCount;
+
+    private Path workDir;
+    private Path zipFile;
+    private int run;
+
+    @Setup
+    public void setup() throws Exception {
+        workDir = Files.createTempDirectory("modsync-bench");
+        zipFile = workDir.resolve("modpack.zip");
+
+        // Random bytes, like real jars: deflate gains little and the inflater still has to run
+        Random random = new Random(42);
+        byte[] jar = new byte[JAR_SIZE];
+        try (OutputStream out = Files.newOutputStream(zipFile); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < jarCount; i++) {
+                random.nextBytes(jar);
+                zip.putNextEntry(new ZipEntry("mod" + i + ".jar"));
+                zip.write(jar);
+                zip.closeEntry();
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearRuns() throws IOException {
+        try (Stream<Path> runs = Files.list(workDir)) {
+            for (Path dir : (Iterable<Path>) runs.filter(Files::isDirectory)::iterator) {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public Path extract() throws IOException {
+        Path modsDir = workDir.resolve("run" + run++).resolve("mods");
+        DownloadManager.extractModpack(zipFile, modsDir);
+        return modsDir;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
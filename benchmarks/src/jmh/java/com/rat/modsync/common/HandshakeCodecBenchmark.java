@@ -0,0 +1,54 @@
+package com.rat.modsync.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MessageCodecs#SERVER_HANDSHAKE} with a full manifest: every mod carrying a SHA-256, size
+ * and hash tree root, as a server sends once hashing has finished.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HandshakeCodecBenchmark {
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Param({"50", "500", "5000"})
+    private int modCount;
+
+    private ModSync.ServerHandshake handshake;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        List<ModInfo> mods = new ArrayList<>(modCount);
+        for (ModInfo mod : BenchmarkPlatform.syntheticMods(modCount)) {
+            mods.add(mod.withDownloadInfo(HASH, 1L << 20, null).withHashTreeRoot(HASH));
+        }
+        handshake = new ModSync.ServerHandshake(mods, false, null, null, ModSync.VERSION,
+                List.of(ModSync.FRAGMENT_CHANNEL, ModSync.HANDSHAKE_CHANNEL),
+                ConfigManager.ServerConfig.MatchStrictness.HASH_PREFERRED, Map.of("mod1", "^1.1.0"));
+        encoded = MessageCodecs.encode(MessageCodecs.SERVER_HANDSHAKE, handshake);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return MessageCodecs.encode(MessageCodecs.SERVER_HANDSHAKE, handshake);
+    }
+
+    @Benchmark
+    public ModSync.ServerHandshake decode() throws Exception {
+        return MessageCodecs.decode(MessageCodecs.SERVER_HANDSHAKE, encoded);
+    }
+}
@@ -0,0 +1,48 @@
+package com.rat.modsync.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DownloadManager#calculateSHA256} by file size. Divide ops/s by the size for MB/s; the
+ * file stays in the page cache, so this measures hashing rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Sha256Benchmark {
+    @Param({"65536", "1048576", "16777216"})
+    private int fileSize;
+
+    private Path file;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        file = Files.createTempFile("modsync-bench", ".jar");
+        Files.write(file, data);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String calculateSHA256() throws Exception {
+        return DownloadManager.calculateSHA256(file);
+    }
+}
@@ -0,0 +1,306 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Replays a join storm against a simulated server: one server (the {@link ModSync} singleton on a
+ * {@link SimulatedPlatform}) and N {@link SimulatedClient}s, each behind its own pair of
+ * {@link LoopbackLink}s. Every client joins through {@link ModSync#beginConfigurationSync}, so the
+ * real handshake, fragmentation and {@link DownloadManager#handleServerDownloadRequest} paths do
+ * the work; the report covers time-to-sync percentiles, bytes on the wire, peak heap and peak
+ * queue depths.
+ *
+ * Options, all {@code --name=value}:
+ * <ul>
+ *   <li>{@code clients} (100), {@code mods} (50), {@code mod-size-kb} (256)</li>
+ *   <li>{@code missing} (10), {@code outdated} (2): mods each client lacks or has an old version of</li>
+ *   <li>{@code latency-ms} (50) one way, {@code bandwidth-kbps} (8192, 0 for unlimited) per link and direction</li>
+ *   <li>{@code join-window-ms} (1000): joins spread evenly over this window, or {@code joins=<file>}
+ *       with one join offset in milliseconds per line to replay a recorded storm</li>
+ *   <li>{@code timeout-s} (300), {@code seed} (1), {@code verbose} (false)</li>
+ * </ul>
+ */
+public class LoadSimulation {
+    private static final long HASH_WAIT_MS = 60_000;
+    private static final long HEAP_SAMPLE_MS = 20;
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (!options.verbose) {
+            Logger.getLogger("").setLevel(Level.WARNING);
+        }
+
+        Path root = Files.createTempDirectory("modsync-sim");
+        int exitCode;
+        try {
+            exitCode = new LoadSimulation().run(options, root);
+        } finally {
+            deleteRecursively(root);
+        }
+        // Managers keep non-daemon pools with no shutdown hook of their own
+        System.exit(exitCode);
+    }
+
+    private int run(Options options, Path root) throws Exception {
+        List<Long> joinOffsets = options.joinOffsets();
+        Random random = new Random(options.seed);
+
+        // Server with real jars to hash and serve
+        List<ModInfo> serverMods = syntheticMods(options.mods, "1.0.0");
+        SimulatedPlatform server = new SimulatedPlatform(true, root.resolve("server"), serverMods);
+        writeJars(server.getModsDirectory(), serverMods, options.modSizeKb * 1024, random);
+        ModSync.initialize(server);
+        awaitServerHashes(serverMods.size());
+
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon("Sim-Timer"));
+        ExecutorService deliveryPool = Executors.newFixedThreadPool(
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2), daemon("Sim-Delivery"));
+        LoopbackLink.Stats downstream = new LoopbackLink.Stats();
+        LoopbackLink.Stats upstream = new LoopbackLink.Stats();
+        long latency = TimeUnit.MILLISECONDS.toNanos(options.latencyMs);
+        long bandwidth = options.bandwidthKBps * 1024L;
+
+        // Built up front so setup cost stays out of the timings
+        List<SimulatedClient> clients = new ArrayList<>(joinOffsets.size());
+        for (int i = 0; i < joinOffsets.size(); i++) {
+            SimulatedClient client = new SimulatedClient(i, root.resolve("client-" + i),
+                    clientMods(serverMods, options.missing, options.outdated, random));
+            client.getPlatform().attachServer(new LoopbackLink(server.getPacketHandlerRegistry(), client,
+                    latency, bandwidth, timer, deliveryPool, upstream));
+            server.attachClient(client, new LoopbackLink(client.getPlatform().getPacketHandlerRegistry(), "server",
+                    latency, bandwidth, timer, deliveryPool, downstream));
+            clients.add(client);
+        }
+
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong peakHeap = new AtomicLong();
+        timer.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, HEAP_SAMPLE_MS, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < clients.size(); i++) {
+            SimulatedClient client = clients.get(i);
+            timer.schedule(() -> deliveryPool.execute(() -> {
+                client.markJoined();
+                ModSync.beginConfigurationSync(client);
+            }), joinOffsets.get(i), TimeUnit.MILLISECONDS);
+        }
+
+        // Wait for the whole storm against one deadline
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.timeoutSeconds);
+        List<Long> times = new ArrayList<>(clients.size());
+        int failed = 0;
+        int timedOut = 0;
+        long modsDownloaded = 0;
+        for (SimulatedClient client : clients) {
+            try {
+                SimulatedClient.Result result = client.getSynced()
+                        .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                times.add(result.getTimeToSyncNanos());
+                modsDownloaded += result.getModsDownloaded();
+            } catch (ExecutionException e) {
+                failed++;
+                System.err.println(client + " failed: " + e.getCause());
+            } catch (TimeoutException e) {
+                timedOut++;
+            }
+        }
+
+        report(options, clients.size(), times, failed, timedOut, modsDownloaded, downstream, upstream, peakHeap.get());
+        return failed + timedOut == 0 ? 0 : 1;
+    }
+
+    private static void awaitServerHashes(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + HASH_WAIT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            List<ModInfo> hashed = ModSync.getDownloadManager().withFileHashes(ModSync.getModListManager().getServerMods());
+            if (hashed.size() == count && hashed.stream().allMatch(mod -> mod.getSha256Hash() != null)) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        System.err.println("Server hashes not ready after " + HASH_WAIT_MS + " ms, starting anyway");
+    }
+
+    private static void report(Options options, int clients, List<Long> times, int failed, int timedOut,
+                               long modsDownloaded, LoopbackLink.Stats downstream, LoopbackLink.Stats upstream,
+                               long peakHeap) {
+        Collections.sort(times);
+        System.out.printf("ModSync load simulation: %d clients, %d mods x %d KiB, %d missing + %d outdated per client%n",
+                clients, options.mods, options.modSizeKb, options.missing, options.outdated);
+        System.out.printf("Links: %d ms one way, %s per client; joins %s%n", options.latencyMs,
+                options.bandwidthKBps > 0 ? options.bandwidthKBps + " KiB/s" : "unlimited",
+                options.joinsFile != null ? "replayed from " + options.joinsFile : "over " + options.joinWindowMs + " ms");
+        System.out.println();
+        System.out.printf("Synced          %d/%d (%d failed, %d timed out), %d mods downloaded%n",
+                times.size(), clients, failed, timedOut, modsDownloaded);
+        if (!times.isEmpty()) {
+            System.out.printf("Time to sync    p50 %s  p90 %s  p99 %s  max %s%n", millis(percentile(times, 50)),
+                    millis(percentile(times, 90)), millis(percentile(times, 99)), millis(times.get(times.size() - 1)));
+        }
+        System.out.printf("Server sent     %s in %d packets%n", mebibytes(downstream.getBytesSent()), downstream.getPacketsSent());
+        System.out.printf("Clients sent    %s in %d packets%n", mebibytes(upstream.getBytesSent()), upstream.getPacketsSent());
+        System.out.printf("Peak heap       %s%n", mebibytes(peakHeap));
+        System.out.printf("Peak queues     server out: %d packets / %s total, %d packets / %s on one link%n",
+                downstream.getPeakPacketsQueued(), mebibytes(downstream.getPeakBytesQueued()),
+                downstream.getPeakLinkDepth(), mebibytes(downstream.getPeakLinkBytes()));
+        System.out.printf("                client out: %d packets / %s total, %d packets / %s on one link%n",
+                upstream.getPeakPacketsQueued(), mebibytes(upstream.getPeakBytesQueued()),
+                upstream.getPeakLinkDepth(), mebibytes(upstream.getPeakLinkBytes()));
+    }
+
+    // Nearest-rank
+    private static long percentile(List<Long> sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private static String millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) + " ms";
+    }
+
+    private static String mebibytes(long bytes) {
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static List<ModInfo> syntheticMods(int count, String version) {
+        List<ModInfo> mods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            mods.add(new ModInfo("mod" + i, version, "Mod " + i, "mod" + i + "-" + version + ".jar"));
+        }
+        return mods;
+    }
+
+    /**
+     * The server's list with {@code missing} random mods left out and {@code outdated} more
+     * replaced by an older version
+     */
+    private static List<ModInfo> clientMods(List<ModInfo> serverMods, int missing, int outdated, Random random) {
+        List<ModInfo> shuffled = new ArrayList<>(serverMods);
+        Collections.shuffle(shuffled, random);
+        List<ModInfo> result = new ArrayList<>(serverMods.size());
+        for (int i = Math.min(missing, shuffled.size()); i < shuffled.size(); i++) {
+            ModInfo mod = shuffled.get(i);
+            if (i < missing + outdated) {
+                result.add(new ModInfo(mod.getModId(), "0.9.0", mod.getName(), mod.getModId() + "-0.9.0.jar"));
+            } else {
+                result.add(mod);
+            }
+        }
+        result.sort(Comparator.comparing(ModInfo::getModId));
+        return result;
+    }
+
+    private static void writeJars(Path modsDir, List<ModInfo> mods, int size, Random random) throws IOException {
+        byte[] content = new byte[size];
+        for (ModInfo mod : mods) {
+            random.nextBytes(content);
+            Files.write(modsDir.resolve(mod.getFileName()), content);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void deleteRecursively(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ignored) {
+                    // Left for the OS to clean up with the rest of the temp dir
+                }
+            });
+        } catch (IOException ignored) {
+            // Same
+        }
+    }
+
+    private static class Options {
+        private int clients = 100;
+        private int mods = 50;
+        private int modSizeKb = 256;
+        private int missing = 10;
+        private int outdated = 2;
+        private int latencyMs = 50;
+        private int bandwidthKBps = 8192;
+        private int joinWindowMs = 1000;
+        private Path joinsFile;
+        private int timeoutSeconds = 300;
+        private long seed = 1;
+        private boolean verbose;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "clients": options.clients = Integer.parseInt(value); break;
+                    case "mods": options.mods = Integer.parseInt(value); break;
+                    case "mod-size-kb": options.modSizeKb = Integer.parseInt(value); break;
+                    case "missing": options.missing = Integer.parseInt(value); break;
+                    case "outdated": options.outdated = Integer.parseInt(value); break;
+                    case "latency-ms": options.latencyMs = Integer.parseInt(value); break;
+                    case "bandwidth-kbps": options.bandwidthKBps = Integer.parseInt(value); break;
+                    case "join-window-ms": options.joinWindowMs = Integer.parseInt(value); break;
+                    case "joins": options.joinsFile = Path.of(value); break;
+                    case "timeout-s": options.timeoutSeconds = Integer.parseInt(value); break;
+                    case "seed": options.seed = Long.parseLong(value); break;
+                    case "verbose": options.verbose = Boolean.parseBoolean(value); break;
+                    default: throw new IllegalArgumentException("Unknown option --" + name);
+                }
+            }
+            return options;
+        }
+
+        /**
+         * Milliseconds from the start of the storm at which each client joins
+         */
+        List<Long> joinOffsets() throws IOException {
+            List<Long> offsets = new ArrayList<>();
+            if (joinsFile != null) {
+                for (String line : Files.readAllLines(joinsFile)) {
+                    if (!line.isBlank() && !line.startsWith("#")) {
+                        offsets.add(Long.parseLong(line.trim()));
+                    }
+                }
+                return offsets;
+            }
+            for (int i = 0; i < clients; i++) {
+                offsets.add(clients > 1 ? (long) joinWindowMs * i / (clients - 1) : 0L);
+            }
+            return offsets;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.rat.modsync.common;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One direction of a simulated connection. Packets are serialized onto the link at its bandwidth,
+ * arrive {@code latency} later, and are handed to the receiver's {@link PacketHandlerRegistry} in
+ * the order they were sent, like a TCP stream. Sending never blocks: like Netty's outbound buffer,
+ * anything the link can't carry yet waits in its queue, which is what the queue depths measure.
+ */
+public class LoopbackLink {
+    private final PacketHandlerRegistry receiver;
+    // What the receiving side's handlers see as the sender
+    private final Object sender;
+    private final long latencyNanos;
+    private final long bytesPerSecond;
+    private final ScheduledExecutorService timer;
+    private final Executor deliveryPool;
+    private final Stats stats;
+
+    private final Queue<Packet> inFlight = new ConcurrentLinkedQueue<>();
+    // Pending delivery passes; whoever raises it from zero runs them
+    private final AtomicInteger pumps = new AtomicInteger();
+    private long freeAt;
+    private int depth;
+    private long queuedBytes;
+
+    public LoopbackLink(PacketHandlerRegistry receiver, Object sender, long latencyNanos, long bytesPerSecond,
+                        ScheduledExecutorService timer, Executor deliveryPool, Stats stats) {
+        this.receiver = receiver;
+        this.sender = sender;
+        this.latencyNanos = latencyNanos;
+        this.bytesPerSecond = bytesPerSecond;
+        this.timer = timer;
+        this.deliveryPool = deliveryPool;
+        this.stats = stats;
+    }
+
+    public void send(String channel, byte[] data) {
+        long now = System.nanoTime();
+        long deliverAt;
+        synchronized (this) {
+            // Behind whatever is still being put on the wire
+            long start = Math.max(now, freeAt);
+            freeAt = start + (bytesPerSecond > 0 ? data.length * 1_000_000_000L / bytesPerSecond : 0);
+            deliverAt = freeAt + latencyNanos;
+            inFlight.add(new Packet(channel, data, deliverAt));
+            depth++;
+            queuedBytes += data.length;
+            stats.onSend(data.length, depth, queuedBytes);
+        }
+        timer.schedule(this::pump, deliverAt - now, TimeUnit.NANOSECONDS);
+    }
+
+    private void pump() {
+        if (pumps.getAndIncrement() == 0) {
+            deliveryPool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        do {
+            Packet packet;
+            while ((packet = inFlight.peek()) != null && packet.deliverAt <= System.nanoTime()) {
+                inFlight.poll();
+                synchronized (this) {
+                    depth--;
+                    queuedBytes -= packet.data.length;
+                }
+                stats.onDeliver(packet.data.length);
+                receiver.dispatchLocal(receiver.idOf(packet.channel), sender, packet.data);
+            }
+        } while (pumps.decrementAndGet() != 0);
+    }
+
+    /**
+     * Totals for every link in one direction
+     */
+    public static class Stats {
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong packetsSent = new AtomicLong();
+        private final AtomicLong packetsQueued = new AtomicLong();
+        private final AtomicLong peakPacketsQueued = new AtomicLong();
+        private final AtomicLong bytesQueued = new AtomicLong();
+        private final AtomicLong peakBytesQueued = new AtomicLong();
+        private final AtomicLong peakLinkDepth = new AtomicLong();
+        private final AtomicLong peakLinkBytes = new AtomicLong();
+
+        void onSend(int bytes, int linkDepth, long linkBytes) {
+            bytesSent.addAndGet(bytes);
+            packetsSent.incrementAndGet();
+            peakPacketsQueued.accumulateAndGet(packetsQueued.incrementAndGet(), Math::max);
+            peakBytesQueued.accumulateAndGet(bytesQueued.addAndGet(bytes), Math::max);
+            peakLinkDepth.accumulateAndGet(linkDepth, Math::max);
+            peakLinkBytes.accumulateAndGet(linkBytes, Math::max);
+        }
+
+        void onDeliver(int bytes) {
+            packetsQueued.decrementAndGet();
+            bytesQueued.addAndGet(-bytes);
+        }
+
+        public long getBytesSent() { return bytesSent.get(); }
+        public long getPacketsSent() { return packetsSent.get(); }
+        public long getPacketsQueued() { return packetsQueued.get(); }
+        public long getPeakPacketsQueued() { return peakPacketsQueued.get(); }
+        public long getPeakBytesQueued() { return peakBytesQueued.get(); }
+        public long getPeakLinkDepth() { return peakLinkDepth.get(); }
+        public long getPeakLinkBytes() { return peakLinkBytes.get(); }
+    }
+
+    private static class Packet {
+        private final String channel;
+        private final byte[] data;
+        private final long deliverAt;
+
+        Packet(String channel, byte[] data, long deliverAt) {
+            this.channel = channel;
+            this.data = data;
+            this.deliverAt = deliverAt;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * One simulated player. Each has its own platform, transport, config and {@link DownloadManager},
+ * since {@link ModSync}'s static state belongs to the simulated server. The client side of the
+ * handshake is replayed here the way {@link ModSync} runs it with downloads auto-accepted: diff
+ * against the server's manifest, report the result, then fetch what's missing over the connection.
+ *
+ * The instance doubles as the connection object the server sees.
+ */
+public class SimulatedClient {
+    private static final Logger LOGGER = Logger.getLogger(SimulatedClient.class.getName());
+
+    private final int index;
+    private final SimulatedPlatform platform;
+    private final FragmentingTransport transport;
+    private final DownloadManager downloadManager;
+    private final List<ModInfo> installedMods;
+    private final CompletableFuture<Result> synced = new CompletableFuture<>();
+    private volatile long joinedAt;
+
+    public SimulatedClient(int index, Path gameDir, List<ModInfo> installedMods) throws IOException {
+        this.index = index;
+        this.installedMods = installedMods;
+        this.platform = new SimulatedPlatform(false, gameDir, installedMods);
+        // Same pre-handshake channel IDs as a real client
+        for (String channel : ModSync.BOOTSTRAP_CHANNELS) {
+            platform.getPacketHandlerRegistry().declare(channel);
+        }
+        this.transport = new FragmentingTransport(platform);
+        ConfigManager configManager = new ConfigManager(platform);
+        this.downloadManager = new DownloadManager(platform, configManager, transport,
+                new FileHashCache(configManager.getConfigDir()));
+
+        transport.registerPacketHandler(ModSync.HANDSHAKE_CHANNEL, this::handleHandshake);
+        transport.registerPacketHandler(ModSync.DOWNLOAD_CHUNK_CHANNEL, (sender, data) -> downloadManager.handleDownloadChunk(data));
+        transport.registerPacketHandler(ModSync.DOWNLOAD_INFO_CHANNEL, (sender, data) -> downloadManager.handleDownloadInfo(data));
+    }
+
+    public SimulatedPlatform getPlatform() { return platform; }
+
+    /**
+     * Completes once the client either matched the server or finished downloading
+     */
+    public CompletableFuture<Result> getSynced() { return synced; }
+
+    public void markJoined() {
+        joinedAt = System.nanoTime();
+    }
+
+    private void handleHandshake(Object sender, byte[] data) {
+        try {
+            ModSync.ServerHandshake handshake = MessageCodecs.decode(MessageCodecs.SERVER_HANDSHAKE, data);
+            if (handshake.getChannels() != null && !handshake.getChannels().isEmpty()) {
+                platform.getPacketHandlerRegistry().applyRemoteTable(handshake.getChannels());
+            }
+
+            // The client's jars are stand-ins, so versions decide whatever the strictness
+            ModMatcher matcher = new ModMatcher(handshake.getMatchStrictness(), handshake.getVersionRanges(), mod -> null);
+            ModListManager.ModListComparison comparison = ModIndex.of(installedMods).diff(handshake.getRequiredMods(), matcher);
+
+            boolean compatible = comparison.isCompatible();
+            transport.sendToServer(ModSync.HANDSHAKE_COMPLETE_CHANNEL,
+                    MessageCodecs.encode(MessageCodecs.HANDSHAKE_COMPLETE, new ModSync.HandshakeComplete(compatible)));
+            if (compatible) {
+                synced.complete(new Result(System.nanoTime() - joinedAt, 0));
+                return;
+            }
+
+            int downloads = comparison.getMissingMods().size() + comparison.getMismatchedMods().size();
+            downloadManager.downloadMods(comparison.getMissingMods(), comparison.getMismatchedMods())
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            synced.completeExceptionally(error);
+                        } else {
+                            synced.complete(new Result(System.nanoTime() - joinedAt, downloads));
+                        }
+                    });
+        } catch (Exception e) {
+            LOGGER.warning(this + " failed to handle handshake: " + e.getMessage());
+            synced.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "client-" + index;
+    }
+
+    public static class Result {
+        private final long timeToSyncNanos;
+        private final int modsDownloaded;
+
+        public Result(long timeToSyncNanos, int modsDownloaded) {
+            this.timeToSyncNanos = timeToSyncNanos;
+            this.modsDownloaded = modsDownloaded;
+        }
+
+        public long getTimeToSyncNanos() { return timeToSyncNanos; }
+        public int getModsDownloaded() { return modsDownloaded; }
+    }
+}
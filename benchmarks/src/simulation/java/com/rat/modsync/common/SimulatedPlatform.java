@@ -0,0 +1,95 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * In-memory {@link Platform} for load simulation. A server instance reaches each client over the
+ * {@link LoopbackLink} attached for that client's connection object; a client instance has a single
+ * link to the server. UI calls do nothing and dialogs are declined.
+ */
+public class SimulatedPlatform implements Platform {
+    private static final Logger LOGGER = Logger.getLogger(SimulatedPlatform.class.getName());
+
+    private final boolean server;
+    private final Path modsDir;
+    private final List<ModInfo> mods;
+    private final PacketHandlerRegistry packetHandlers = new PacketHandlerRegistry();
+    // Server side: outgoing link per client connection
+    private final Map<Object, LoopbackLink> clientLinks = new ConcurrentHashMap<>();
+    // Client side: outgoing link to the server
+    private volatile LoopbackLink serverLink;
+
+    public SimulatedPlatform(boolean server, Path gameDir, List<ModInfo> mods) throws IOException {
+        this.server = server;
+        this.modsDir = gameDir.resolve("mods");
+        this.mods = mods;
+        Files.createDirectories(modsDir);
+    }
+
+    public void attachClient(Object connection, LoopbackLink link) {
+        clientLinks.put(connection, link);
+    }
+
+    public void detachClient(Object connection) {
+        clientLinks.remove(connection);
+    }
+
+    public void attachServer(LoopbackLink link) {
+        this.serverLink = link;
+    }
+
+    @Override public LoaderType getLoaderType() { return LoaderType.FABRIC; }
+    @Override public boolean isClient() { return !server; }
+    @Override public boolean isServer() { return server; }
+    @Override public Path getModsDirectory() { return modsDir; }
+    @Override public List<ModInfo> getLoadedMods() { return mods; }
+
+    @Override
+    public void sendToServer(String channel, byte[] data) {
+        LoopbackLink link = serverLink;
+        if (link == null) {
+            throw new IllegalStateException("Not connected");
+        }
+        link.send(channel, data);
+    }
+
+    @Override
+    public void sendToClient(Object player, String channel, byte[] data) {
+        LoopbackLink link = clientLinks.get(player);
+        if (link == null) {
+            LOGGER.fine("Dropping packet on " + channel + " for disconnected " + player);
+            return;
+        }
+        link.send(channel, data);
+    }
+
+    // Same limits as the real loaders' custom payloads
+    @Override public int getMaxClientboundPayloadSize() { return 1024 * 1024 - 1024; }
+    @Override public int getMaxServerboundPayloadSize() { return 32767 - 1024; }
+
+    @Override
+    public void registerPacketHandler(String channel, PacketHandler handler) {
+        packetHandlers.register(channel, handler);
+    }
+
+    @Override public PacketHandlerRegistry getPacketHandlerRegistry() { return packetHandlers; }
+    @Override public void scheduleRestart() {}
+    @Override public void showNotification(String title, String message, NotificationType type) {}
+    @Override public CompletableFuture<DialogResult> showDialog(String title, String message, List<String> options) {
+        return CompletableFuture.completedFuture(DialogResult.DECLINE);
+    }
+    @Override public String getGameVersion() { return "1.21.1"; }
+    @Override public boolean isModLoaded(String modId) { return false; }
+    @Override public ModInfo getModInfo(String modId) { return null; }
+    @Override public void connectToServer(String serverAddress) {}
+    @Override public String getCurrentServerAddress() { return "simulated"; }
+    @Override public void disconnectFromServer(String reason) {}
+    @Override public void disconnectClient(Object connection, String reason) {}
+}
@@ -0,0 +1,89 @@
+package com.rat.modsync.common;
+
+/**
+ * Adaptive sizing for direct-transfer chunks.
+ *
+ * Chunk sizes are always a whole number of {@link #BLOCK_SIZE} blocks and never exceed the
+ * ceiling negotiated for the transfer (the platform's custom payload limit minus framing).
+ *
+ * Only the receiving side adapts: it feeds observed round-trip time and throughput into
+ * {@link #onRoundTrip} and {@link #onThroughput}, and asks for {@link #getPreferredChunkSize()}
+ * when it opens the next transfer. The sender has no timing signal of its own (a send only
+ * queues the packet), so it uses the requested size as is, see {@link #negotiate}.
+ */
+public class ChunkSizer {
+    public static final int BLOCK_SIZE = 16 * 1024;
+    public static final int MIN_CHUNK_SIZE = BLOCK_SIZE;
+    public static final int DEFAULT_CHUNK_SIZE = 4 * BLOCK_SIZE;
+
+    // Aim for each chunk to occupy the link for roughly this long
+    private static final long TARGET_CHUNK_NANOS = 20_000_000L;
+    // Smoothing factor for the moving averages (1/8, as in TCP's SRTT)
+    private static final double ALPHA = 0.125;
+
+    private final int maxChunkSize;
+    private int currentChunkSize;
+    private double smoothedRttNanos = -1;
+    private double smoothedBytesPerSecond = -1;
+
+    public ChunkSizer(int maxChunkSize) {
+        this(maxChunkSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkSizer(int maxChunkSize, int initialChunkSize) {
+        this.maxChunkSize = Math.max(MIN_CHUNK_SIZE, roundDown(maxChunkSize));
+        this.currentChunkSize = clamp(initialChunkSize);
+    }
+
+    public synchronized int getCurrentChunkSize() { return currentChunkSize; }
+    public int getMaxChunkSize() { return maxChunkSize; }
+
+    /**
+     * Record the time between sending a download request and receiving its first chunk
+     */
+    public synchronized void onRoundTrip(long rttNanos) {
+        if (rttNanos <= 0) return;
+        smoothedRttNanos = smoothedRttNanos < 0 ? rttNanos : smoothedRttNanos + ALPHA * (rttNanos - smoothedRttNanos);
+    }
+
+    /**
+     * Record that {@code bytes} were received over {@code elapsedNanos}
+     */
+    public synchronized void onThroughput(long bytes, long elapsedNanos) {
+        if (bytes <= 0 || elapsedNanos <= 0) return;
+        double rate = bytes * 1_000_000_000.0 / elapsedNanos;
+        smoothedBytesPerSecond = smoothedBytesPerSecond < 0 ? rate : smoothedBytesPerSecond + ALPHA * (rate - smoothedBytesPerSecond);
+    }
+
+    /**
+     * Chunk size the receiver should ask for on its next transfer. A fast link gets large chunks
+     * (fewer packets per modpack); a slow one gets small chunks so other traffic is not starved.
+     */
+    public synchronized int getPreferredChunkSize() {
+        if (smoothedBytesPerSecond < 0) {
+            return currentChunkSize;
+        }
+        long window = Math.max(TARGET_CHUNK_NANOS, smoothedRttNanos < 0 ? 0 : (long) (smoothedRttNanos / 4));
+        long bytes = (long) (smoothedBytesPerSecond * window / 1_000_000_000.0);
+        currentChunkSize = clamp(bytes);
+        return currentChunkSize;
+    }
+
+    /**
+     * Chunk size a sender uses for a transfer: the receiver's preference, if it gave one, within
+     * the packet ceiling, in whole blocks
+     */
+    public static int negotiate(int maxChunkSize, int requestedChunkSize) {
+        ChunkSizer sizer = new ChunkSizer(maxChunkSize, requestedChunkSize > 0 ? requestedChunkSize : maxChunkSize);
+        return sizer.getCurrentChunkSize();
+    }
+
+    private int clamp(long size) {
+        long rounded = roundDown(size);
+        return (int) Math.max(MIN_CHUNK_SIZE, Math.min(maxChunkSize, rounded));
+    }
+
+    private static int roundDown(long size) {
+        return (int) Math.min(Integer.MAX_VALUE, (size / BLOCK_SIZE) * BLOCK_SIZE);
+    }
+}
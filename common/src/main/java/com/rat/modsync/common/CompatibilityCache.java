@@ -0,0 +1,89 @@
+package com.rat.modsync.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, expiring cache of server probe results keyed by server address.
+ *
+ * Entries expire {@code ttlMillis} after they were stored, and the least recently used entry is
+ * evicted once {@code maxEntries} is exceeded, so the cache cannot grow with every server the
+ * player has ever looked at.
+ */
+public class CompatibilityCache {
+    private final long ttlMillis;
+    private final Map<String, ProbeResult> entries;
+
+    public CompatibilityCache(int maxEntries, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProbeResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized void put(ProbeResult result) {
+        entries.put(result.getServerAddress(), result);
+    }
+
+    /**
+     * Fresh result for a server, or null if there is none or it has expired
+     */
+    public synchronized ProbeResult get(String serverAddress) {
+        ProbeResult result = entries.get(serverAddress);
+        if (result == null) return null;
+
+        if (isExpired(result)) {
+            entries.remove(serverAddress);
+            return null;
+        }
+        return result;
+    }
+
+    public boolean isExpired(ProbeResult result) {
+        return System.currentTimeMillis() - result.getTimestamp() > ttlMillis;
+    }
+
+    public synchronized void invalidate(String serverAddress) {
+        entries.remove(serverAddress);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Outcome of checking one server
+     */
+    public static class ProbeResult {
+        private final String serverAddress;
+        private final boolean reachable;
+        private final boolean compatible;
+        private final String modSyncPayload;
+        private final long rttMillis;
+        private final long timestamp;
+
+        public ProbeResult(String serverAddress, boolean reachable, boolean compatible,
+                           String modSyncPayload, long rttMillis, long timestamp) {
+            this.serverAddress = serverAddress;
+            this.reachable = reachable;
+            this.compatible = compatible;
+            this.modSyncPayload = modSyncPayload;
+            this.rttMillis = rttMillis;
+            this.timestamp = timestamp;
+        }
+
+        public static ProbeResult unreachable(String serverAddress) {
+            return new ProbeResult(serverAddress, false, false, null, -1, System.currentTimeMillis());
+        }
+
+        public String getServerAddress() { return serverAddress; }
+        public boolean isReachable() { return reachable; }
+        public boolean isCompatible() { return compatible; }
+        public String getModSyncPayload() { return modSyncPayload; }
+        public long getRttMillis() { return rttMillis; }
+        public long getTimestamp() { return timestamp; }
+    }
+}
@@ -6,6 +6,9 @@ import com.google.gson.GsonBuilder;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -71,6 +74,7 @@ public class ConfigManager {
         }
     }
 
+    public Path getConfigDir() { return configDir; }
     public ClientConfig getClientConfig() { return clientConfig; }
     public ServerConfig getServerConfig() { return serverConfig; }
 
@@ -129,6 +133,12 @@ public class ConfigManager {
         private boolean autoRejoin = true;
         private DownloadSource defaultDownloadSource = DownloadSource.SERVER;
         private boolean showMismatchPrompts = true;
+        private boolean prefetchEnabled = true;
+        private int prefetchBandwidthKBps = 256;
+        // How often metrics.prom/metrics.json are rewritten; 0 leaves metrics on JMX only
+        private int metricsExportSeconds = 0;
+        // Every how many packets one goes into the packet trace; 1 traces them all
+        private int packetTraceSampleRate = 1;
 
         public static ClientConfig createDefault() {
             return new ClientConfig();
@@ -140,6 +150,10 @@ public class ConfigManager {
         public boolean isAutoRejoin() { return autoRejoin; }
         public DownloadSource getDefaultDownloadSource() { return defaultDownloadSource; }
         public boolean isShowMismatchPrompts() { return showMismatchPrompts; }
+        public boolean isPrefetchEnabled() { return prefetchEnabled; }
+        public int getPrefetchBandwidthKBps() { return prefetchBandwidthKBps; }
+        public int getMetricsExportSeconds() { return metricsExportSeconds; }
+        public int getPacketTraceSampleRate() { return packetTraceSampleRate; }
 
         // Setters
         public void setAutoAcceptDownloads(boolean autoAcceptDownloads) {
@@ -157,6 +171,18 @@ public class ConfigManager {
         public void setShowMismatchPrompts(boolean showMismatchPrompts) {
             this.showMismatchPrompts = showMismatchPrompts;
         }
+        public void setPrefetchEnabled(boolean prefetchEnabled) {
+            this.prefetchEnabled = prefetchEnabled;
+        }
+        public void setPrefetchBandwidthKBps(int prefetchBandwidthKBps) {
+            this.prefetchBandwidthKBps = prefetchBandwidthKBps;
+        }
+        public void setMetricsExportSeconds(int metricsExportSeconds) {
+            this.metricsExportSeconds = metricsExportSeconds;
+        }
+        public void setPacketTraceSampleRate(int packetTraceSampleRate) {
+            this.packetTraceSampleRate = packetTraceSampleRate;
+        }
 
         public enum DownloadSource {
             SERVER, INTERNET
@@ -172,6 +198,17 @@ public class ConfigManager {
         private String zipUrl = "";
         private String zipHash = "";
         private int maxDownloadSizeMB = 100;
+        private MatchStrictness matchStrictness = MatchStrictness.HASH_PREFERRED;
+        // Mod ID -> client versions accepted in place of the server's, e.g. "^1.4.0" or "[1.4,1.5)"
+        private Map<String, String> versionRanges = new LinkedHashMap<>();
+        // Mod ID -> environment, overriding what the mod declares (e.g. "SERVER" to stop sending it)
+        private Map<String, ModInfo.Environment> modEnvironments = new LinkedHashMap<>();
+        // Mod ID -> public URL of the exact jar served, letting clients fetch it ahead of a join
+        private Map<String, String> modDownloadUrls = new LinkedHashMap<>();
+        // How often metrics.prom/metrics.json are rewritten; 0 leaves metrics on JMX only
+        private int metricsExportSeconds = 60;
+        // Every how many packets one goes into the packet trace; 1 traces them all
+        private int packetTraceSampleRate = 1;
 
         public static ServerConfig createDefault() {
             return new ServerConfig();
@@ -183,6 +220,20 @@ public class ConfigManager {
         public String getZipUrl() { return zipUrl; }
         public String getZipHash() { return zipHash; }
         public int getMaxDownloadSizeMB() { return maxDownloadSizeMB; }
+        public MatchStrictness getMatchStrictness() {
+            return matchStrictness != null ? matchStrictness : MatchStrictness.HASH_PREFERRED;
+        }
+        public Map<String, String> getVersionRanges() {
+            return versionRanges != null ? versionRanges : Collections.emptyMap();
+        }
+        public Map<String, ModInfo.Environment> getModEnvironments() {
+            return modEnvironments != null ? modEnvironments : Collections.emptyMap();
+        }
+        public Map<String, String> getModDownloadUrls() {
+            return modDownloadUrls != null ? modDownloadUrls : Collections.emptyMap();
+        }
+        public int getMetricsExportSeconds() { return metricsExportSeconds; }
+        public int getPacketTraceSampleRate() { return packetTraceSampleRate; }
 
         // Setters
         public void setDirectDownloadEnabled(boolean directDownloadEnabled) {
@@ -200,5 +251,35 @@ public class ConfigManager {
         public void setMaxDownloadSizeMB(int maxDownloadSizeMB) {
             this.maxDownloadSizeMB = maxDownloadSizeMB;
         }
+        public void setMatchStrictness(MatchStrictness matchStrictness) {
+            this.matchStrictness = matchStrictness;
+        }
+        public void setVersionRanges(Map<String, String> versionRanges) {
+            this.versionRanges = versionRanges;
+        }
+        public void setModEnvironments(Map<String, ModInfo.Environment> modEnvironments) {
+            this.modEnvironments = modEnvironments;
+        }
+        public void setModDownloadUrls(Map<String, String> modDownloadUrls) {
+            this.modDownloadUrls = modDownloadUrls;
+        }
+        public void setMetricsExportSeconds(int metricsExportSeconds) {
+            this.metricsExportSeconds = metricsExportSeconds;
+        }
+        public void setPacketTraceSampleRate(int packetTraceSampleRate) {
+            this.packetTraceSampleRate = packetTraceSampleRate;
+        }
+
+        /**
+         * How a client mod is judged to match the server's copy
+         */
+        public enum MatchStrictness {
+            // Same version string, as before hashes were sent
+            VERSION,
+            // Same SHA-256 when both sides know it, otherwise same version
+            HASH_PREFERRED,
+            // Same version, and same SHA-256 when both sides know it
+            HASH_AND_VERSION
+        }
     }
 }
\ No newline at end of file
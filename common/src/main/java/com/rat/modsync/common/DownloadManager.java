@@ -1,18 +1,32 @@
 package com.rat.modsync.common;
 
-import com.google.gson.Gson;
-
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -22,18 +36,55 @@ import java.util.zip.ZipInputStream;
  */
 public class DownloadManager {
     private static final Logger LOGGER = Logger.getLogger(DownloadManager.class.getName());
-    private static final Gson GSON = new Gson();
-    private static final int CHUNK_SIZE = 8192;
+    // Buffer size for disk and HTTP I/O; independent of network chunk framing (see ChunkSizer)
+    private static final int DISK_BUFFER_SIZE = 64 * 1024;
     private static final int MAX_DOWNLOAD_SIZE = 500 * 1024 * 1024; // 500MB limit
+    private static final long SERVER_TRANSFER_TIMEOUT_MINUTES = 10;
+    private static final String STAGING_DIR = "staging";
+    private static final String PARTIAL_DIR = "partial";
+    // How often a direct transfer's block map is flushed to its sidecar
+    private static final long PROGRESS_SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Rounds of re-requesting leaves that failed verification before a transfer gives up
+    private static final int MAX_LEAF_RETRY_ROUNDS = 3;
+    private static final long STAGED_FILE_MAX_AGE_DAYS = 14;
 
     private final Platform platform;
     private final ConfigManager configManager;
+    private final FragmentingTransport transport;
+    // Client-side: hashes of installed jars, shared with ModListManager
+    private final FileHashCache fileHashes;
     private final ExecutorService downloadExecutor;
 
-    public DownloadManager(Platform platform, ConfigManager configManager) {
+    // Client-side: observed link characteristics, used to negotiate the next transfer's chunk size
+    private final ChunkSizer clientChunkSizer;
+    // Client-side: direct transfers in flight, keyed by mod ID
+    private final Map<String, ChunkedDownload> activeTransfers = new ConcurrentHashMap<>();
+    // Client-side: one low-priority thread fetching mods ahead of time, and the hashes it has queued
+    private final ExecutorService prefetchExecutor;
+    private final Set<String> queuedPrefetches = ConcurrentHashMap.newKeySet();
+    // Server-side: hash trees of served files, recomputed when a file's size or timestamp changes
+    private final Map<Path, CachedHashTree> hashTrees = new ConcurrentHashMap<>();
+    private final Set<Path> hashTreesInProgress = ConcurrentHashMap.newKeySet();
+    // Server-side: the auto-built zip-mode bundle, once ready
+    private volatile ModpackBundle bundle;
+
+    public DownloadManager(Platform platform, ConfigManager configManager, FragmentingTransport transport,
+                           FileHashCache fileHashes) {
         this.platform = platform;
         this.configManager = configManager;
+        this.transport = transport;
+        this.fileHashes = fileHashes;
         this.downloadExecutor = Executors.newFixedThreadPool(3);
+        this.clientChunkSizer = new ChunkSizer(getMaxChunkDataSize());
+        this.prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ModSync-Prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        if (platform.isClient()) {
+            prefetchExecutor.execute(this::pruneStaging);
+        }
     }
 
     /**
@@ -59,25 +110,43 @@ public class DownloadManager {
 
             } catch (Exception e) {
                 LOGGER.severe("Failed to download mods: " + e.getMessage());
+                PacketTrace.dumpOnError("failed mod download");
                 throw new RuntimeException(e);
             }
         }, downloadExecutor);
     }
 
     /**
-     * Download a modpack zip file
+     * Download a modpack zip file. {@code serverMods} supplies the per-jar hashes that let changed
+     * entries be fetched on their own.
      */
-    public CompletableFuture<Void> downloadModpack(String zipUrl, String expectedHash) {
+    public CompletableFuture<Void> downloadModpack(String zipUrl, String expectedHash, List<ModInfo> serverMods) {
         return CompletableFuture.runAsync(() -> {
             try {
                 LOGGER.info("Downloading modpack from: " + zipUrl);
 
+                // Try fetching only the entries that differ before falling back to the whole zip
+                if (!ModpackBundle.BUNDLE_URL.equals(zipUrl) && fetchModpackEntries(zipUrl, serverMods)) {
+                    LOGGER.info("Successfully updated modpack from changed entries");
+                    return;
+                }
+
                 // Download zip to temp file
                 Path tempZip = Files.createTempFile("modsync_modpack", ".zip");
-                downloadFile(zipUrl, tempZip, expectedHash);
+                if (ModpackBundle.BUNDLE_URL.equals(zipUrl)) {
+                    // The server's own bundle, over the direct channel; the hash keeps partials apart
+                    String version = expectedHash != null && expectedHash.length() >= 16 ? expectedHash.substring(0, 16) : "unknown";
+                    ModInfo bundleInfo = new ModInfo(ModpackBundle.BUNDLE_MOD_ID, version, "Modpack bundle",
+                            "modpack.zip", expectedHash, 0, null);
+                    downloadFromServer(bundleInfo, tempZip);
+                } else {
+                    downloadFile(zipUrl, tempZip, expectedHash);
+                }
 
                 // Extract zip to mods directory
-                extractModpack(tempZip);
+                long extractStart = System.nanoTime();
+                extractModpack(tempZip, platform.getModsDirectory());
+                SyncMetrics.EXTRACT_SECONDS.observeNanos(System.nanoTime() - extractStart);
 
                 // Clean up temp file
                 Files.deleteIfExists(tempZip);
@@ -91,43 +160,231 @@ public class DownloadManager {
         }, downloadExecutor);
     }
 
-    private void downloadMod(ModInfo mod) throws IOException {
+    /**
+     * Update the mods directory from a remote zip's central directory using Range requests.
+     * Returns false if the server or zip can't be handled that way and the whole zip is needed.
+     */
+    private boolean fetchModpackEntries(String zipUrl, List<ModInfo> serverMods) {
+        Map<String, String> expectedHashes = new HashMap<>();
+        for (ModInfo mod : serverMods) {
+            // Listed without a hash until the server has hashed it; nested mods share their container's file
+            String hash = isValidHash(mod.getSha256Hash()) ? mod.getSha256Hash() : null;
+            if (hash != null || !expectedHashes.containsKey(mod.getFileName())) {
+                expectedHashes.put(mod.getFileName(), hash);
+            }
+        }
+
         Path modsDir = platform.getModsDirectory();
-        Path targetFile = modsDir.resolve(mod.getFileName());
+        try {
+            Files.createDirectories(modsDir);
+            Path backupDir = modsDir.getParent().resolve("mods_backup_" + System.currentTimeMillis());
+            long start = System.nanoTime();
+            new ZipRangeFetcher(zipUrl, expectedHashes, fileHashes).syncInto(modsDir, backupDir);
+            SyncMetrics.EXTRACT_SECONDS.observeNanos(System.nanoTime() - start);
+            return true;
+        } catch (ZipRangeFetcher.WholeZipRequiredException e) {
+            LOGGER.info("Partial modpack fetch not possible, downloading whole zip: " + e.getMessage());
+        } catch (IOException e) {
+            LOGGER.warning("Partial modpack fetch failed, downloading whole zip: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Fetch mods a known server needs into the staging directory ahead of a join, one at a time on
+     * a minimum-priority thread and under the configured bandwidth cap. Only mods with both a
+     * download URL (advertised by the server's {@code modDownloadUrls}) and a hash qualify; the
+     * hash names the staged file and verifies it on install.
+     */
+    public void prefetch(List<ModInfo> mods) {
+        ConfigManager.ClientConfig config = configManager.getClientConfig();
+        if (!platform.isClient() || !config.isPrefetchEnabled()) return;
+
+        for (ModInfo mod : mods) {
+            String hash = mod.getSha256Hash();
+            if (!isHttpUrl(mod.getDownloadUrl()) || !isValidHash(hash) || !queuedPrefetches.add(hash)) {
+                continue;
+            }
+
+            prefetchExecutor.execute(() -> {
+                try {
+                    prefetchMod(mod, new TokenBucket(config.getPrefetchBandwidthKBps() * 1024L));
+                } catch (Exception e) {
+                    LOGGER.fine("Prefetch of " + mod.getModId() + " failed: " + e.getMessage());
+                } finally {
+                    queuedPrefetches.remove(hash);
+                }
+            });
+        }
+    }
+
+    private static boolean isHttpUrl(String url) {
+        return url != null && (url.startsWith("https://") || url.startsWith("http://"));
+    }
+
+    private void prefetchMod(ModInfo mod, TokenBucket bandwidth) throws IOException {
+        Path staged = getStagedFile(mod.getSha256Hash());
+        if (Files.exists(staged)) return;
+
+        Path installed = platform.getModsDirectory().resolve(mod.getFileName());
+        if (Files.exists(installed) && mod.getSha256Hash().equals(calculateSHA256(installed))) return;
+
+        // Download beside the staged name so the final rename is atomic
+        Files.createDirectories(staged.getParent());
+        Path tempFile = Files.createTempFile(staged.getParent(), mod.getSha256Hash(), ".part");
+        try {
+            fetch(mod.getDownloadUrl(), tempFile, bandwidth);
+            verifyAndMove(tempFile, staged, mod.getSha256Hash());
+            LOGGER.info("Prefetched " + mod.getFileName());
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Move a prefetched copy of the mod into place if there is one and it still verifies
+     */
+    private boolean installStaged(ModInfo mod, Path targetFile) throws IOException {
+        if (!isValidHash(mod.getSha256Hash())) return false;
+
+        Path staged = getStagedFile(mod.getSha256Hash());
+        if (!Files.exists(staged)) return false;
+
+        if (!mod.getSha256Hash().equals(calculateSHA256(staged))) {
+            Files.deleteIfExists(staged);
+            return false;
+        }
+
+        Files.createDirectories(targetFile.getParent());
+        Files.move(staged, targetFile, StandardCopyOption.REPLACE_EXISTING);
+        LOGGER.info("Installed " + mod.getFileName() + " from staging");
+        return true;
+    }
+
+    private Path getStagedFile(String hash) {
+        return configManager.getConfigDir().resolve(STAGING_DIR).resolve(hash.toLowerCase() + ".jar");
+    }
+
+    // Hashes come from the server and end up in file names; accept only SHA-256 hex
+    private static boolean isValidHash(String hash) {
+        return hash != null && hash.length() == 64 && hash.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    /**
+     * Drop staged files nobody has installed for a while, e.g. for servers no longer played on
+     */
+    private void pruneStaging() {
+        Path stagingDir = configManager.getConfigDir().resolve(STAGING_DIR);
+        if (!Files.isDirectory(stagingDir)) return;
+
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(STAGED_FILE_MAX_AGE_DAYS);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.fine("Failed to prune staging directory: " + e.getMessage());
+        }
+    }
+
+    private void downloadMod(ModInfo mod) throws IOException {
+        Path targetFile = platform.getModsDirectory().resolve(mod.getFileName());
+        SyncEvents.FileTransfer event = new SyncEvents.FileTransfer();
+        event.begin();
+        String source = "failed";
+        try {
+            source = obtainMod(mod, targetFile);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.modId = mod.getModId();
+                event.fileName = mod.getFileName();
+                event.source = source;
+                event.bytes = Files.exists(targetFile) ? Files.size(targetFile) : 0;
+                event.commit();
+            }
+        }
+    }
 
+    /**
+     * Put a mod in place, returning where it came from
+     */
+    private String obtainMod(ModInfo mod, Path targetFile) throws IOException {
         // Check if file already exists and matches hash
         if (Files.exists(targetFile) && mod.getSha256Hash() != null) {
             String existingHash = calculateSHA256(targetFile);
             if (existingHash.equals(mod.getSha256Hash())) {
                 LOGGER.info("Mod " + mod.getModId() + " already exists with correct hash, skipping download");
-                return;
+                return "existing";
             }
         }
 
-        String downloadUrl = determineDownloadUrl(mod);
-        LOGGER.info("Downloading mod: " + mod.getName() + " from " + downloadUrl);
-
-        downloadFile(downloadUrl, targetFile, mod.getSha256Hash());
-    }
+        // Prefetched while browsing the server list: only a verify and a move left
+        if (installStaged(mod, targetFile)) {
+            return "staged";
+        }
 
-    private String determineDownloadUrl(ModInfo mod) {
         ConfigManager.ClientConfig.DownloadSource source = configManager.getClientConfig().getDefaultDownloadSource();
 
         if (source == ConfigManager.ClientConfig.DownloadSource.SERVER || mod.getDownloadUrl() == null) {
-            // Request from server
-            requestModFromServer(mod);
-            return null; // Will be handled by chunk system
+            // Request from server, assembled by the chunk system
+            LOGGER.info("Downloading mod: " + mod.getName() + " from server");
+            downloadFromServer(mod, targetFile);
+            return "server";
         } else {
             // Use provided URL
-            return mod.getDownloadUrl();
+            LOGGER.info("Downloading mod: " + mod.getName() + " from " + mod.getDownloadUrl());
+            downloadFile(mod.getDownloadUrl(), targetFile, mod.getSha256Hash());
+            return "url";
         }
     }
 
-    private void requestModFromServer(ModInfo mod) {
+    private void downloadFromServer(ModInfo mod, Path targetFile) throws IOException {
+        // Picks up blocks left by an interrupted attempt, possibly from before a restart
+        PartialDownload partial = PartialDownload.open(configManager.getConfigDir().resolve(PARTIAL_DIR), mod);
+        List<ModSync.ByteRange> ranges = partial.getMissingRanges();
+        if (partial.hasProgress()) {
+            LOGGER.info("Resuming " + mod.getFileName() + " with " + partial.getBytesPresent() + " bytes already received");
+        }
+
+        ChunkedDownload transfer = new ChunkedDownload(mod, partial);
+        activeTransfers.put(mod.getModId(), transfer);
+
         try {
-            ModSync.DownloadRequest request = new ModSync.DownloadRequest(mod.getModId(), mod.getFileName());
-            byte[] data = GSON.toJson(request).getBytes();
-            platform.sendToServer(ModSync.DOWNLOAD_REQUEST_CHANNEL, data);
+            if (partial.isComplete()) {
+                transfer.completion.complete(null);
+            } else {
+                requestModFromServer(mod, clientChunkSizer.getPreferredChunkSize(), ranges);
+            }
+            transfer.completion.get(SERVER_TRANSFER_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            transfer.close();
+            // Either way this copy is finished with: it moves into place or fails verification
+            partial.discard();
+            // Every leaf already checked out against a tree whose root matched the manifest: no second full pass
+            verifyAndMove(partial.getDataFile(), targetFile, transfer.isTreeVerified() ? null : mod.getSha256Hash());
+            recordTransfer(transfer.bytesReceived, System.nanoTime() - transfer.requestedAt);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for " + mod.getFileName() + " from server");
+        } catch (ExecutionException e) {
+            throw new IOException("Server transfer failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + mod.getFileName());
+        } finally {
+            // Whatever arrived stays on disk for the next attempt
+            activeTransfers.remove(mod.getModId(), transfer);
+            transfer.close();
+        }
+    }
+
+    private void requestModFromServer(ModInfo mod, int preferredChunkSize, List<ModSync.ByteRange> ranges) {
+        try {
+            ModSync.DownloadRequest request = new ModSync.DownloadRequest(mod.getModId(), mod.getFileName(),
+                    preferredChunkSize, ranges);
+            byte[] data = MessageCodecs.encode(MessageCodecs.DOWNLOAD_REQUEST, request);
+            transport.sendToServer(ModSync.DOWNLOAD_REQUEST_CHANNEL, data);
         } catch (Exception e) {
             LOGGER.warning("Failed to request mod from server: " + e.getMessage());
             throw new RuntimeException("Server download not available");
@@ -135,6 +392,16 @@ public class DownloadManager {
     }
 
     private void downloadFile(String url, Path targetPath, String expectedHash) throws IOException {
+        // Download to temp file first
+        Path tempFile = Files.createTempFile("modsync_download", ".tmp");
+        fetch(url, tempFile, null);
+        verifyAndMove(tempFile, targetPath, expectedHash);
+    }
+
+    /**
+     * Stream a URL into a file, optionally throttled by {@code bandwidth}
+     */
+    private void fetch(String url, Path file, TokenBucket bandwidth) throws IOException {
         if (url == null) {
             throw new IOException("No download URL provided");
         }
@@ -154,17 +421,17 @@ public class DownloadManager {
             throw new IOException("File too large: " + contentLength + " bytes");
         }
 
-        // Download to temp file first
-        Path tempFile = Files.createTempFile("modsync_download", ".tmp");
-
         try (InputStream in = connection.getInputStream();
-             OutputStream out = Files.newOutputStream(tempFile)) {
+             OutputStream out = Files.newOutputStream(file)) {
 
-            byte[] buffer = new byte[CHUNK_SIZE];
+            byte[] buffer = new byte[DISK_BUFFER_SIZE];
             long downloaded = 0;
             int bytesRead;
 
             while ((bytesRead = in.read(buffer)) != -1) {
+                if (bandwidth != null) {
+                    bandwidth.acquire(bytesRead);
+                }
                 out.write(buffer, 0, bytesRead);
                 downloaded += bytesRead;
 
@@ -174,8 +441,13 @@ public class DownloadManager {
                     // TODO: Update UI progress bar
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading " + url);
         }
+    }
 
+    private void verifyAndMove(Path tempFile, Path targetPath, String expectedHash) throws IOException {
         // Verify hash if provided
         if (expectedHash != null && !expectedHash.isEmpty()) {
             String actualHash = calculateSHA256(tempFile);
@@ -190,9 +462,8 @@ public class DownloadManager {
         Files.move(tempFile, targetPath, StandardCopyOption.REPLACE_EXISTING);
     }
 
-    private void extractModpack(Path zipFile) throws IOException {
-        Path modsDir = platform.getModsDirectory();
-
+    // Package-private and static for the benchmarks
+    static void extractModpack(Path zipFile, Path modsDir) throws IOException {
         // Clear existing mods directory (backup first)
         Path backupDir = modsDir.getParent().resolve("mods_backup_" + System.currentTimeMillis());
         if (Files.exists(modsDir)) {
@@ -226,13 +497,23 @@ public class DownloadManager {
                 Path targetFile = modsDir.resolve(fileName);
                 Files.createDirectories(targetFile.getParent());
 
+                SyncEvents.ModpackEntryExtracted event = new SyncEvents.ModpackEntryExtracted();
+                event.begin();
+                long written = 0;
                 try (OutputStream out = Files.newOutputStream(targetFile)) {
-                    byte[] buffer = new byte[CHUNK_SIZE];
+                    byte[] buffer = new byte[DISK_BUFFER_SIZE];
                     int len;
                     while ((len = zis.read(buffer)) > 0) {
                         out.write(buffer, 0, len);
+                        written += len;
                     }
                 }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.entry = fileName;
+                    event.bytes = written;
+                    event.commit();
+                }
 
                 LOGGER.info("Extracted mod: " + fileName);
             }
@@ -251,92 +532,476 @@ public class DownloadManager {
         }
     }
 
-    private String calculateSHA256(Path filePath) throws IOException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            try (InputStream is = Files.newInputStream(filePath)) {
-                byte[] buffer = new byte[CHUNK_SIZE];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    digest.update(buffer, 0, bytesRead);
-                }
+    static String calculateSHA256(Path filePath) throws IOException {
+        SyncEvents.FileHashed event = new SyncEvents.FileHashed();
+        event.begin();
+        MessageDigest digest = HashTree.sha256();
+        long size = 0;
+        try (InputStream is = Files.newInputStream(filePath)) {
+            byte[] buffer = new byte[DISK_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+                size += bytesRead;
             }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.fileName = filePath.getFileName().toString();
+            event.bytes = size;
+            event.commit();
+        }
+        return HashTree.toHex(digest.digest());
+    }
 
-            byte[] hashBytes = digest.digest();
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
+    /**
+     * Tasks waiting for one of the download threads
+     */
+    public int getQueueDepth() {
+        return downloadExecutor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) downloadExecutor).getQueue().size() : 0;
+    }
 
-        } catch (Exception e) {
-            throw new IOException("Failed to calculate SHA-256: " + e.getMessage(), e);
-        }
+    public int getActiveTransferCount() {
+        return activeTransfers.size();
+    }
+
+    /**
+     * Largest chunk payload that fits in one clientbound packet once DownloadChunk framing is added
+     */
+    private int getMaxChunkDataSize() {
+        return platform.getMaxClientboundPayloadSize() - DownloadChunk.MAX_HEADER_SIZE;
     }
 
     /**
-     * Handle server-side download request from client
+     * Handle server-side download request from client. Only the bundle and the jars of
+     * {@code servedMods} (the mods the handshake advertises) can be requested, by mod ID; the
+     * client's file name is never used.
      */
-    public void handleServerDownloadRequest(Object player, ModSync.DownloadRequest request) {
+    public void handleServerDownloadRequest(Object player, ModSync.DownloadRequest request, List<ModInfo> servedMods) {
         if (!configManager.getServerConfig().isDirectDownloadEnabled()) {
             return;
         }
 
+        Path modFile = resolveServedFile(request.getModId(), servedMods);
+        if (modFile == null) {
+            LOGGER.warning("Refusing download of " + request.getModId() + ": not a mod this server offers");
+            return;
+        }
+
         CompletableFuture.runAsync(() -> {
             try {
-                Path modsDir = platform.getModsDirectory();
-                Path modFile = modsDir.resolve(request.getFileName());
-
                 if (!Files.exists(modFile)) {
-                    LOGGER.warning("Requested mod file not found: " + request.getFileName());
+                    LOGGER.warning("Requested mod file not found: " + modFile.getFileName());
                     return;
                 }
 
-                // Stream file to client in chunks
-                try (InputStream is = Files.newInputStream(modFile)) {
-                    byte[] buffer = new byte[CHUNK_SIZE];
-                    int bytesRead;
+                // Negotiate: never exceed what the client asked for or what one packet can carry
+                int chunkSize = ChunkSizer.negotiate(getMaxChunkDataSize(), request.getPreferredChunkSize());
+
+                SyncEvents.FileServed event = new SyncEvents.FileServed();
+                event.begin();
+
+                // Leaf hashes first, so the client can verify chunks as they land
+                long hashStart = System.nanoTime();
+                HashTree tree = getHashTree(modFile);
+                long hashTreeNanos = System.nanoTime() - hashStart;
+                byte[] info = MessageCodecs.encode(MessageCodecs.DOWNLOAD_INFO,
+                        new ModSync.DownloadInfo(request.getModId(), tree.getFileSize(), tree.getLeafHashes()));
+                transport.sendToClient(player, ModSync.DOWNLOAD_INFO_CHANNEL, info);
+
+                // Stream the requested ranges (by default the whole file) to the client in chunks
+                try (FileChannel file = FileChannel.open(modFile, StandardOpenOption.READ)) {
+                    long started = System.nanoTime();
+                    long size = file.size();
+                    List<ModSync.ByteRange> ranges = request.getRanges().isEmpty()
+                            ? List.of(new ModSync.ByteRange(0, size)) : normalizeRanges(request.getRanges(), size);
+                    byte[] buffer = new byte[chunkSize];
                     int chunkIndex = 0;
+                    long bytesSent = 0;
 
-                    while ((bytesRead = is.read(buffer)) != -1) {
-                        byte[] chunk = new byte[bytesRead];
-                        System.arraycopy(buffer, 0, chunk, 0, bytesRead);
+                    for (ModSync.ByteRange range : ranges) {
+                        long position = range.getOffset();
+                        long end = position + range.getLength();
 
-                        DownloadChunk chunkMessage = new DownloadChunk(
-                                request.getModId(), chunkIndex++, chunk, false);
+                        while (position < end) {
+                            int bytesRead = readFully(file, buffer, (int) Math.min(chunkSize, end - position), position);
+                            if (bytesRead <= 0) break;
 
-                        byte[] chunkData = GSON.toJson(chunkMessage).getBytes();
-                        platform.sendToClient(player, ModSync.DOWNLOAD_CHUNK_CHANNEL, chunkData);
-                    }
+                            byte[] chunkData = DownloadChunk.encode(request.getModId(), chunkIndex++, position,
+                                    buffer, 0, bytesRead, false);
 
-                    // Send final chunk to indicate completion
-                    DownloadChunk finalChunk = new DownloadChunk(request.getModId(), chunkIndex, new byte[0], true);
-                    byte[] finalData = GSON.toJson(finalChunk).getBytes();
-                    platform.sendToClient(player, ModSync.DOWNLOAD_CHUNK_CHANNEL, finalData);
+                            transport.sendToClient(player, ModSync.DOWNLOAD_CHUNK_CHANNEL, chunkData);
+                            position += bytesRead;
+                            bytesSent += bytesRead;
+                        }
+                    }
 
-                    LOGGER.info("Sent mod " + request.getFileName() + " to client in " + chunkIndex + " chunks");
+                    // Send final chunk to indicate completion; its offset tells the client the file size
+                    byte[] finalData = DownloadChunk.encode(request.getModId(), chunkIndex, size,
+                            buffer, 0, 0, true);
+                    transport.sendToClient(player, ModSync.DOWNLOAD_CHUNK_CHANNEL, finalData);
+
+                    recordTransfer(bytesSent, System.nanoTime() - started);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.modId = request.getModId();
+                        event.fileName = modFile.getFileName().toString();
+                        event.bytes = bytesSent;
+                        event.chunks = chunkIndex;
+                        event.hashTreeDuration = hashTreeNanos;
+                        event.commit();
+                    }
+                    LOGGER.info("Sent mod " + modFile.getFileName() + " to client in " + chunkIndex + " chunks ("
+                            + bytesSent + " of " + size + " bytes)");
                 }
 
             } catch (IOException e) {
                 LOGGER.severe("Failed to send mod to client: " + e.getMessage());
+                PacketTrace.dumpOnError("failed send to client");
             }
         }, downloadExecutor);
     }
 
+    /**
+     * File behind an advertised mod ID, or null if the ID isn't one the server offers
+     */
+    private Path resolveServedFile(String modId, List<ModInfo> servedMods) {
+        if (ModpackBundle.BUNDLE_MOD_ID.equals(modId)) {
+            ModpackBundle currentBundle = bundle;
+            return currentBundle != null ? currentBundle.getFile() : null;
+        }
+        for (ModInfo mod : servedMods) {
+            if (mod.getModId().equals(modId)) {
+                return platform.getModsDirectory().resolve(mod.getFileName());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Clip requested ranges to the file, widen them to whole blocks and merge any that overlap or
+     * touch, so a client can never make the server send more than the file once over
+     */
+    static List<ModSync.ByteRange> normalizeRanges(List<ModSync.ByteRange> requested, long size) {
+        List<long[]> spans = new ArrayList<>(requested.size());
+        for (ModSync.ByteRange range : requested) {
+            long start = Math.max(0, Math.min(range.getOffset(), size));
+            long length = range.getLength();
+            long end = length < 0 || length > size - start ? size : start + length;
+            // Partial files track whole blocks, so serve whole blocks
+            start -= start % ChunkSizer.BLOCK_SIZE;
+            end = Math.min(size, (end + ChunkSizer.BLOCK_SIZE - 1) / ChunkSizer.BLOCK_SIZE * ChunkSizer.BLOCK_SIZE);
+            if (start < end) {
+                spans.add(new long[] {start, end});
+            }
+        }
+        spans.sort(Comparator.comparingLong(span -> span[0]));
+
+        List<ModSync.ByteRange> merged = new ArrayList<>();
+        long start = -1;
+        long end = -1;
+        for (long[] span : spans) {
+            if (span[0] > end) {
+                if (start >= 0) {
+                    merged.add(new ModSync.ByteRange(start, end - start));
+                }
+                start = span[0];
+            }
+            end = Math.max(end, span[1]);
+        }
+        if (start >= 0) {
+            merged.add(new ModSync.ByteRange(start, end - start));
+        }
+        return merged;
+    }
+
+    private static void recordTransfer(long bytes, long nanos) {
+        SyncMetrics.TRANSFERS.increment();
+        SyncMetrics.TRANSFER_BYTES.add(bytes);
+        if (nanos > 0) {
+            SyncMetrics.TRANSFER_THROUGHPUT.observe(bytes * 1e9 / nanos);
+        }
+    }
+
+    private static int readFully(FileChannel file, byte[] buffer, int length, long position) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            if (file.read(target, position + target.position()) < 0) break;
+        }
+        return target.position();
+    }
+
+    /**
+     * Build (or load the cached) zip-mode bundle in the background; until it is ready
+     * {@link #getBundle()} returns null
+     */
+    public void prepareBundle(List<ModInfo> mods) {
+        downloadExecutor.execute(() -> {
+            try {
+                bundle = ModpackBundle.prepare(configManager.getConfigDir(), platform.getModsDirectory(), mods);
+            } catch (IOException e) {
+                LOGGER.severe("Failed to build modpack bundle: " + e.getMessage());
+            }
+        });
+    }
+
+    public ModpackBundle getBundle() {
+        return bundle;
+    }
+
+    /**
+     * Copy of each mod with its SHA-256, size and hash tree root attached where they are cached.
+     * Missing hashes are computed in the background for later handshakes, never on the caller's
+     * thread.
+     */
+    public List<ModInfo> withFileHashes(List<ModInfo> mods) {
+        List<ModInfo> result = new ArrayList<>(mods.size());
+        for (ModInfo mod : mods) {
+            Path file = platform.getModsDirectory().resolve(mod.getFileName());
+            CachedHashTree cached = hashTrees.get(file);
+            if (cached != null && cached.isCurrent(file)) {
+                result.add(mod.withDownloadInfo(cached.sha256, cached.size, mod.getDownloadUrl())
+                        .withHashTreeRoot(cached.root));
+            } else {
+                result.add(mod);
+                if (Files.isRegularFile(file) && hashTreesInProgress.add(file)) {
+                    downloadExecutor.execute(() -> {
+                        try {
+                            getHashTree(file);
+                        } catch (IOException e) {
+                            LOGGER.warning("Failed to hash " + file.getFileName() + ": " + e.getMessage());
+                        } finally {
+                            hashTreesInProgress.remove(file);
+                        }
+                    });
+                }
+            }
+        }
+        return result;
+    }
+
+    private HashTree getHashTree(Path file) throws IOException {
+        CachedHashTree cached = hashTrees.get(file);
+        if (cached != null && cached.isCurrent(file)) {
+            SyncMetrics.HASH_TREE_CACHE.labels("hit").increment();
+            return cached.tree;
+        }
+        SyncMetrics.HASH_TREE_CACHE.labels("miss").increment();
+        MessageDigest fileDigest = HashTree.sha256();
+        HashTree tree = HashTree.compute(file, fileDigest);
+        CachedHashTree computed = new CachedHashTree(file, tree, HashTree.toHex(fileDigest.digest()));
+        hashTrees.put(file, computed);
+        return computed.tree;
+    }
+
+    /**
+     * A hash tree, the whole-file hash and the file state they were computed from
+     */
+    private static class CachedHashTree {
+        private final HashTree tree;
+        private final String root;
+        private final String sha256;
+        private final long size;
+        private final long modified;
+
+        CachedHashTree(Path file, HashTree tree, String sha256) throws IOException {
+            this.tree = tree;
+            this.root = tree.getRoot();
+            this.sha256 = sha256;
+            this.size = tree.getFileSize();
+            this.modified = Files.getLastModifiedTime(file).toMillis();
+        }
+
+        boolean isCurrent(Path file) {
+            try {
+                return Files.size(file) == size && Files.getLastModifiedTime(file).toMillis() == modified;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Handle the leaf hashes the server sends ahead of a transfer's chunks
+     */
+    public void handleDownloadInfo(byte[] data) {
+        try {
+            ModSync.DownloadInfo info = MessageCodecs.decode(MessageCodecs.DOWNLOAD_INFO, data);
+            ChunkedDownload transfer = activeTransfers.get(info.getModId());
+            if (transfer != null) {
+                transfer.setHashTree(new HashTree(info.getFileSize(), info.getLeafHashes()));
+            }
+        } catch (Exception e) {
+            LOGGER.warning("Failed to handle download info: " + e.getMessage());
+        }
+    }
+
     /**
      * Handle incoming download chunk from server
      */
     public void handleDownloadChunk(byte[] data) {
         try {
-            String json = new String(data);
-            DownloadChunk chunk = GSON.fromJson(json, DownloadChunk.class);
+            DownloadChunk chunk = DownloadChunk.decode(data);
+            ChunkedDownload transfer = activeTransfers.get(chunk.getModId());
+            if (transfer == null) {
+                LOGGER.warning("Received chunk for unknown transfer: " + chunk.getModId());
+                return;
+            }
 
-            // TODO: Implement chunk assembly and file writing
-            // This would maintain a map of modId -> ChunkedDownload
-            // and assemble chunks into complete files
+            transfer.accept(chunk);
 
         } catch (Exception e) {
             LOGGER.warning("Failed to handle download chunk: " + e.getMessage());
+            PacketTrace.dumpOnError("bad download chunk");
+        }
+    }
+
+    /**
+     * Client-side state for one direct transfer: writes chunks at their offsets into the partial
+     * file, records them in its block map and reports timing back to the chunk sizer
+     */
+    private class ChunkedDownload {
+        private final ModInfo mod;
+        private final PartialDownload partial;
+        private final FileChannel channel;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final long requestedAt = System.nanoTime();
+        private long firstChunkAt = -1;
+        private long bytesReceived = 0;
+        private long lastSavedAt = System.nanoTime();
+        private boolean closed;
+        // Set once the server's leaf hashes arrive; leaves are checked as soon as they are whole
+        private HashTree tree;
+        private final BitSet verifiedLeaves = new BitSet();
+        private byte[] leafBuffer;
+        private int retryRounds;
+
+        ChunkedDownload(ModInfo mod, PartialDownload partial) throws IOException {
+            this.mod = mod;
+            this.partial = partial;
+            this.channel = FileChannel.open(partial.getDataFile(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        synchronized void setHashTree(HashTree tree) {
+            if (completion.isDone()) return;
+
+            try {
+                if (tree.getFileSize() < 0 || tree.getFileSize() > MAX_DOWNLOAD_SIZE
+                        || tree.getLeafHashes().length != (long) HashTree.leafCount(tree.getFileSize()) * HashTree.HASH_SIZE) {
+                    throw new IOException("Malformed hash tree for " + mod.getFileName());
+                }
+                if (mod.getHashTreeRoot() != null && !mod.getHashTreeRoot().equals(tree.getRoot())) {
+                    throw new IOException("Hash tree for " + mod.getFileName() + " does not match the manifest");
+                }
+                this.tree = tree;
+                this.leafBuffer = new byte[HashTree.LEAF_SIZE];
+                // Covers leaves resumed from an earlier attempt as well as chunks that beat the tree here
+                verifyLeaves(0, tree.getLeafCount() - 1);
+            } catch (IOException e) {
+                close();
+                completion.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Whether every leaf checked out against a tree pinned by the manifest's root. A tree the
+         * manifest says nothing about only came from the server, so the whole-file hash still runs.
+         */
+        boolean isTreeVerified() {
+            return tree != null && mod.getHashTreeRoot() != null && partial.getTotalSize() == tree.getFileSize()
+                    && verifiedLeaves.cardinality() == tree.getLeafCount();
+        }
+
+        private void verifyLeaves(int first, int last) throws IOException {
+            for (int leaf = first; leaf <= last && leaf < tree.getLeafCount(); leaf++) {
+                long offset = (long) leaf * HashTree.LEAF_SIZE;
+                int length = tree.leafLength(leaf);
+                if (verifiedLeaves.get(leaf) || !partial.hasRange(offset, length)) continue;
+
+                ByteBuffer buffer = ByteBuffer.wrap(leafBuffer, 0, length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) break;
+                }
+
+                if (buffer.position() == length && tree.verifyLeaf(leaf, leafBuffer, length)) {
+                    verifiedLeaves.set(leaf);
+                } else {
+                    LOGGER.warning("Leaf " + leaf + " of " + mod.getFileName() + " failed verification, will re-request");
+                    SyncMetrics.LEAF_FAILURES.increment();
+                    partial.clearRange(offset, length);
+                }
+            }
+        }
+
+        synchronized void accept(DownloadChunk chunk) {
+            if (completion.isDone()) return;
+
+            try {
+                long now = System.nanoTime();
+                if (firstChunkAt < 0) {
+                    firstChunkAt = now;
+                    clientChunkSizer.onRoundTrip(now - requestedAt);
+                }
+
+                if (chunk.getOffset() + chunk.getData().length > MAX_DOWNLOAD_SIZE) {
+                    throw new IOException("File too large: " + (chunk.getOffset() + chunk.getData().length) + " bytes");
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(chunk.getData());
+                long position = chunk.getOffset();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                bytesReceived += chunk.getData().length;
+                partial.markReceived(chunk.getOffset(), chunk.getData().length);
+                if (tree != null && chunk.getData().length > 0) {
+                    verifyLeaves((int) (chunk.getOffset() / HashTree.LEAF_SIZE),
+                            (int) ((chunk.getOffset() + chunk.getData().length - 1) / HashTree.LEAF_SIZE));
+                }
+
+                if (chunk.isLast()) {
+                    clientChunkSizer.onThroughput(bytesReceived, now - firstChunkAt);
+                    partial.setTotalSize(chunk.getOffset());
+                    channel.truncate(chunk.getOffset());
+                    saveProgress();
+                    if (!partial.isComplete()) {
+                        if (tree == null || retryRounds >= MAX_LEAF_RETRY_ROUNDS) {
+                            throw new IOException("Transfer of " + mod.getFileName() + " ended with blocks missing");
+                        }
+                        // Only the leaves that failed verification go round again
+                        retryRounds++;
+                        SyncMetrics.RETRANSMIT_ROUNDS.increment();
+                        requestModFromServer(mod, clientChunkSizer.getPreferredChunkSize(), partial.getMissingRanges());
+                        return;
+                    }
+                    completion.complete(null);
+                } else if (now - lastSavedAt > PROGRESS_SAVE_INTERVAL_NANOS) {
+                    saveProgress();
+                }
+            } catch (IOException e) {
+                close();
+                completion.completeExceptionally(e);
+            }
+        }
+
+        private void saveProgress() throws IOException {
+            // Data first, so the block map never claims bytes that aren't on disk
+            channel.force(false);
+            partial.save();
+            lastSavedAt = System.nanoTime();
+        }
+
+        synchronized void close() {
+            if (closed) return;
+            closed = true;
+            try {
+                if (!completion.isDone() || completion.isCompletedExceptionally()) {
+                    saveProgress();
+                }
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warning("Failed to close transfer file for " + mod.getFileName() + ": " + e.getMessage());
+            }
         }
     }
 
@@ -344,21 +1009,77 @@ public class DownloadManager {
      * Represents a chunk of downloaded data
      */
     public static class DownloadChunk {
+        private static final int MAX_MOD_ID_BYTES = 256;
+        // ID length + mod ID + index + offset + last flag + data length
+        public static final int MAX_HEADER_SIZE = 2 + MAX_MOD_ID_BYTES + 4 + 8 + 1 + 4;
+
         private final String modId;
         private final int chunkIndex;
+        private final long offset;
         private final byte[] data;
         private final boolean isLast;
 
-        public DownloadChunk(String modId, int chunkIndex, byte[] data, boolean isLast) {
+        public DownloadChunk(String modId, int chunkIndex, long offset, byte[] data, boolean isLast) {
             this.modId = modId;
             this.chunkIndex = chunkIndex;
+            this.offset = offset;
             this.data = data;
             this.isLast = isLast;
         }
 
         public String getModId() { return modId; }
         public int getChunkIndex() { return chunkIndex; }
+        public long getOffset() { return offset; }
         public byte[] getData() { return data; }
         public boolean isLast() { return isLast; }
+
+        /**
+         * Frame a chunk straight from the sender's read buffer, so the payload is copied only once
+         */
+        public static byte[] encode(String modId, int chunkIndex, long offset,
+                                    byte[] buffer, int start, int length, boolean isLast) throws IOException {
+            byte[] id = modId.getBytes(StandardCharsets.UTF_8);
+            if (id.length > MAX_MOD_ID_BYTES) {
+                throw new IOException("Mod ID too long for chunk header: " + modId);
+            }
+
+            ByteBuffer out = ByteBuffer.allocate(2 + id.length + 4 + 8 + 1 + 4 + length);
+            out.putShort((short) id.length).put(id);
+            out.putInt(chunkIndex);
+            out.putLong(offset);
+            out.put((byte) (isLast ? 1 : 0));
+            out.putInt(length);
+            out.put(buffer, start, length);
+            return out.array();
+        }
+
+        public static DownloadChunk decode(byte[] data) throws IOException {
+            try {
+                ByteBuffer in = ByteBuffer.wrap(data);
+                byte[] id = new byte[checkLength(in.getShort() & 0xFFFF, Math.min(MAX_MOD_ID_BYTES, in.remaining()))];
+                in.get(id);
+                int chunkIndex = in.getInt();
+                long offset = in.getLong();
+                if (offset < 0) {
+                    throw new IOException("Negative chunk offset " + offset);
+                }
+                boolean isLast = in.get() != 0;
+                byte[] payload = new byte[checkLength(in.getInt(), in.remaining())];
+                in.get(payload);
+                return new DownloadChunk(new String(id, StandardCharsets.UTF_8), chunkIndex, offset, payload, isLast);
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed download chunk", e);
+            }
+        }
+
+        /**
+         * Validate a length read off the wire before anything is allocated for it
+         */
+        private static int checkLength(int length, int available) throws IOException {
+            if (length < 0 || length > available) {
+                throw new IOException("Chunk field of " + length + " bytes exceeds the " + available + " available");
+            }
+            return length;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+package com.rat.modsync.common;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * SHA-256 of the client's mod jars, kept across restarts in {@code config/modsync/file_hashes.json}
+ * and keyed by file name. An entry is reused while the file's size and modification time are
+ * unchanged, so hash-based matching only reads a jar again after it has been replaced.
+ */
+public class FileHashCache {
+    private static final Logger LOGGER = Logger.getLogger(FileHashCache.class.getName());
+    private static final Gson GSON = new Gson();
+    private static final Type ENTRIES_TYPE = new TypeToken<Map<String, Entry>>(){}.getType();
+    private static final String FILE_NAME = "file_hashes.json";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private volatile boolean dirty;
+
+    public FileHashCache(Path configDir) {
+        this.file = configDir.resolve(FILE_NAME);
+    }
+
+    /**
+     * SHA-256 of a jar in the mods directory, or null if it doesn't exist or can't be read
+     */
+    public String getSha256(Path jar) {
+        ensureLoaded();
+        try {
+            if (!Files.isRegularFile(jar)) return null;
+            long size = Files.size(jar);
+            long modified = Files.getLastModifiedTime(jar).toMillis();
+
+            String key = jar.getFileName().toString();
+            Entry entry = entries.get(key);
+            if (entry != null && entry.size == size && entry.modified == modified) {
+                SyncMetrics.FILE_HASH_CACHE.labels("hit").increment();
+                return entry.sha256;
+            }
+            SyncMetrics.FILE_HASH_CACHE.labels("miss").increment();
+
+            Entry computed = new Entry(size, modified, DownloadManager.calculateSHA256(jar));
+            entries.put(key, computed);
+            dirty = true;
+            return computed.sha256;
+        } catch (IOException e) {
+            LOGGER.fine("Failed to hash " + jar.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remember the hash of a jar that was just written and verified, sparing the next lookup a read
+     */
+    public void record(Path jar, String sha256) {
+        ensureLoaded();
+        try {
+            entries.put(jar.getFileName().toString(),
+                    new Entry(Files.size(jar), Files.getLastModifiedTime(jar).toMillis(), sha256));
+            dirty = true;
+        } catch (IOException e) {
+            LOGGER.fine("Failed to record hash of " + jar.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the cache if anything was hashed since the last save
+     */
+    public synchronized void save() {
+        if (!dirty) return;
+        dirty = false;
+        try {
+            Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+            Files.writeString(temp, GSON.toJson(entries, ENTRIES_TYPE), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to save " + FILE_NAME + ": " + e.getMessage());
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            if (Files.exists(file)) {
+                try {
+                    Map<String, Entry> stored = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), ENTRIES_TYPE);
+                    if (stored != null) {
+                        stored.forEach((name, entry) -> {
+                            if (entry != null && entry.sha256 != null) entries.put(name, entry);
+                        });
+                    }
+                } catch (Exception e) {
+                    LOGGER.warning("Ignoring unreadable " + FILE_NAME + ": " + e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private static class Entry {
+        private long size;
+        private long modified;
+        private String sha256;
+
+        Entry(long size, long modified, String sha256) {
+            this.size = size;
+            this.modified = modified;
+            this.sha256 = sha256;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.rat.modsync.common;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Message transport layered on top of {@link Platform#sendToServer}/{@link Platform#sendToClient}.
+ *
+ * Messages that fit in one packet are passed straight through. Larger ones are split into
+ * sequenced fragments on {@link ModSync#FRAGMENT_CHANNEL} and reassembled on the other side
+ * into a single buffer sized up front, then dispatched through the {@link PacketHandlerRegistry}
+ * as if it had arrived on the original channel.
+ * Partially received messages are dropped after {@link #REASSEMBLY_TIMEOUT_MS}.
+ *
+ * Fragment headers are checked against the payload limit of the direction they came from before
+ * anything is allocated, and each sender may only have {@link #MAX_PARTIALS_PER_SENDER} messages
+ * and twice its direction's message limit in flight. Clients only ever send small messages, so
+ * the serverbound limit is far below the clientbound one.
+ */
+public class FragmentingTransport {
+    private static final Logger LOGGER = Logger.getLogger(FragmentingTransport.class.getName());
+
+    // messageId + index + count + totalLength + sliceSize + channel wire ID
+    private static final int FRAGMENT_HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 4;
+    private static final int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_SERVERBOUND_MESSAGE_SIZE = 256 * 1024;
+    private static final int MAX_PARTIALS_PER_SENDER = 4;
+    private static final long REASSEMBLY_TIMEOUT_MS = 30_000;
+
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ModSync-Fragment-Sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Platform platform;
+    private final PacketHandlerRegistry registry;
+    private final Map<FragmentKey, PartialMessage> partials = new ConcurrentHashMap<>();
+    private final AtomicInteger nextMessageId = new AtomicInteger();
+
+    public FragmentingTransport(Platform platform) {
+        this.platform = platform;
+        this.registry = platform.getPacketHandlerRegistry();
+        platform.registerPacketHandler(ModSync.FRAGMENT_CHANNEL, this::handleFragment);
+        SWEEPER.scheduleWithFixedDelay(this::expireStale, REASSEMBLY_TIMEOUT_MS, REASSEMBLY_TIMEOUT_MS / 2,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register a handler for a channel; it receives both direct and reassembled messages
+     */
+    public void registerPacketHandler(String channel, Platform.PacketHandler handler) {
+        platform.registerPacketHandler(channel, handler);
+    }
+
+    public void sendToServer(String channel, byte[] data) {
+        SyncMetrics.BYTES_SENT.labels(channel).add(data.length);
+        int limit = platform.getMaxServerboundPayloadSize();
+        if (data.length <= limit) {
+            platform.sendToServer(channel, data);
+            return;
+        }
+
+        fragment(channel, data, limit, fragment -> platform.sendToServer(ModSync.FRAGMENT_CHANNEL, fragment));
+    }
+
+    public void sendToClient(Object player, String channel, byte[] data) {
+        SyncMetrics.BYTES_SENT.labels(channel).add(data.length);
+        int limit = platform.getMaxClientboundPayloadSize();
+        if (data.length <= limit) {
+            platform.sendToClient(player, channel, data);
+            return;
+        }
+
+        fragment(channel, data, limit, fragment -> platform.sendToClient(player, ModSync.FRAGMENT_CHANNEL, fragment));
+    }
+
+    /**
+     * Messages partly reassembled, across all senders
+     */
+    public int getPendingReassemblies() {
+        return partials.size();
+    }
+
+    /**
+     * Split a message and hand each fragment to {@code sink} as soon as it is framed
+     */
+    private void fragment(String channel, byte[] data, int limit, Consumer<byte[]> sink) {
+        if (data.length > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Message on " + channel + " too large: " + data.length + " bytes");
+        }
+
+        int channelId = registry.wireIdOf(channel);
+        int sliceSize = limit - FRAGMENT_HEADER_SIZE;
+        if (sliceSize <= 0) {
+            throw new IllegalStateException("Payload limit " + limit + " too small to fragment " + channel);
+        }
+
+        int messageId = nextMessageId.incrementAndGet();
+        int count = (data.length + sliceSize - 1) / sliceSize;
+
+        for (int index = 0; index < count; index++) {
+            int start = index * sliceSize;
+            int length = Math.min(sliceSize, data.length - start);
+
+            ByteBuffer buffer = ByteBuffer.allocate(FRAGMENT_HEADER_SIZE + length);
+            buffer.putInt(messageId);
+            buffer.putInt(index);
+            buffer.putInt(count);
+            buffer.putInt(data.length);
+            buffer.putInt(sliceSize);
+            buffer.putInt(channelId);
+            buffer.put(data, start, length);
+            SyncMetrics.BYTES_SENT.labels(ModSync.FRAGMENT_CHANNEL).add(buffer.capacity());
+            sink.accept(buffer.array());
+        }
+    }
+
+    private void handleFragment(Object sender, byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int messageId = buffer.getInt();
+            int index = buffer.getInt();
+            int count = buffer.getInt();
+            int totalLength = buffer.getInt();
+            int sliceSize = buffer.getInt();
+            int channelId = buffer.getInt();
+
+            // Packets from the server arrive with no sender
+            boolean fromServer = sender == null;
+            int maxMessageSize = fromServer ? MAX_MESSAGE_SIZE : MAX_SERVERBOUND_MESSAGE_SIZE;
+            int maxSliceSize = (fromServer ? platform.getMaxClientboundPayloadSize()
+                    : platform.getMaxServerboundPayloadSize()) - FRAGMENT_HEADER_SIZE;
+
+            if (totalLength <= 0 || totalLength > maxMessageSize || sliceSize <= 0 || sliceSize > maxSliceSize
+                    || count != (totalLength + (long) sliceSize - 1) / sliceSize || index < 0 || index >= count) {
+                LOGGER.warning("Dropping malformed fragment " + index + "/" + count + " of message " + messageId);
+                return;
+            }
+
+            FragmentKey key = new FragmentKey(sender, messageId);
+            PartialMessage partial = partials.get(key);
+            if (partial == null) {
+                partial = open(key, channelId, count, totalLength, sliceSize, 2L * maxMessageSize);
+                if (partial == null) {
+                    return;
+                }
+            }
+
+            byte[] complete = partial.add(index, buffer);
+            if (complete == null) {
+                return;
+            }
+
+            partials.remove(key);
+            registry.dispatch(partial.channelId, sender, complete);
+
+        } catch (Exception e) {
+            LOGGER.warning("Failed to handle fragment: " + e.getMessage());
+            PacketTrace.dumpOnError("fragment failure");
+        }
+    }
+
+    /**
+     * Start reassembling a message, unless the sender is already over its budget, in which case
+     * everything it has in flight is dropped. Returns the message to add fragments to, or null.
+     */
+    private synchronized PartialMessage open(FragmentKey key, int channelId, int count, int totalLength, int sliceSize,
+                                             long maxBytesPerSender) {
+        PartialMessage existing = partials.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        int inFlight = 0;
+        long bytes = totalLength;
+        for (Map.Entry<FragmentKey, PartialMessage> entry : partials.entrySet()) {
+            if (entry.getKey().sender == key.sender) {
+                inFlight++;
+                bytes += entry.getValue().data.length;
+            }
+        }
+
+        if (inFlight >= MAX_PARTIALS_PER_SENDER || bytes > maxBytesPerSender) {
+            LOGGER.warning("Dropping " + inFlight + " partial messages from a sender over its reassembly budget");
+            partials.keySet().removeIf(k -> k.sender == key.sender);
+            return null;
+        }
+
+        PartialMessage message = new PartialMessage(channelId, count, totalLength, sliceSize);
+        partials.put(key, message);
+        return message;
+    }
+
+    private void expireStale() {
+        long cutoff = System.currentTimeMillis() - REASSEMBLY_TIMEOUT_MS;
+        partials.entrySet().removeIf(entry -> {
+            if (entry.getValue().lastActivity < cutoff) {
+                LOGGER.warning("Timed out reassembling message on channel " + entry.getValue().channelId
+                        + " (" + entry.getValue().received + "/" + entry.getValue().count + " fragments)");
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Reassembly buffer for one message; fragments may arrive in any order
+     */
+    private static class PartialMessage {
+        private final int channelId;
+        private final int count;
+        private final byte[] data;
+        private final boolean[] seen;
+        private final int sliceSize;
+        private int received;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        PartialMessage(int channelId, int count, int totalLength, int sliceSize) {
+            this.channelId = channelId;
+            this.count = count;
+            this.data = new byte[totalLength];
+            this.seen = new boolean[count];
+            this.sliceSize = sliceSize;
+        }
+
+        /**
+         * Copy one fragment into place, returning the whole message once every fragment is in
+         */
+        synchronized byte[] add(int index, ByteBuffer payload) {
+            lastActivity = System.currentTimeMillis();
+            if (index >= seen.length || seen[index]) {
+                return null;
+            }
+
+            // Every fragment but the last is exactly one slice, so a short one would leave a gap
+            int length = payload.remaining();
+            long offset = (long) index * sliceSize;
+            if (length != Math.min(sliceSize, data.length - offset)) {
+                throw new IllegalStateException("Fragment " + index + " carries " + length + " bytes, expected "
+                        + Math.min(sliceSize, data.length - offset));
+            }
+
+            payload.get(data, (int) offset, length);
+            seen[index] = true;
+            received++;
+            return received == count ? data : null;
+        }
+    }
+
+    private static class FragmentKey {
+        private final Object sender;
+        private final int messageId;
+
+        FragmentKey(Object sender, int messageId) {
+            this.sender = sender;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof FragmentKey)) return false;
+            FragmentKey other = (FragmentKey) obj;
+            return sender == other.sender && messageId == other.messageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(sender), messageId);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Two-level hash tree over a file: a SHA-256 per {@link #LEAF_SIZE} leaf, and a root hashed over
+ * the leaf hashes and the file size.
+ *
+ * The root travels in the manifest; the leaf hashes are sent when a transfer starts. The receiver
+ * checks the leaves against the root once, then verifies each leaf as soon as all of its blocks
+ * have arrived, so a corrupt chunk costs one leaf re-request instead of the whole file.
+ */
+public class HashTree {
+    // A whole number of chunk blocks, so chunks never straddle a leaf partially at both ends
+    public static final int LEAF_SIZE = 16 * ChunkSizer.BLOCK_SIZE;
+    public static final int HASH_SIZE = 32;
+
+    private final long fileSize;
+    private final byte[] leafHashes;
+
+    public HashTree(long fileSize, byte[] leafHashes) {
+        this.fileSize = fileSize;
+        this.leafHashes = leafHashes;
+    }
+
+    public long getFileSize() { return fileSize; }
+    public byte[] getLeafHashes() { return leafHashes; }
+    public int getLeafCount() { return leafHashes.length / HASH_SIZE; }
+
+    public static HashTree compute(Path file) throws IOException {
+        return compute(file, null);
+    }
+
+    /**
+     * Compute the tree, also feeding every byte to {@code fileDigest} (if given) so a whole-file
+     * hash costs no second read
+     */
+    public static HashTree compute(Path file, MessageDigest fileDigest) throws IOException {
+        long size = Files.size(file);
+        byte[] leaves = new byte[leafCount(size) * HASH_SIZE];
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[LEAF_SIZE];
+
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int leaf = 0; leaf < leafCount(size); leaf++) {
+                int read = in.readNBytes(buffer, 0, LEAF_SIZE);
+                digest.update(buffer, 0, read);
+                if (fileDigest != null) {
+                    fileDigest.update(buffer, 0, read);
+                }
+                System.arraycopy(digest.digest(), 0, leaves, leaf * HASH_SIZE, HASH_SIZE);
+            }
+        }
+        return new HashTree(size, leaves);
+    }
+
+    public static int leafCount(long fileSize) {
+        return (int) ((fileSize + LEAF_SIZE - 1) / LEAF_SIZE);
+    }
+
+    /**
+     * Byte length of a leaf; only the last one can be short
+     */
+    public int leafLength(int leaf) {
+        return (int) Math.min(LEAF_SIZE, fileSize - (long) leaf * LEAF_SIZE);
+    }
+
+    public String getRoot() {
+        MessageDigest digest = sha256();
+        digest.update(leafHashes);
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(fileSize).array());
+        return toHex(digest.digest());
+    }
+
+    public boolean verifyLeaf(int leaf, byte[] data, int length) {
+        if (leaf < 0 || leaf >= getLeafCount() || length != leafLength(leaf)) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        digest.update(data, 0, length);
+        int from = leaf * HASH_SIZE;
+        return Arrays.equals(digest.digest(), 0, HASH_SIZE, leafHashes, from, from + HASH_SIZE);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
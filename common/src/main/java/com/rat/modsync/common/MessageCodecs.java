@@ -0,0 +1,270 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written binary codecs for ModSync's control messages.
+ *
+ * Each codec is a singleton created once here; encoding goes through a pooled
+ * {@link MessageWriter} and decoding reads fields in the same order they were written.
+ * New fields must be appended at the end of a message and read behind
+ * {@link MessageReader#hasRemaining()}, so older peers can still parse newer messages.
+ */
+public final class MessageCodecs {
+
+    /**
+     * Encoder/decoder pair for one message type
+     */
+    public interface MessageCodec<T> {
+        void write(T message, MessageWriter out);
+        T read(MessageReader in) throws IOException;
+    }
+
+    private static final MessageCodec<String> STRING = new MessageCodec<>() {
+        @Override
+        public void write(String message, MessageWriter out) {
+            out.writeString(message);
+        }
+
+        @Override
+        public String read(MessageReader in) throws IOException {
+            return in.readString();
+        }
+    };
+
+    private static final MessageCodec<String> NULLABLE_STRING = new MessageCodec<>() {
+        @Override
+        public void write(String message, MessageWriter out) {
+            out.writeNullableString(message);
+        }
+
+        @Override
+        public String read(MessageReader in) throws IOException {
+            return in.readNullableString();
+        }
+    };
+
+    public static final MessageCodec<ModSync.PingMessage> PING = new MessageCodec<>() {
+        @Override
+        public void write(ModSync.PingMessage message, MessageWriter out) {
+            out.writeString(message.getModId());
+            out.writeString(message.getVersion());
+        }
+
+        @Override
+        public ModSync.PingMessage read(MessageReader in) throws IOException {
+            return new ModSync.PingMessage(in.readString(), in.readString());
+        }
+    };
+
+    public static final MessageCodec<ModSync.PingResponse> PING_RESPONSE = new MessageCodec<>() {
+        @Override
+        public void write(ModSync.PingResponse message, MessageWriter out) {
+            out.writeBoolean(message.isCompatible());
+            out.writeString(message.getModId());
+            out.writeString(message.getVersion());
+            out.writeBoolean(message.isZipModeEnabled());
+        }
+
+        @Override
+        public ModSync.PingResponse read(MessageReader in) throws IOException {
+            return new ModSync.PingResponse(in.readBoolean(), in.readString(), in.readString(), in.readBoolean());
+        }
+    };
+
+    public static final MessageCodec<ModInfo> MOD_INFO = new MessageCodec<>() {
+        @Override
+        public void write(ModInfo message, MessageWriter out) {
+            out.writeString(message.getModId());
+            out.writeString(message.getVersion());
+            out.writeNullableString(message.getName());
+            out.writeString(message.getFileName());
+            out.writeNullableString(message.getSha256Hash());
+            out.writeVarLong(message.getFileSize());
+            out.writeNullableString(message.getDownloadUrl());
+        }
+
+        @Override
+        public ModInfo read(MessageReader in) throws IOException {
+            return new ModInfo(in.readString(), in.readString(), in.readNullableString(), in.readString(),
+                    in.readNullableString(), in.readVarLong(), in.readNullableString());
+        }
+    };
+
+    public static final MessageCodec<ModSync.ServerHandshake> SERVER_HANDSHAKE = new MessageCodec<>() {
+        @Override
+        public void write(ModSync.ServerHandshake message, MessageWriter out) {
+            out.writeString(message.getModSyncVersion());
+            out.writeBoolean(message.isZipMode());
+            out.writeNullableString(message.getZipUrl());
+            out.writeNullableString(message.getZipHash());
+            writeList(message.getRequiredMods(), MOD_INFO, out);
+            writeList(message.getChannels(), STRING, out);
+            // Hash tree roots, parallel to the mod list (ModInfo itself is a list element and can't grow)
+            List<String> roots = new ArrayList<>(message.getRequiredMods().size());
+            for (ModInfo mod : message.getRequiredMods()) {
+                roots.add(mod.getHashTreeRoot());
+            }
+            writeList(roots, NULLABLE_STRING, out);
+            out.writeString(message.getMatchStrictness().name());
+            out.writeVarInt(message.getVersionRanges().size());
+            for (Map.Entry<String, String> range : message.getVersionRanges().entrySet()) {
+                out.writeString(range.getKey());
+                out.writeString(range.getValue());
+            }
+            // Containing mod of each jar-in-jar mod, parallel to the mod list like the roots
+            List<String> containers = new ArrayList<>(message.getRequiredMods().size());
+            for (ModInfo mod : message.getRequiredMods()) {
+                containers.add(mod.getContainerId());
+            }
+            writeList(containers, NULLABLE_STRING, out);
+        }
+
+        @Override
+        public ModSync.ServerHandshake read(MessageReader in) throws IOException {
+            String version = in.readString();
+            boolean zipMode = in.readBoolean();
+            String zipUrl = in.readNullableString();
+            String zipHash = in.readNullableString();
+            List<ModInfo> mods = readList(MOD_INFO, in);
+            List<String> channels = readList(STRING, in);
+            if (in.hasRemaining()) {
+                List<String> roots = readList(NULLABLE_STRING, in);
+                for (int i = 0; i < Math.min(roots.size(), mods.size()); i++) {
+                    mods.set(i, mods.get(i).withHashTreeRoot(roots.get(i)));
+                }
+            }
+            // Servers that don't send a strictness only ever compared versions
+            ConfigManager.ServerConfig.MatchStrictness strictness = ConfigManager.ServerConfig.MatchStrictness.VERSION;
+            if (in.hasRemaining()) {
+                String name = in.readString();
+                for (ConfigManager.ServerConfig.MatchStrictness value : ConfigManager.ServerConfig.MatchStrictness.values()) {
+                    if (value.name().equals(name)) strictness = value;
+                }
+            }
+            Map<String, String> versionRanges = new LinkedHashMap<>();
+            if (in.hasRemaining()) {
+                int count = in.readVarInt();
+                for (int i = 0; i < count; i++) {
+                    versionRanges.put(in.readString(), in.readString());
+                }
+            }
+            if (in.hasRemaining()) {
+                List<String> containers = readList(NULLABLE_STRING, in);
+                for (int i = 0; i < Math.min(containers.size(), mods.size()); i++) {
+                    if (containers.get(i) != null) {
+                        mods.set(i, mods.get(i).withContainerId(containers.get(i)));
+                    }
+                }
+            }
+            return new ModSync.ServerHandshake(mods, zipMode, zipUrl, zipHash, version, channels, strictness,
+                    versionRanges);
+        }
+    };
+
+    public static final MessageCodec<ModSync.HandshakeComplete> HANDSHAKE_COMPLETE = new MessageCodec<>() {
+        @Override
+        public void write(ModSync.HandshakeComplete message, MessageWriter out) {
+            out.writeBoolean(message.isSuccess());
+        }
+
+        @Override
+        public ModSync.HandshakeComplete read(MessageReader in) throws IOException {
+            return new ModSync.HandshakeComplete(in.readBoolean());
+        }
+    };
+
+    public static final MessageCodec<ModSync.ByteRange> BYTE_RANGE = new MessageCodec<>() {
+        @Override
+        public void write(ModSync.ByteRange message, MessageWriter out) {
+            out.writeVarLong(message.getOffset());
+            // Shifted so the open-ended -1 stays a one-byte varint
+            out.writeVarLong(message.getLength() + 1);
+        }
+
+        @Override
+        public ModSync.ByteRange read(MessageReader in) throws IOException {
+            return new ModSync.ByteRange(in.readVarLong(), in.readVarLong() - 1);
+        }
+    };
+
+    public static final MessageCodec<ModSync.DownloadRequest> DOWNLOAD_REQUEST = new MessageCodec<>() {
+        @Override
+        public void write(ModSync.DownloadRequest message, MessageWriter out) {
+            out.writeString(message.getModId());
+            out.writeString(message.getFileName());
+            out.writeVarInt(message.getPreferredChunkSize());
+            writeList(message.getRanges(), BYTE_RANGE, out);
+        }
+
+        @Override
+        public ModSync.DownloadRequest read(MessageReader in) throws IOException {
+            String modId = in.readString();
+            String fileName = in.readString();
+            int preferredChunkSize = in.readVarInt();
+            List<ModSync.ByteRange> ranges = in.hasRemaining() ? readList(BYTE_RANGE, in) : List.of();
+            return new ModSync.DownloadRequest(modId, fileName, preferredChunkSize, ranges);
+        }
+    };
+
+    public static final MessageCodec<ModSync.DownloadInfo> DOWNLOAD_INFO = new MessageCodec<>() {
+        @Override
+        public void write(ModSync.DownloadInfo message, MessageWriter out) {
+            out.writeString(message.getModId());
+            out.writeVarLong(message.getFileSize());
+            out.writeBytes(message.getLeafHashes());
+        }
+
+        @Override
+        public ModSync.DownloadInfo read(MessageReader in) throws IOException {
+            return new ModSync.DownloadInfo(in.readString(), in.readVarLong(), in.readBytes());
+        }
+    };
+
+    private MessageCodecs() {}
+
+    public static <T> byte[] encode(MessageCodec<T> codec, T message) {
+        MessageWriter writer = MessageWriter.acquire();
+        codec.write(message, writer);
+        return writer.toByteArray();
+    }
+
+    public static <T> T decode(MessageCodec<T> codec, byte[] data) throws IOException {
+        return codec.read(new MessageReader(data));
+    }
+
+    /**
+     * Whether a message is one of the JSON objects ModSync 1.x sent. Binary messages never start
+     * with '{': each opens with a boolean or the length of a short string.
+     */
+    public static boolean isLegacyJson(byte[] data) {
+        return data.length > 0 && data[0] == '{';
+    }
+
+    private static <T> void writeList(List<T> values, MessageCodec<T> codec, MessageWriter out) {
+        if (values == null) {
+            out.writeVarInt(0);
+            return;
+        }
+        out.writeVarInt(values.size());
+        for (T value : values) {
+            codec.write(value, out);
+        }
+    }
+
+    private static <T> List<T> readList(MessageCodec<T> codec, MessageReader in) throws IOException {
+        int size = in.readVarInt();
+        if (size < 0) {
+            throw new IOException("Negative list size");
+        }
+        List<T> values = new ArrayList<>(Math.min(size, 4096));
+        for (int i = 0; i < size; i++) {
+            values.add(codec.read(in));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the compact binary message format written by {@link MessageWriter}.
+ *
+ * Strings are decoded as UTF-8 directly from the backing array. Any read past the end of the
+ * message fails with an {@link IOException} instead of returning garbage.
+ */
+public class MessageReader {
+    private final byte[] data;
+    private int position;
+
+    public MessageReader(byte[] data) {
+        this.data = data;
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return data[position++] & 0xFF;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt too long");
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarLong too long");
+    }
+
+    public byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(data, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    public String readString() throws IOException {
+        int length = readLength();
+        String value = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public String readNullableString() throws IOException {
+        int encoded = readVarInt();
+        if (encoded == 0) {
+            return null;
+        }
+        int length = encoded - 1;
+        require(length);
+        String value = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Whether unread bytes remain; fields appended in later versions are read only when present
+     */
+    public boolean hasRemaining() {
+        return position < data.length;
+    }
+
+    private int readLength() throws IOException {
+        int length = readVarInt();
+        require(length);
+        return length;
+    }
+
+    private void require(int count) throws IOException {
+        if (count < 0 || count > data.length - position) {
+            throw new IOException("Malformed message: need " + count + " bytes at " + position + " of " + data.length);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.rat.modsync.common;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Named counters, gauges and histograms, readable as Prometheus text, as a JSON-ready map and
+ * over JMX with one MBean per metric.
+ *
+ * Recording is lock-free and allocation-free: counters and histogram buckets are
+ * {@link LongAdder}s, and a labelled counter only allocates the first time it sees a label value.
+ * Names follow Prometheus conventions ({@code _total} for counters, base units in the name).
+ */
+public class MetricsRegistry {
+    private static final Logger LOGGER = Logger.getLogger(MetricsRegistry.class.getName());
+
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+    // Registration order, which is also export order
+    private final List<Metric> ordered = new CopyOnWriteArrayList<>();
+
+    public Counter counter(String name, String help) {
+        return register(new Counter(name, help));
+    }
+
+    public LabeledCounter counter(String name, String help, String labelName) {
+        return register(new LabeledCounter(name, help, labelName));
+    }
+
+    /**
+     * Register a gauge read on demand. Registering the same name again replaces the supplier, so a
+     * gauge always reads the latest instance of whatever it observes.
+     */
+    public synchronized void gauge(String name, String help, LongSupplier value) {
+        Metric previous = metrics.get(name);
+        if (previous instanceof Gauge) {
+            ((Gauge) previous).value = value;
+        } else {
+            register(new Gauge(name, help, value));
+        }
+    }
+
+    /**
+     * @param buckets upper bounds, ascending; values above the last go to {@code +Inf}
+     */
+    public Histogram histogram(String name, String help, double... buckets) {
+        return register(new Histogram(name, help, buckets));
+    }
+
+    private synchronized <T extends Metric> T register(T metric) {
+        if (metrics.putIfAbsent(metric.getName(), metric) != null) {
+            throw new IllegalArgumentException("Metric already registered: " + metric.getName());
+        }
+        ordered.add(metric);
+        return metric;
+    }
+
+    /**
+     * Prometheus text exposition format, e.g. for node_exporter's textfile collector
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : ordered) {
+            out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+            metric.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Current values keyed by metric name, for JSON export
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Metric metric : ordered) {
+            result.put(metric.name, metric.attributes());
+        }
+        return result;
+    }
+
+    /**
+     * Expose every metric as an MBean named {@code <domain>:type=Metrics,name=<metric>}.
+     * Metrics registered afterwards are not picked up.
+     */
+    public void registerMBeans(String domain) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Metric metric : ordered) {
+            try {
+                server.registerMBean(new MetricMBean(metric),
+                        new ObjectName(domain + ":type=Metrics,name=" + metric.name));
+            } catch (InstanceAlreadyExistsException e) {
+                // Another registry in this JVM got there first; leave it
+            } catch (Exception e) {
+                LOGGER.warning("Failed to register MBean for " + metric.name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public abstract static class Metric {
+        private final String name;
+        private final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() { return name; }
+
+        abstract String type();
+
+        abstract void writePrometheus(StringBuilder out);
+
+        /**
+         * Values by attribute name, as shown over JMX and in the JSON snapshot
+         */
+        abstract Map<String, Object> attributes();
+    }
+
+    public static class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() { value.increment(); }
+        public void add(long amount) { value.add(amount); }
+        public long get() { return value.sum(); }
+
+        @Override String type() { return "counter"; }
+
+        @Override
+        void writePrometheus(StringBuilder out) {
+            out.append(getName()).append(' ').append(get()).append('\n');
+        }
+
+        @Override
+        Map<String, Object> attributes() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("value", get());
+            return result;
+        }
+    }
+
+    /**
+     * Counter split by one label, e.g. bytes per channel
+     */
+    public static class LabeledCounter extends Metric {
+        private final String labelName;
+        private final Map<String, Counter> children = new ConcurrentHashMap<>();
+
+        LabeledCounter(String name, String help, String labelName) {
+            super(name, help);
+            this.labelName = labelName;
+        }
+
+        public Counter labels(String labelValue) {
+            Counter child = children.get(labelValue);
+            return child != null ? child : children.computeIfAbsent(labelValue, v -> new Counter(getName(), ""));
+        }
+
+        @Override String type() { return "counter"; }
+
+        @Override
+        void writePrometheus(StringBuilder out) {
+            for (Map.Entry<String, Counter> child : children.entrySet()) {
+                out.append(getName()).append('{').append(labelName).append("=\"").append(escape(child.getKey()))
+                        .append("\"} ").append(child.getValue().get()).append('\n');
+            }
+        }
+
+        @Override
+        Map<String, Object> attributes() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            children.forEach((label, counter) -> result.put(label, counter.get()));
+            return result;
+        }
+    }
+
+    public static class Gauge extends Metric {
+        private volatile LongSupplier value;
+
+        Gauge(String name, String help, LongSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        public long get() { return value.getAsLong(); }
+
+        @Override String type() { return "gauge"; }
+
+        @Override
+        void writePrometheus(StringBuilder out) {
+            out.append(getName()).append(' ').append(get()).append('\n');
+        }
+
+        @Override
+        Map<String, Object> attributes() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("value", get());
+            return result;
+        }
+    }
+
+    public static class Histogram extends Metric {
+        private final double[] bounds;
+        // One per bound plus +Inf; not cumulative until exported
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(String name, String help, double[] bounds) {
+            super(name, help);
+            this.bounds = bounds.clone();
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            count.increment();
+            sum.add(value);
+        }
+
+        /**
+         * Record a duration measured with {@link System#nanoTime()}, in seconds
+         */
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        public long getCount() { return count.sum(); }
+        public double getSum() { return sum.sum(); }
+
+        @Override String type() { return "histogram"; }
+
+        @Override
+        void writePrometheus(StringBuilder out) {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                out.append(getName()).append("_bucket{le=\"")
+                        .append(i < bounds.length ? Double.toString(bounds[i]) : "+Inf")
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(getName()).append("_sum ").append(getSum()).append('\n');
+            out.append(getName()).append("_count ").append(getCount()).append('\n');
+        }
+
+        @Override
+        Map<String, Object> attributes() {
+            long samples = getCount();
+            double total = getSum();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", samples);
+            result.put("sum", total);
+            result.put("mean", samples > 0 ? total / samples : 0.0);
+            return result;
+        }
+    }
+
+    /**
+     * Read-only view of one metric; attributes are whatever {@link Metric#attributes()} holds now
+     */
+    private static class MetricMBean implements DynamicMBean {
+        private final Metric metric;
+
+        MetricMBean(Metric metric) {
+            this.metric = metric;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = metric.attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = metric.attributes();
+            AttributeList result = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    result.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            // Rebuilt each time: labelled counters gain attributes as new label values appear
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            metric.attributes().forEach((name, value) -> attributes.add(new MBeanAttributeInfo(name,
+                    value.getClass().getName(), metric.help, true, false, false)));
+            return new MBeanInfo(MetricMBean.class.getName(), metric.help,
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
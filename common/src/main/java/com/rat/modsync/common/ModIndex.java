@@ -0,0 +1,157 @@
+package com.rat.modsync.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only index of a mod list for diffing against other lists.
+ *
+ * Mods are kept sorted by ID in flat arrays, so duplicates of an ID sit next to each other, with an
+ * open-addressing table from ID hash to the first mod of each ID. Building it costs a sort; after
+ * that a lookup allocates nothing, so one index can serve any number of diffs.
+ */
+public class ModIndex {
+    private static final Comparator<ModInfo> BY_ID = Comparator.comparing(ModInfo::getModId);
+
+    private final List<ModInfo> source;
+    private final String[] ids;
+    private final ModInfo[] mods;
+    // Slot -> index into ids/mods of the first mod with that ID, -1 when empty
+    private final int[] table;
+    private final int mask;
+
+    private ModIndex(List<ModInfo> source) {
+        this.source = source;
+        this.mods = source.toArray(new ModInfo[0]);
+        // Stable, so duplicates keep the order they were listed in
+        Arrays.sort(mods, BY_ID);
+        this.ids = new String[mods.length];
+        for (int i = 0; i < mods.length; i++) {
+            ids[i] = mods[i].getModId().intern();
+        }
+
+        // Power of two at least twice the mod count keeps probe runs short
+        int capacity = Integer.highestOneBit(Math.max(4, mods.length * 2 - 1)) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(table, -1);
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0 && ids[i].equals(ids[i - 1])) continue;
+            int slot = ids[i].hashCode() & mask;
+            while (table[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+        }
+    }
+
+    public static ModIndex of(List<ModInfo> mods) {
+        return new ModIndex(mods);
+    }
+
+    /**
+     * The list this index was built from
+     */
+    public List<ModInfo> getSource() { return source; }
+
+    public int size() { return mods.length; }
+
+    /**
+     * Index of the first mod with this ID, or -1
+     */
+    public int find(String modId) {
+        int slot = modId.hashCode() & mask;
+        int index;
+        while ((index = table[slot]) != -1) {
+            if (ids[index].equals(modId)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public ModInfo get(String modId) {
+        int index = find(modId);
+        return index < 0 ? null : mods[index];
+    }
+
+    public ModListManager.ModListComparison diff(List<ModInfo> serverMods) {
+        return diff(serverMods, ModMatcher.VERSION);
+    }
+
+    /**
+     * Diff this (client) list against a server list in one pass over the server's mods.
+     * A server mod matches if any client copy with its ID matches; duplicate IDs on either side
+     * are tolerated rather than rejected. A nested server mod that doesn't match is left to its
+     * container's own entry, since fetching the container brings everything nested in it.
+     */
+    public ModListManager.ModListComparison diff(List<ModInfo> serverMods, ModMatcher matcher) {
+        List<ModInfo> missing = Collections.emptyList();
+        List<ModListManager.ModMismatch> mismatched = Collections.emptyList();
+        List<ModInfo> identical = new ArrayList<>(Math.min(serverMods.size(), mods.length));
+        long[] seen = new long[(mods.length + 63) >>> 6];
+        // Built on the first unmatched nested mod, if any
+        Set<String> serverIds = null;
+
+        for (ModInfo serverMod : serverMods) {
+            int first = find(serverMod.getModId());
+            ModInfo match = null;
+            if (first >= 0) {
+                for (int i = first; i < ids.length && ids[i] == ids[first]; i++) {
+                    seen[i >>> 6] |= 1L << i;
+                    if (match == null && matcher.matches(mods[i], serverMod)) {
+                        match = mods[i];
+                    }
+                }
+            }
+
+            if (match != null) {
+                identical.add(match);
+                continue;
+            }
+
+            // Fetching the container brings the nested mod with it
+            if (serverMod.isNested()) {
+                if (serverIds == null) serverIds = idsOf(serverMods);
+                if (serverIds.contains(serverMod.getContainerId())) continue;
+            }
+
+            if (first < 0) {
+                if (missing.isEmpty()) missing = new ArrayList<>();
+                missing.add(serverMod);
+            } else {
+                if (mismatched.isEmpty()) mismatched = new ArrayList<>();
+                mismatched.add(new ModListManager.ModMismatch(mods[first], serverMod));
+            }
+        }
+
+        // Client mods whose ID the server never mentioned
+        List<ModInfo> extra = Collections.emptyList();
+        for (int word = 0; word < seen.length; word++) {
+            long unseen = ~seen[word];
+            while (unseen != 0) {
+                int i = (word << 6) + Long.numberOfTrailingZeros(unseen);
+                if (i >= mods.length) break;
+                if (extra.isEmpty()) extra = new ArrayList<>();
+                extra.add(mods[i]);
+                unseen &= unseen - 1;
+            }
+        }
+
+        return new ModListManager.ModListComparison(missing, mismatched, extra, identical);
+    }
+
+    private static Set<String> idsOf(List<ModInfo> mods) {
+        Set<String> result = new HashSet<>(mods.size() * 2);
+        for (ModInfo mod : mods) {
+            result.add(mod.getModId());
+        }
+        return result;
+    }
+}
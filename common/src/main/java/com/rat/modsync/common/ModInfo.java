@@ -13,9 +13,25 @@ public class ModInfo {
     private final String sha256Hash;
     private final long fileSize;
     private final String downloadUrl;
+    // Root of the file's HashTree, when the server has computed one
+    private final String hashTreeRoot;
+    // Where the mod is needed, as declared by its loader metadata; local only, never sent
+    private final Environment environment;
+    // Mod ID of the outermost jar this mod is nested in (jar-in-jar), null for top-level mods
+    private final String containerId;
 
     public ModInfo(String modId, String version, String name, String fileName,
                    String sha256Hash, long fileSize, String downloadUrl) {
+        this(modId, version, name, fileName, sha256Hash, fileSize, downloadUrl, null);
+    }
+
+    public ModInfo(String modId, String version, String name, String fileName,
+                   String sha256Hash, long fileSize, String downloadUrl, String hashTreeRoot) {
+        this(modId, version, name, fileName, sha256Hash, fileSize, downloadUrl, hashTreeRoot, Environment.BOTH, null);
+    }
+
+    private ModInfo(String modId, String version, String name, String fileName, String sha256Hash, long fileSize,
+                    String downloadUrl, String hashTreeRoot, Environment environment, String containerId) {
         this.modId = modId;
         this.version = version;
         this.name = name;
@@ -23,6 +39,9 @@ public class ModInfo {
         this.sha256Hash = sha256Hash;
         this.fileSize = fileSize;
         this.downloadUrl = downloadUrl;
+        this.hashTreeRoot = hashTreeRoot;
+        this.environment = environment;
+        this.containerId = containerId;
     }
 
     public ModInfo(String modId, String version, String name, String fileName) {
@@ -36,12 +55,30 @@ public class ModInfo {
     public String getSha256Hash() { return sha256Hash; }
     public long getFileSize() { return fileSize; }
     public String getDownloadUrl() { return downloadUrl; }
+    public String getHashTreeRoot() { return hashTreeRoot; }
+    public Environment getEnvironment() { return environment != null ? environment : Environment.BOTH; }
+    public String getContainerId() { return containerId; }
+    public boolean isNested() { return containerId != null; }
 
     /**
      * Create a copy with download information
      */
     public ModInfo withDownloadInfo(String sha256Hash, long fileSize, String downloadUrl) {
-        return new ModInfo(modId, version, name, fileName, sha256Hash, fileSize, downloadUrl);
+        return new ModInfo(modId, version, name, fileName, sha256Hash, fileSize, downloadUrl, hashTreeRoot, environment, containerId);
+    }
+
+    /**
+     * Create a copy carrying the root of the file's hash tree
+     */
+    public ModInfo withHashTreeRoot(String hashTreeRoot) {
+        return new ModInfo(modId, version, name, fileName, sha256Hash, fileSize, downloadUrl, hashTreeRoot, environment, containerId);
+    }
+
+    /**
+     * Create a copy tagged with where the mod is needed
+     */
+    public ModInfo withEnvironment(Environment environment) {
+        return new ModInfo(modId, version, name, fileName, sha256Hash, fileSize, downloadUrl, hashTreeRoot, environment, containerId);
     }
 
     /**
@@ -60,6 +97,20 @@ public class ModInfo {
                 !Objects.equals(this.version, other.version);
     }
 
+    /**
+     * Create a copy marked as nested in another mod's jar
+     */
+    public ModInfo withContainerId(String containerId) {
+        return new ModInfo(modId, version, name, fileName, sha256Hash, fileSize, downloadUrl, hashTreeRoot, environment, containerId);
+    }
+
+    /**
+     * Whether clients joining a server with this mod need their own copy
+     */
+    public boolean isRequiredOnClient() {
+        return getEnvironment() == Environment.BOTH || getEnvironment() == Environment.CLIENT;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
@@ -81,4 +132,16 @@ public class ModInfo {
         return String.format("ModInfo{id='%s', version='%s', name='%s', file='%s'}",
                 modId, version, name, fileName);
     }
-}
\ No newline at end of file
+
+    /**
+     * Where a mod has to be installed
+     */
+    public enum Environment {
+        // Client and server, the default
+        BOTH,
+        CLIENT,
+        SERVER,
+        // Provided by the loader, or nested in a jar ModSync can't trace; never fetched on its own
+        LIBRARY
+    }
+}
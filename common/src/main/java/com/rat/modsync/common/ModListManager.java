@@ -1,58 +1,144 @@
 package com.rat.modsync.common;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Manages mod lists and comparison logic
  */
 public class ModListManager {
-    private final Platform platform;
+    private static final int MAX_CACHED_STATUS_RESULTS = 128;
 
-    public ModListManager(Platform platform) {
+    private final Platform platform;
+    // The client's loaded mods can't change while the game runs, so they are indexed once
+    private volatile ModIndex clientIndex;
+    private final ConfigManager configManager;
+    private final FileHashCache clientHashes;
+    // Payload text -> missing mod count; the client's own mods don't change while it runs
+    private final Map<String, Integer> statusResults = Collections.synchronizedMap(
+            new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > MAX_CACHED_STATUS_RESULTS;
+                }
+            });
+
+    public ModListManager(Platform platform, ConfigManager configManager) {
         this.platform = platform;
+        this.configManager = configManager;
+        this.clientHashes = new FileHashCache(configManager.getConfigDir());
     }
 
     /**
      * Get all mods currently loaded on the client
      */
     public List<ModInfo> getClientMods() {
-        return platform.getLoadedMods();
+        return getClientIndex().getSource();
+    }
+
+    /**
+     * Index over the client's loaded mods, built on first use
+     */
+    public ModIndex getClientIndex() {
+        ModIndex index = clientIndex;
+        if (index == null) {
+            index = ModIndex.of(Collections.unmodifiableList(platform.getLoadedMods()));
+            clientIndex = index;
+        }
+        return index;
     }
 
     /**
-     * Get all mods required by the server (for server-side)
+     * Hash every client jar not already in the file hash cache, so hash-based matching at join
+     * time finds them cached instead of reading jars on the network thread. Blocks; run it in the
+     * background.
+     */
+    public void warmClientHashes() {
+        for (ModInfo mod : getClientMods()) {
+            getClientHash(mod);
+        }
+        clientHashes.save();
+    }
+
+    /**
+     * Hashes of the client's installed jars, kept across restarts
+     */
+    public FileHashCache getClientHashes() { return clientHashes; }
+
+    private String getClientHash(ModInfo mod) {
+        return clientHashes.getSha256(platform.getModsDirectory().resolve(mod.getFileName()));
+    }
+
+    /**
+     * Get the mods clients need to join this server (for server-side). Server-only and library
+     * mods are left out, going by each mod's declared environment unless the admin overrides it.
+     * A nested mod without an override of its own follows its container's, since it ships inside it.
      */
     public List<ModInfo> getServerMods() {
         if (!platform.isServer()) {
             return Collections.emptyList();
         }
-        return platform.getLoadedMods();
+
+        Map<String, ModInfo.Environment> overrides = configManager.getServerConfig().getModEnvironments();
+        List<ModInfo> required = new ArrayList<>();
+        for (ModInfo mod : platform.getLoadedMods()) {
+            ModInfo.Environment override = overrides.get(mod.getModId());
+            if (override == null && mod.isNested()) {
+                override = overrides.get(mod.getContainerId());
+            }
+            ModInfo effective = override != null ? mod.withEnvironment(override) : mod;
+            if (effective.isRequiredOnClient()) {
+                required.add(effective);
+            }
+        }
+        return required;
     }
 
     /**
-     * Compare client mods with server requirements
+     * Order-independent SHA-256 of a mod list, used to tell whether a manifest has changed.
+     * Only each mod's identity (ID, version, name, file name) is covered: file hashes are filled in
+     * by the server in the background, and the status payload and handshake must still agree.
      */
-    public ModListComparison compareMods(List<ModInfo> clientMods, List<ModInfo> serverMods) {
-        Map<String, ModInfo> clientModMap = clientMods.stream()
-                .collect(Collectors.toMap(ModInfo::getModId, mod -> mod));
+    public static String computeManifestDigest(List<ModInfo> mods) {
+        List<ModInfo> sorted = new ArrayList<>(mods);
+        sorted.sort(Comparator.comparing(ModInfo::getModId).thenComparing(ModInfo::getFileName,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        MessageWriter writer = MessageWriter.acquire();
+        for (ModInfo mod : sorted) {
+            writer.writeString(mod.getModId());
+            writer.writeString(mod.getVersion());
+            writer.writeNullableString(mod.getName());
+            writer.writeString(mod.getFileName());
+        }
 
-        List<ModInfo> missingMods = new ArrayList<>();
-        List<ModMismatch> mismatchedMods = new ArrayList<>();
+        return HashTree.toHex(HashTree.sha256().digest(writer.toByteArray()));
+    }
 
-        for (ModInfo serverMod : serverMods) {
-            ModInfo clientMod = clientModMap.get(serverMod.getModId());
+    /**
+     * Compare client mods with server requirements
+     */
+    public ModListComparison compareMods(List<ModInfo> clientMods, List<ModInfo> serverMods) {
+        return compareMods(clientMods, serverMods, ConfigManager.ServerConfig.MatchStrictness.VERSION,
+                Collections.emptyMap());
+    }
 
-            if (clientMod == null) {
-                // Mod is missing entirely
-                missingMods.add(serverMod);
-            } else if (!clientMod.matches(serverMod)) {
-                // Mod exists but version mismatch
-                mismatchedMods.add(new ModMismatch(clientMod, serverMod));
-            }
+    /**
+     * Compare client mods with server requirements, accepting client versions inside the server's
+     * declared ranges and hashing client jars only where the strictness needs it
+     */
+    public ModListComparison compareMods(List<ModInfo> clientMods, List<ModInfo> serverMods,
+                                         ConfigManager.ServerConfig.MatchStrictness strictness,
+                                         Map<String, String> versionRanges) {
+        // Reuse the cached index when diffing the client's own mods
+        ModIndex index = clientIndex;
+        if (index == null || index.getSource() != clientMods) {
+            index = ModIndex.of(clientMods);
         }
 
-        return new ModListComparison(missingMods, mismatchedMods);
+        ModMatcher matcher = new ModMatcher(strictness, versionRanges, this::getClientHash);
+        ModListComparison comparison = index.diff(serverMods, matcher);
+        clientHashes.save();
+        return comparison;
     }
 
     /**
@@ -61,14 +147,26 @@ public class ModListManager {
     public static class ModListComparison {
         private final List<ModInfo> missingMods;
         private final List<ModMismatch> mismatchedMods;
+        // Client mods the server doesn't list, and client mods that match it exactly
+        private final List<ModInfo> extraMods;
+        private final List<ModInfo> identicalMods;
 
         public ModListComparison(List<ModInfo> missingMods, List<ModMismatch> mismatchedMods) {
+            this(missingMods, mismatchedMods, Collections.emptyList(), Collections.emptyList());
+        }
+
+        public ModListComparison(List<ModInfo> missingMods, List<ModMismatch> mismatchedMods,
+                                 List<ModInfo> extraMods, List<ModInfo> identicalMods) {
             this.missingMods = missingMods;
             this.mismatchedMods = mismatchedMods;
+            this.extraMods = extraMods;
+            this.identicalMods = identicalMods;
         }
 
         public List<ModInfo> getMissingMods() { return missingMods; }
         public List<ModMismatch> getMismatchedMods() { return mismatchedMods; }
+        public List<ModInfo> getExtraMods() { return extraMods; }
+        public List<ModInfo> getIdenticalMods() { return identicalMods; }
 
         public boolean isCompatible() {
             return missingMods.isEmpty() && mismatchedMods.isEmpty();
@@ -127,46 +225,19 @@ public class ModListManager {
     }
 
     /**
-     * Process a server list entry from the multiplayer screen ping response.
-     * Extract ModSync handshake/mod list data from MOTD, compare mods, and trigger UI logic if needed.
+     * Number of server mods the client lacks according to a server list entry's status payload,
+     * or 0 if it can't be read. Server lists are refreshed often and show the same payloads again
+     * and again, so the result for each payload is computed once.
      */
-    public void processServerListEntry(Object entry) {
-        try {
-            // Use reflection to get MOTD from entry
-            String motd = null;
-            try {
-                motd = (String) entry.getClass().getMethod("getMotd").invoke(entry);
-            } catch (Exception ignored) {}
-            if (motd == null || motd.isEmpty()) return;
-
-            // Look for ModSync marker in MOTD
-            String marker = "§8[ModSync]";
-            int idx = motd.indexOf(marker);
-            if (idx == -1) return;
-            String modSyncJson = motd.substring(idx + marker.length()).trim();
-            if (modSyncJson.isEmpty()) return;
-
-            // Parse the server's mod list from the ModSync handshake
-            List<ModInfo> serverMods = new com.google.gson.Gson().fromJson(modSyncJson,
-                    new com.google.gson.reflect.TypeToken<List<ModInfo>>(){}.getType());
-            List<ModInfo> clientMods = getClientMods();
-            ModListComparison comparison = compareMods(clientMods, serverMods);
-
-            boolean hasIssues = comparison.hasIssues();
-            // Set the modsyncMissingMods flag using reflection
-            try {
-                entry.getClass().getMethod("modsync$setModsyncMissingMods", boolean.class)
-                    .invoke(entry, hasIssues);
-            } catch (Exception ignored) {}
-
-            if (hasIssues) {
-                // Trigger ModSync UI logic to prompt the user and block connection
-                ModSync.getUIManager().showWarning("ModSync: Missing Mods",
-                        "This server requires mods you do not have: " + comparison.getSummary());
-                // Optionally, block the Join Server button via mixin logic
-            }
-        } catch (Exception e) {
-            // Ignore if ModSync data is not present
+    public int checkStatusPayload(String payload) {
+        Integer cached = statusResults.get(payload);
+        if (cached != null) {
+            return cached;
         }
+
+        StatusPayload status = StatusPayload.decode(payload);
+        int missing = status != null ? status.countMissing(getClientMods()) : 0;
+        statusResults.put(payload, missing);
+        return missing;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+package com.rat.modsync.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Decides whether a client mod satisfies the server's copy under a
+ * {@link ConfigManager.ServerConfig.MatchStrictness}.
+ *
+ * Hashes come from the server's manifest and, for the client, from the mod itself or a lookup
+ * that is only consulted when the strictness actually needs the client's hash. A mod with a
+ * {@link VersionRange} declared by the server matches whenever the client's version is in range,
+ * whatever the strictness.
+ */
+public class ModMatcher {
+    private static final Logger LOGGER = Logger.getLogger(ModMatcher.class.getName());
+
+    // Plain id + version comparison, never reads a hash
+    public static final ModMatcher VERSION = new ModMatcher(ConfigManager.ServerConfig.MatchStrictness.VERSION,
+            Collections.emptyMap(), mod -> null);
+
+    private final ConfigManager.ServerConfig.MatchStrictness strictness;
+    private final Map<String, VersionRange> versionRanges;
+    private final Function<ModInfo, String> clientHashes;
+
+    public ModMatcher(ConfigManager.ServerConfig.MatchStrictness strictness, Map<String, String> versionRanges,
+                      Function<ModInfo, String> clientHashes) {
+        this.strictness = strictness;
+        this.versionRanges = parseRanges(versionRanges);
+        this.clientHashes = clientHashes;
+    }
+
+    public ConfigManager.ServerConfig.MatchStrictness getStrictness() { return strictness; }
+
+    /**
+     * Parse declared ranges, dropping (and reporting) any that don't parse so those mods fall
+     * back to the strictness rules
+     */
+    public static Map<String, VersionRange> parseRanges(Map<String, String> specs) {
+        if (specs.isEmpty()) return Collections.emptyMap();
+        Map<String, VersionRange> ranges = new HashMap<>();
+        for (Map.Entry<String, String> spec : specs.entrySet()) {
+            try {
+                ranges.put(spec.getKey(), VersionRange.parse(spec.getValue()));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Ignoring version range for " + spec.getKey() + ": " + e.getMessage());
+            }
+        }
+        return ranges;
+    }
+
+    public boolean matches(ModInfo clientMod, ModInfo serverMod) {
+        VersionRange range = versionRanges.get(serverMod.getModId());
+        if (range != null && clientMod.getModId().equals(serverMod.getModId()) && range.contains(clientMod.getVersion())) {
+            return true;
+        }
+
+        switch (strictness) {
+            case HASH_PREFERRED: {
+                String serverHash = serverMod.getSha256Hash();
+                String clientHash = serverHash != null ? clientHash(clientMod) : null;
+                if (clientHash != null) {
+                    return clientHash.equalsIgnoreCase(serverHash);
+                }
+                return clientMod.matches(serverMod);
+            }
+            case HASH_AND_VERSION: {
+                if (!clientMod.matches(serverMod)) return false;
+                String serverHash = serverMod.getSha256Hash();
+                String clientHash = serverHash != null ? clientHash(clientMod) : null;
+                return clientHash == null || clientHash.equalsIgnoreCase(serverHash);
+            }
+            default:
+                return clientMod.matches(serverMod);
+        }
+    }
+
+    private String clientHash(ModInfo clientMod) {
+        return clientMod.getSha256Hash() != null ? clientMod.getSha256Hash() : clientHashes.apply(clientMod);
+    }
+}
@@ -1,13 +1,15 @@
 package com.rat.modsync.common;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import java.io.IOException;
-import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 /**
@@ -15,7 +17,7 @@ import java.util.logging.Logger;
  */
 public class ModSync {
     public static final String MOD_ID = "modsync";
-    public static final String VERSION = "1.0.0";
+    public static final String VERSION = "2.0.0";
 
     // Network channels
     public static final String PING_CHANNEL = "modsync:ping";
@@ -23,68 +25,159 @@ public class ModSync {
     public static final String DOWNLOAD_REQUEST_CHANNEL = "modsync:download_request";
     public static final String DOWNLOAD_CHUNK_CHANNEL = "modsync:download_chunk";
     public static final String HANDSHAKE_COMPLETE_CHANNEL = "modsync:handshake_complete";
+    public static final String FRAGMENT_CHANNEL = "modsync:fragment";
+    public static final String DOWNLOAD_INFO_CHANNEL = "modsync:download_info";
+
+    // Declared first and in this order on every side, so these IDs agree before the handshake
+    // carries the server's channel table. Append new channels; never reorder.
+    static final List<String> BOOTSTRAP_CHANNELS = List.of(
+            FRAGMENT_CHANNEL,
+            PING_CHANNEL,
+            HANDSHAKE_CHANNEL,
+            HANDSHAKE_COMPLETE_CHANNEL,
+            DOWNLOAD_REQUEST_CHANNEL,
+            DOWNLOAD_CHUNK_CHANNEL,
+            DOWNLOAD_INFO_CHANNEL
+    );
 
     private static final Logger LOGGER = Logger.getLogger(ModSync.class.getName());
-    private static final Gson GSON = new Gson();
 
     private static Platform platform;
+    private static FragmentingTransport transport;
     private static ModListManager modListManager;
     private static DownloadManager downloadManager;
     private static ConfigManager configManager;
     private static UIManager uiManager;
 
-    // Server compatibility cache: serverAddress -> isCompatible
-    private static final ConcurrentHashMap<String, Boolean> serverCompatibility = new ConcurrentHashMap<>();
-
-    // Connection state
-    private static String pendingServerAddress = null;
-    private static boolean awaitingHandshake = false;
+    // Server compatibility cache: bounded and expiring, filled by probes and handshakes
+    private static final int COMPATIBILITY_CACHE_SIZE = 256;
+    private static final long COMPATIBILITY_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final CompatibilityCache serverCompatibility =
+            new CompatibilityCache(COMPATIBILITY_CACHE_SIZE, COMPATIBILITY_TTL_MILLIS);
+    private static ServerProbeEngine probeEngine;
+    // Client-side memory of servers across restarts
+    private static ServerStateStore serverStateStore;
+
+    private static final long HANDSHAKE_TIMEOUT_SECONDS = 5;
+    private static volatile String statusInsertion;
+
+    // Sync attempt for the current game connection; replaced (and the old one cancelled) on reconnect
+    private static final AtomicReference<SyncSession> activeSession = new AtomicReference<>();
+
+    // Server side: connections held in the configuration phase until their client reports a match
+    private static final Map<Object, PendingConfiguration> pendingConfigurations = new ConcurrentHashMap<>();
+    private static final int CONFIGURATION_RESPONSE_TIMEOUT_SECONDS = 30;
+    // How long a client that reported a mismatch may stay in configuration to download
+    private static final int CONFIGURATION_DOWNLOAD_TIMEOUT_MINUTES = 10;
+
+    public static synchronized void initialize(Platform platformImpl) {
+        if (platform != null) {
+            // Loaders may call more than one entrypoint; handlers must only be registered once
+            return;
+        }
 
-    public static void initialize(Platform platformImpl) {
         platform = platformImpl;
+        for (String channel : BOOTSTRAP_CHANNELS) {
+            platform.getPacketHandlerRegistry().declare(channel);
+        }
+        transport = new FragmentingTransport(platform);
         configManager = new ConfigManager(platform);
-        modListManager = new ModListManager(platform);
-        downloadManager = new DownloadManager(platform, configManager);
+        modListManager = new ModListManager(platform, configManager);
+        downloadManager = new DownloadManager(platform, configManager, transport, modListManager.getClientHashes());
         uiManager = new UIManager(platform, configManager);
 
         setupNetworking();
+        startMetrics();
+        if (platform.isServer()) {
+            // Start hashing served mods now so the first handshake can carry their hashes
+            downloadManager.withFileHashes(modListManager.getServerMods());
+            // Report unparseable ranges at startup rather than on each client's join
+            ModMatcher.parseRanges(configManager.getServerConfig().getVersionRanges());
+            ConfigManager.ServerConfig serverConfig = configManager.getServerConfig();
+            if (serverConfig.isZipModeEnabled() && usesAutoBundle(serverConfig)) {
+                downloadManager.prepareBundle(modListManager.getServerMods());
+            }
+        }
+        if (platform.isClient()) {
+            probeEngine = new ServerProbeEngine(serverCompatibility);
+            serverStateStore = new ServerStateStore(configManager.getConfigDir());
+            revalidateKnownServers();
+            // Servers may match by hash; have the jars hashed before the first join needs them
+            CompletableFuture.runAsync(modListManager::warmClientHashes);
+        }
         LOGGER.info("ModSync " + VERSION + " initialized for " + platform.getLoaderType());
     }
 
+    private static void startMetrics() {
+        MetricsRegistry registry = SyncMetrics.REGISTRY;
+        registry.gauge("modsync_pending_configurations", "Server: connections held in configuration by ModSync",
+                pendingConfigurations::size);
+        registry.gauge("modsync_download_queue_depth", "Transfers queued behind the download threads",
+                downloadManager::getQueueDepth);
+        registry.gauge("modsync_active_transfers", "Client: direct transfers in progress",
+                downloadManager::getActiveTransferCount);
+        registry.gauge("modsync_pending_reassemblies", "Fragmented messages partly received",
+                transport::getPendingReassemblies);
+
+        int interval = platform.isServer()
+                ? configManager.getServerConfig().getMetricsExportSeconds()
+                : configManager.getClientConfig().getMetricsExportSeconds();
+        SyncMetrics.start(configManager.getConfigDir(), interval);
+
+        PacketTrace.setSampleRate(platform.isServer()
+                ? configManager.getServerConfig().getPacketTraceSampleRate()
+                : configManager.getClientConfig().getPacketTraceSampleRate());
+        PacketTrace.registerMBean();
+    }
+
     private static void setupNetworking() {
+        // Both ping handlers stay registered; each acts only on its own side
         // Ping response handler (server -> client)
-        platform.registerPacketHandler(PING_CHANNEL, (sender, data) -> {
+        transport.registerPacketHandler(PING_CHANNEL, (sender, data) -> {
             if (platform.isClient()) {
                 handlePingResponse(sender, data);
             }
         });
 
         // Ping request handler (client -> server)
-        platform.registerPacketHandler(PING_CHANNEL, (sender, data) -> {
+        transport.registerPacketHandler(PING_CHANNEL, (sender, data) -> {
             if (platform.isServer()) {
                 handlePingRequest(sender, data);
             }
         });
 
         // Handshake handler (server -> client)
-        platform.registerPacketHandler(HANDSHAKE_CHANNEL, (sender, data) -> {
+        transport.registerPacketHandler(HANDSHAKE_CHANNEL, (sender, data) -> {
             if (platform.isClient()) {
                 handleServerHandshake(sender, data);
             }
         });
 
+        // Handshake result (client -> server)
+        transport.registerPacketHandler(HANDSHAKE_COMPLETE_CHANNEL, (sender, data) -> {
+            if (platform.isServer()) {
+                handleHandshakeComplete(sender, data);
+            }
+        });
+
         // Download handlers
-        platform.registerPacketHandler(DOWNLOAD_REQUEST_CHANNEL, (sender, data) -> {
+        transport.registerPacketHandler(DOWNLOAD_REQUEST_CHANNEL, (sender, data) -> {
             if (platform.isServer()) {
                 handleDownloadRequest(sender, data);
             }
         });
 
-        platform.registerPacketHandler(DOWNLOAD_CHUNK_CHANNEL, (sender, data) -> {
+        transport.registerPacketHandler(DOWNLOAD_CHUNK_CHANNEL, (sender, data) -> {
             if (platform.isClient()) {
                 downloadManager.handleDownloadChunk(data);
             }
         });
+
+        transport.registerPacketHandler(DOWNLOAD_INFO_CHANNEL, (sender, data) -> {
+            if (platform.isClient()) {
+                downloadManager.handleDownloadInfo(data);
+            }
+        });
     }
 
     /**
@@ -93,13 +186,16 @@ public class ModSync {
     public static void pingServer(String serverAddress) {
         if (!platform.isClient()) return;
 
+        SyncSession session = startSession(serverAddress, SyncSession.State.PINGING);
+
         try {
             PingMessage ping = new PingMessage(MOD_ID, VERSION);
-            byte[] data = GSON.toJson(ping).getBytes();
-            platform.sendToServer(PING_CHANNEL, data);
+            byte[] data = MessageCodecs.encode(MessageCodecs.PING, ping);
+            transport.sendToServer(PING_CHANNEL, data);
         } catch (Exception e) {
             LOGGER.warning("Failed to ping server " + serverAddress + ": " + e.getMessage());
-            serverCompatibility.put(serverAddress, false);
+            recordCompatibility(serverAddress, false);
+            session.finish(SyncSession.State.FAILED);
         }
     }
 
@@ -109,42 +205,123 @@ public class ModSync {
     public static void attemptConnection(String serverAddress) {
         if (!platform.isClient()) return;
 
-        pendingServerAddress = serverAddress;
-        awaitingHandshake = true;
+        startSession(serverAddress, SyncSession.State.AWAITING_HANDSHAKE);
+    }
+
+    /**
+     * Begin a new sync attempt, cancelling whatever attempt it replaces
+     */
+    private static SyncSession startSession(String serverAddress, SyncSession.State initialState) {
+        SyncSession session = new SyncSession(serverAddress, initialState);
+        SyncSession previous = activeSession.getAndSet(session);
+        if (previous != null) {
+            previous.cancel();
+        }
 
         // Server will send handshake automatically if ModSync is installed
         // If no handshake received within timeout, assume incompatible
-        CompletableFuture.delayedExecutor(5, java.util.concurrent.TimeUnit.SECONDS)
-                .execute(() -> {
-                    if (awaitingHandshake && pendingServerAddress.equals(serverAddress)) {
-                        handleIncompatibleServer(serverAddress);
+        session.schedule(HANDSHAKE_TIMEOUT_SECONDS, TimeUnit.SECONDS, () -> {
+            if (session.transition(SyncSession.State.PINGING, SyncSession.State.FAILED)
+                    || session.transition(SyncSession.State.AWAITING_HANDSHAKE, SyncSession.State.FAILED)) {
+                handleIncompatibleServer(serverAddress);
+            }
+        });
+        return session;
+    }
+
+    /**
+     * Server side: a connection has entered the configuration phase. Sends it the handshake; the
+     * returned future completes once the client reports that its mods match, at which point the
+     * platform lets the player on into the world.
+     *
+     * A client that reports a mismatch stays in configuration while it downloads (the connection
+     * can still carry direct downloads) and then disconnects itself, so the server never spawns a
+     * player that is about to leave; one still there after
+     * {@value #CONFIGURATION_DOWNLOAD_TIMEOUT_MINUTES} minutes is disconnected. A client that never
+     * answers is let through after {@value #CONFIGURATION_RESPONSE_TIMEOUT_SECONDS} seconds.
+     */
+    public static CompletableFuture<Void> beginConfigurationSync(Object connection) {
+        CompletableFuture<Void> admitted = new CompletableFuture<>();
+        PendingConfiguration pending = new PendingConfiguration(admitted, false);
+        pendingConfigurations.put(connection, pending);
+
+        CompletableFuture.delayedExecutor(CONFIGURATION_RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS).execute(() -> {
+            if (pendingConfigurations.remove(connection, pending)) {
+                LOGGER.warning("No ModSync handshake response from " + connection + ", continuing login");
+                admitted.complete(null);
+            }
+        });
+
+        try {
+            byte[] data = MessageCodecs.encode(MessageCodecs.SERVER_HANDSHAKE, createServerHandshake());
+            transport.sendToClient(connection, HANDSHAKE_CHANNEL, data);
+        } catch (Exception e) {
+            LOGGER.warning("Failed to send configuration handshake: " + e.getMessage());
+            pendingConfigurations.remove(connection, pending);
+            admitted.complete(null);
+        }
+        return admitted;
+    }
+
+    /**
+     * Server side: forget a connection that closed during configuration
+     */
+    public static void endConfigurationSync(Object connection) {
+        pendingConfigurations.remove(connection);
+    }
+
+    private static void handleHandshakeComplete(Object sender, byte[] data) {
+        try {
+            HandshakeComplete complete = MessageCodecs.decode(MessageCodecs.HANDSHAKE_COMPLETE, data);
+            PendingConfiguration pending = pendingConfigurations.get(sender);
+            if (pending == null || pending.downloading) {
+                return;
+            }
+            SyncMetrics.HANDSHAKE_SECONDS.observeNanos(System.nanoTime() - pending.sentAt);
+
+            if (complete.isSuccess()) {
+                if (pendingConfigurations.remove(sender, pending)) {
+                    pending.admitted.complete(null);
+                }
+                return;
+            }
+
+            // On a mismatch the client downloads and disconnects; it is never admitted, and is
+            // dropped if it is still here when the download deadline passes
+            PendingConfiguration downloading = new PendingConfiguration(pending.admitted, true);
+            if (pendingConfigurations.replace(sender, pending, downloading)) {
+                CompletableFuture.delayedExecutor(CONFIGURATION_DOWNLOAD_TIMEOUT_MINUTES, TimeUnit.MINUTES).execute(() -> {
+                    if (pendingConfigurations.remove(sender, downloading)) {
+                        LOGGER.warning("Client " + sender + " still configuring after its download deadline, disconnecting");
+                        platform.disconnectClient(sender, "ModSync: mods were not synced in time");
                     }
                 });
+            }
+        } catch (Exception e) {
+            LOGGER.warning("Failed to handle handshake complete: " + e.getMessage());
+        }
     }
 
     private static void handlePingRequest(Object sender, byte[] data) {
+        if (MessageCodecs.isLegacyJson(data)) {
+            LOGGER.warning("Disconnecting " + sender + ": its ModSync predates the " + VERSION + " wire format");
+            platform.disconnectClient(sender, "This server needs ModSync " + VERSION + " or newer. Please update ModSync.");
+            return;
+        }
+
         try {
-            String json = new String(data);
-            PingMessage ping = GSON.fromJson(json, PingMessage.class);
+            PingMessage ping = MessageCodecs.decode(MessageCodecs.PING, data);
 
             // Respond with our compatibility info
             PingResponse response = new PingResponse(true, MOD_ID, VERSION,
                     configManager.getServerConfig().isZipModeEnabled());
-            byte[] responseData = GSON.toJson(response).getBytes();
-            platform.sendToClient(sender, PING_CHANNEL, responseData);
+            byte[] responseData = MessageCodecs.encode(MessageCodecs.PING_RESPONSE, response);
+            transport.sendToClient(sender, PING_CHANNEL, responseData);
 
             // Send handshake after ping response
-            List<ModInfo> serverMods = modListManager.getServerMods();
-            ConfigManager.ServerConfig config = configManager.getServerConfig();
-            ServerHandshake handshake = new ServerHandshake(
-                serverMods,
-                config.isZipModeEnabled(),
-                config.getZipUrl(),
-                config.getZipHash(),
-                VERSION
-            );
-            byte[] handshakeData = GSON.toJson(handshake).getBytes();
-            platform.sendToClient(sender, HANDSHAKE_CHANNEL, handshakeData);
+            ServerHandshake handshake = createServerHandshake();
+            byte[] handshakeData = MessageCodecs.encode(MessageCodecs.SERVER_HANDSHAKE, handshake);
+            transport.sendToClient(sender, HANDSHAKE_CHANNEL, handshakeData);
 
         } catch (Exception e) {
             LOGGER.warning("Failed to handle ping request: " + e.getMessage());
@@ -152,13 +329,18 @@ public class ModSync {
     }
 
     private static void handlePingResponse(Object sender, byte[] data) {
+        if (MessageCodecs.isLegacyJson(data)) {
+            handleLegacyServer();
+            return;
+        }
+
         try {
-            String json = new String(data);
-            PingResponse response = GSON.fromJson(json, PingResponse.class);
+            PingResponse response = MessageCodecs.decode(MessageCodecs.PING_RESPONSE, data);
 
-            // Cache server compatibility
-            if (pendingServerAddress != null) {
-                serverCompatibility.put(pendingServerAddress, response.isCompatible());
+            // Cache server compatibility; the handshake follows the response
+            SyncSession session = activeSession.get();
+            if (session != null && session.transition(SyncSession.State.PINGING, SyncSession.State.AWAITING_HANDSHAKE)) {
+                recordCompatibility(session.getServerAddress(), response.isCompatible());
             }
 
         } catch (Exception e) {
@@ -166,13 +348,133 @@ public class ModSync {
         }
     }
 
+    /**
+     * The server runs a ModSync from before the binary wire format: nothing it sends can be read,
+     * so end the sync with a clear warning rather than a decode error
+     */
+    private static void handleLegacyServer() {
+        SyncSession session = activeSession.get();
+        if (session == null || !session.finish(SyncSession.State.FAILED)) {
+            return;
+        }
+        recordCompatibility(session.getServerAddress(), false);
+        LOGGER.warning("Server " + session.getServerAddress() + " runs a ModSync older than " + VERSION);
+        uiManager.showWarning("ModSync Version Mismatch",
+                "This server runs an older ModSync that can't sync with " + VERSION + ". Ask its admin to update.");
+    }
+
+    /**
+     * Build the handshake the server sends to a joining client
+     */
+    public static ServerHandshake createServerHandshake() {
+        // Hashes not yet computed are left out and filled in by a background pass
+        ConfigManager.ServerConfig config = configManager.getServerConfig();
+        List<ModInfo> serverMods = withDownloadUrls(downloadManager.withFileHashes(modListManager.getServerMods()),
+                config.getModDownloadUrls());
+
+        boolean zipMode = config.isZipModeEnabled();
+        String zipUrl = config.getZipUrl();
+        String zipHash = config.getZipHash();
+        if (zipMode && usesAutoBundle(config)) {
+            ModpackBundle bundle = downloadManager.getBundle();
+            if (bundle != null) {
+                zipUrl = ModpackBundle.BUNDLE_URL;
+                zipHash = bundle.getSha256();
+            } else {
+                // Still building: per-mod sync works meanwhile
+                zipMode = false;
+            }
+        }
+
+        return new ServerHandshake(
+                serverMods,
+                zipMode,
+                zipUrl,
+                zipHash,
+                VERSION,
+                platform.getPacketHandlerRegistry().getChannelTable(),
+                config.getMatchStrictness(),
+                config.getVersionRanges()
+        );
+    }
+
+    /**
+     * Attach the admin's advertised URLs. Clients only fetch from one when the mod also has a hash
+     * to check the download against, so a URL is dropped until its hash is known.
+     */
+    private static List<ModInfo> withDownloadUrls(List<ModInfo> mods, Map<String, String> urls) {
+        if (urls.isEmpty()) return mods;
+
+        List<ModInfo> result = new ArrayList<>(mods.size());
+        for (ModInfo mod : mods) {
+            String url = urls.get(mod.getModId());
+            if (url != null && mod.getSha256Hash() != null) {
+                mod = mod.withDownloadInfo(mod.getSha256Hash(), mod.getFileSize(), url);
+            }
+            result.add(mod);
+        }
+        return result;
+    }
+
+    /**
+     * Insertion text for the empty component platforms append to the status response's MOTD, so
+     * the multiplayer screen and {@link ServerStatusProbe} can check the mod list without joining.
+     * Null except on a dedicated server.
+     */
+    public static String getStatusInsertion() {
+        if (platform == null || !platform.isServer()) return null;
+        String insertion = statusInsertion;
+        if (insertion == null) {
+            // The served mods are fixed for the server's lifetime
+            insertion = ServerStatusProbe.MOTD_MARKER + StatusPayload.encode(modListManager.getServerMods());
+            statusInsertion = insertion;
+        }
+        return insertion;
+    }
+
+    /**
+     * Zip mode without a hand-made zip URL means the server builds and serves the bundle itself
+     */
+    private static boolean usesAutoBundle(ConfigManager.ServerConfig config) {
+        return config.getZipUrl() == null || config.getZipUrl().isBlank();
+    }
+
     private static void handleServerHandshake(Object sender, byte[] data) {
-        if (!awaitingHandshake) return;
+        if (MessageCodecs.isLegacyJson(data)) {
+            handleLegacyServer();
+            return;
+        }
 
         try {
-            String json = new String(data);
-            ServerHandshake handshake = GSON.fromJson(json, ServerHandshake.class);
-            awaitingHandshake = false;
+            SyncEvents.HandshakeReceived received = new SyncEvents.HandshakeReceived();
+            received.begin();
+            ServerHandshake handshake = MessageCodecs.decode(MessageCodecs.SERVER_HANDSHAKE, data);
+
+            // Talk to the server in its channel IDs from here on
+            if (handshake.getChannels() != null && !handshake.getChannels().isEmpty()) {
+                platform.getPacketHandlerRegistry().applyRemoteTable(handshake.getChannels());
+            }
+            received.end();
+            if (received.shouldCommit()) {
+                received.server = platform.getCurrentServerAddress();
+                received.requiredMods = handshake.getRequiredMods().size();
+                received.strictness = handshake.getMatchStrictness().name();
+                received.zipMode = handshake.isZipMode();
+                received.commit();
+            }
+
+            SyncSession session = activeSession.get();
+            String serverAddress = platform.getCurrentServerAddress();
+            if (session == null || !session.isActive()
+                    || (serverAddress != null && !serverAddress.equals(session.getServerAddress()))) {
+                // Sent unprompted during the configuration phase, or the session belongs to another
+                // server: this connection's sync starts here
+                session = startSession(serverAddress, SyncSession.State.AWAITING_HANDSHAKE);
+            }
+            if (!session.transition(SyncSession.State.AWAITING_HANDSHAKE, SyncSession.State.DIFFING)) {
+                LOGGER.warning("Ignoring handshake from " + serverAddress + ": " + session + " is not awaiting one");
+                return;
+            }
 
             // Version check
             if (!VERSION.equals(handshake.getModSyncVersion())) {
@@ -185,56 +487,91 @@ public class ModSync {
             List<ModInfo> serverMods = handshake.getRequiredMods();
             List<ModInfo> clientMods = modListManager.getClientMods();
 
-            ModListManager.ModListComparison comparison = modListManager.compareMods(clientMods, serverMods);
+            SyncEvents.DiffComputed diffed = new SyncEvents.DiffComputed();
+            diffed.begin();
+            ModListManager.ModListComparison comparison = compareWithHistory(session.getServerAddress(), clientMods, serverMods, handshake);
+            diffed.end();
+            if (diffed.shouldCommit()) {
+                diffed.server = session.getServerAddress();
+                diffed.clientMods = clientMods.size();
+                diffed.serverMods = serverMods.size();
+                diffed.missing = comparison.getMissingMods().size();
+                diffed.mismatched = comparison.getMismatchedMods().size();
+                diffed.commit();
+            }
+            session.setHandshakeResult(handshake, comparison);
+            SyncMetrics.DIFF_MISSING_MODS.observe(comparison.getMissingMods().size());
+            SyncMetrics.DIFF_MISMATCHED_MODS.observe(comparison.getMismatchedMods().size());
 
             if (comparison.isCompatible()) {
                 // All good, continue connection
-                LOGGER.info("Mod compatibility check passed for server " + pendingServerAddress);
-                uiManager.showNotification("ModSync", "ModSync is active on both server and client!", Platform.NotificationType.SUCCESS);
-                completeHandshake();
+                LOGGER.info("Mod compatibility check passed for server " + session.getServerAddress());
+                if (session.transition(SyncSession.State.DIFFING, SyncSession.State.DONE)) {
+                    uiManager.showNotification("ModSync", "ModSync is active on both server and client!", Platform.NotificationType.SUCCESS);
+                    completeHandshake(true);
+                }
             } else {
                 // Handle missing/mismatched mods
                 uiManager.showNotification("ModSync", "ModSync detected, but mod lists do not match!", Platform.NotificationType.WARNING);
-                handleModMismatch(handshake, comparison);
+                completeHandshake(false);
+                handleModMismatch(session);
             }
 
         } catch (Exception e) {
+            SyncSession session = activeSession.get();
+            if (session != null) {
+                session.finish(SyncSession.State.FAILED);
+            }
             LOGGER.severe("Failed to handle server handshake: " + e.getMessage());
             uiManager.showError("ModSync Error", "Failed to process server mod list");
         }
     }
 
-    private static void handleModMismatch(ServerHandshake handshake, ModListManager.ModListComparison comparison) {
+    private static void handleModMismatch(SyncSession session) {
         if (configManager.getClientConfig().isAutoAcceptDownloads()) {
             // Auto-download without prompting
-            startModDownload(handshake, comparison);
+            startModDownload(session);
         } else {
             // Show prompt to user
-            uiManager.showModMismatchDialog(comparison)
+            uiManager.showModMismatchDialog(session.getComparison())
                     .thenAccept(result -> {
                         switch (result) {
                             case ACCEPT:
-                                startModDownload(handshake, comparison);
+                                startModDownload(session);
                                 break;
                             case DECLINE:
-                                uiManager.showInfo("Connection Cancelled",
-                                        "Connection to server cancelled due to mod mismatch");
+                                if (session.cancel()) {
+                                    platform.disconnectFromServer("Connection cancelled due to mod mismatch");
+                                    uiManager.showInfo("Connection Cancelled",
+                                            "Connection to server cancelled due to mod mismatch");
+                                }
                                 break;
                             default:
                                 // User cancelled
+                                if (session.cancel()) {
+                                    platform.disconnectFromServer("Connection cancelled due to mod mismatch");
+                                }
                                 break;
                         }
                     });
         }
     }
 
-    private static void startModDownload(ServerHandshake handshake, ModListManager.ModListComparison comparison) {
+    private static void startModDownload(SyncSession session) {
+        if (!session.transition(SyncSession.State.DIFFING, SyncSession.State.DOWNLOADING)) {
+            return; // Superseded or cancelled while the prompt was open
+        }
+
+        ServerHandshake handshake = session.getHandshake();
+        ModListManager.ModListComparison comparison = session.getComparison();
         try {
             if (handshake.isZipMode()) {
                 // Download entire modpack as zip
-                downloadManager.downloadModpack(handshake.getZipUrl(), handshake.getZipHash())
-                        .thenRun(() -> completeModSync())
+                downloadManager.downloadModpack(handshake.getZipUrl(), handshake.getZipHash(), handshake.getRequiredMods())
+                        .thenRun(() -> completeModSync(session))
                         .exceptionally(throwable -> {
+                            session.finish(SyncSession.State.FAILED);
+                            platform.disconnectFromServer("ModSync download failed");
                             uiManager.showError("Download Error",
                                     "Failed to download modpack: " + throwable.getMessage());
                             return null;
@@ -242,49 +579,59 @@ public class ModSync {
             } else {
                 // Download individual mods
                 downloadManager.downloadMods(comparison.getMissingMods(), comparison.getMismatchedMods())
-                        .thenRun(() -> completeModSync())
+                        .thenRun(() -> completeModSync(session))
                         .exceptionally(throwable -> {
+                            session.finish(SyncSession.State.FAILED);
+                            platform.disconnectFromServer("ModSync download failed");
                             uiManager.showError("Download Error",
                                     "Failed to download mods: " + throwable.getMessage());
                             return null;
                         });
             }
         } catch (Exception e) {
+            session.finish(SyncSession.State.FAILED);
             LOGGER.severe("Failed to start mod download: " + e.getMessage());
             uiManager.showError("ModSync Error", "Failed to start downloading mods");
         }
     }
 
-    private static void completeModSync() {
+    private static void completeModSync(SyncSession session) {
+        if (!session.transition(SyncSession.State.DOWNLOADING, SyncSession.State.INSTALLING)) {
+            return; // Cancelled while downloading
+        }
+
         if (configManager.getClientConfig().isAutoRestart()) {
             uiManager.showInfo("ModSync", "Restarting Minecraft to load new mods...");
 
             // Save pending connection for auto-rejoin
-            if (configManager.getClientConfig().isAutoRejoin() && pendingServerAddress != null) {
-                configManager.setPendingConnection(pendingServerAddress);
+            if (configManager.getClientConfig().isAutoRejoin() && session.getServerAddress() != null) {
+                configManager.setPendingConnection(session.getServerAddress());
             }
 
+            session.transition(SyncSession.State.INSTALLING, SyncSession.State.DONE);
             platform.scheduleRestart();
         } else {
+            session.transition(SyncSession.State.INSTALLING, SyncSession.State.DONE);
+            // The server is holding this connection in configuration; the new mods need a restart anyway
+            platform.disconnectFromServer("Mods downloaded. Restart Minecraft to join.");
             uiManager.showInfo("ModSync Complete",
                     "Mods downloaded successfully. Please restart Minecraft manually to continue.");
 
         }
     }
 
-    private static void completeHandshake() {
+    private static void completeHandshake(boolean success) {
         try {
-            HandshakeComplete complete = new HandshakeComplete(true);
-            byte[] data = GSON.toJson(complete).getBytes();
-            platform.sendToServer(HANDSHAKE_COMPLETE_CHANNEL, data);
+            HandshakeComplete complete = new HandshakeComplete(success);
+            byte[] data = MessageCodecs.encode(MessageCodecs.HANDSHAKE_COMPLETE, complete);
+            transport.sendToServer(HANDSHAKE_COMPLETE_CHANNEL, data);
         } catch (Exception e) {
             LOGGER.warning("Failed to send handshake complete: " + e.getMessage());
         }
     }
 
     private static void handleIncompatibleServer(String serverAddress) {
-        awaitingHandshake = false;
-        serverCompatibility.put(serverAddress, false);
+        recordCompatibility(serverAddress, false);
         uiManager.showWarning("Server Incompatible",
                 "This server does not have ModSync installed or is not compatible");
     }
@@ -295,19 +642,144 @@ public class ModSync {
         }
 
         try {
-            String json = new String(data);
-            DownloadRequest request = GSON.fromJson(json, DownloadRequest.class);
-            downloadManager.handleServerDownloadRequest(sender, request);
+            DownloadRequest request = MessageCodecs.decode(MessageCodecs.DOWNLOAD_REQUEST, data);
+            downloadManager.handleServerDownloadRequest(sender, request, modListManager.getServerMods());
         } catch (Exception e) {
             LOGGER.warning("Failed to handle download request: " + e.getMessage());
         }
     }
 
+    /**
+     * Sync attempt for the current connection, or null if none has been started
+     */
+    public static SyncSession getActiveSession() {
+        return activeSession.get();
+    }
+
+    /**
+     * Abandon the current sync attempt, e.g. when the player disconnects
+     */
+    public static void cancelActiveSession() {
+        SyncSession session = activeSession.getAndSet(null);
+        if (session != null) {
+            session.cancel();
+        }
+    }
+
     /**
      * Check if a server is compatible with ModSync
      */
     public static boolean isServerCompatible(String serverAddress) {
-        return serverCompatibility.getOrDefault(serverAddress, false);
+        CompatibilityCache.ProbeResult result = serverCompatibility.get(serverAddress);
+        if (result != null) {
+            return result.isCompatible();
+        }
+
+        // Nothing fresh: answer from the last session while a probe refreshes it
+        ServerStateStore.ServerRecord record = serverStateStore != null ? serverStateStore.get(serverAddress) : null;
+        if (record != null && probeEngine != null) {
+            probeEngine.probe(serverAddress, false);
+        }
+        return record != null && record.isCompatible();
+    }
+
+    /**
+     * Check a list of servers (e.g. the multiplayer screen) without connecting to any of them.
+     * Results are cached and read back through {@link #isServerCompatible}.
+     */
+    public static CompletableFuture<Map<String, CompatibilityCache.ProbeResult>> probeServers(Collection<String> serverAddresses) {
+        if (probeEngine == null) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        return probeEngine.probeAll(serverAddresses, false)
+                .thenApply(results -> {
+                    recordProbeResults(results);
+                    return results;
+                });
+    }
+
+    private static void recordCompatibility(String serverAddress, boolean compatible) {
+        if (serverAddress == null) return;
+        serverCompatibility.put(new CompatibilityCache.ProbeResult(serverAddress, true, compatible, null, -1,
+                System.currentTimeMillis()));
+        if (serverStateStore != null) {
+            serverStateStore.recordCompatibility(serverAddress, compatible);
+        }
+    }
+
+    private static void recordProbeResults(Map<String, CompatibilityCache.ProbeResult> results) {
+        for (CompatibilityCache.ProbeResult result : results.values()) {
+            // An unreachable server tells us nothing new about its ModSync support, and one that
+            // never ran ModSync isn't worth remembering across restarts
+            String address = result.getServerAddress();
+            if (result.isReachable() && (result.isCompatible() || serverStateStore.get(address) != null)) {
+                serverStateStore.recordCompatibility(address, result.isCompatible());
+                prefetchNeededMods(result);
+            }
+        }
+    }
+
+    /**
+     * If a probed server still needs mods we lack, start fetching them before the player joins.
+     * The status payload only says how many are missing; which ones comes from the last handshake,
+     * and is only trusted while the server's manifest digest is unchanged.
+     */
+    private static void prefetchNeededMods(CompatibilityCache.ProbeResult result) {
+        StatusPayload status = StatusPayload.decode(result.getModSyncPayload());
+        ServerStateStore.ServerRecord record = serverStateStore.get(result.getServerAddress());
+        if (status == null || record == null || record.getNeededMods().isEmpty()
+                || !status.getManifestDigest().equals(record.getServerManifestDigest())) {
+            return;
+        }
+
+        if (status.countMissing(modListManager.getClientMods()) > 0) {
+            downloadManager.prefetch(record.getNeededMods());
+        }
+    }
+
+    /**
+     * Load what we remembered about servers and re-probe them, all off the calling thread
+     */
+    private static void revalidateKnownServers() {
+        CompletableFuture.runAsync(() -> {
+            Set<String> known = serverStateStore.getKnownServers();
+            if (!known.isEmpty()) {
+                probeEngine.probeAll(known, true).thenAccept(ModSync::recordProbeResults);
+            }
+        });
+    }
+
+    /**
+     * Diff against the server's manifest, skipping the comparison when neither side's manifest has
+     * changed since a previous join that found nothing to do. Hash-based matching always diffs: a
+     * jar can be rebuilt without changing the manifest, and cached hashes keep that cheap. So does
+     * a server with version ranges, which can change without touching the manifest.
+     */
+    private static ModListManager.ModListComparison compareWithHistory(String serverAddress, List<ModInfo> clientMods,
+                                                                       List<ModInfo> serverMods,
+                                                                       ServerHandshake handshake) {
+        ConfigManager.ServerConfig.MatchStrictness strictness = handshake.getMatchStrictness();
+        String serverDigest = ModListManager.computeManifestDigest(serverMods);
+        String clientDigest = ModListManager.computeManifestDigest(clientMods);
+
+        ServerStateStore.ServerRecord record = serverAddress != null ? serverStateStore.get(serverAddress) : null;
+        if (record != null && strictness == ConfigManager.ServerConfig.MatchStrictness.VERSION
+                && handshake.getVersionRanges().isEmpty()
+                && serverDigest.equals(record.getServerManifestDigest())
+                && clientDigest.equals(record.getClientManifestDigest()) && record.getNeededMods().isEmpty()) {
+            LOGGER.info("Manifests unchanged since last join to " + serverAddress + ", skipping comparison");
+            return new ModListManager.ModListComparison(new ArrayList<>(), new ArrayList<>());
+        }
+
+        ModListManager.ModListComparison comparison = modListManager.compareMods(clientMods, serverMods, strictness,
+                handshake.getVersionRanges());
+
+        List<ModInfo> needed = new ArrayList<>(comparison.getMissingMods());
+        for (ModListManager.ModMismatch mismatch : comparison.getMismatchedMods()) {
+            needed.add(mismatch.getServerMod());
+        }
+        serverStateStore.recordHandshake(serverAddress, serverDigest, clientDigest, needed);
+        return comparison;
     }
 
     /**
@@ -332,8 +804,20 @@ public class ModSync {
         }
     }
 
+    /**
+     * Called on the client when its connection to a server closes, in whatever phase: a sync still
+     * in progress can't finish without the connection, and the next server sends its own channel
+     * table, until when the bootstrap IDs apply
+     */
+    public static void handleDisconnect() {
+        if (!platform.isClient()) return;
+        cancelActiveSession();
+        platform.getPacketHandlerRegistry().clearRemoteTable();
+    }
+
     // Getters for managers (for platform-specific modules)
     public static Platform getPlatform() { return platform; }
+    public static FragmentingTransport getTransport() { return transport; }
     public static ModListManager getModListManager() { return modListManager; }
     public static DownloadManager getDownloadManager() { return downloadManager; }
     public static ConfigManager getConfigManager() { return configManager; }
@@ -378,13 +862,22 @@ public class ModSync {
         private final String zipUrl;
         private final String zipHash;
         private final String modSyncVersion;
-
-        public ServerHandshake(List<ModInfo> requiredMods, boolean zipMode, String zipUrl, String zipHash, String modSyncVersion) {
+        private final List<String> channels;
+        private final ConfigManager.ServerConfig.MatchStrictness matchStrictness;
+        private final Map<String, String> versionRanges;
+
+        public ServerHandshake(List<ModInfo> requiredMods, boolean zipMode, String zipUrl, String zipHash,
+                               String modSyncVersion, List<String> channels,
+                               ConfigManager.ServerConfig.MatchStrictness matchStrictness,
+                               Map<String, String> versionRanges) {
             this.requiredMods = requiredMods;
             this.zipMode = zipMode;
             this.zipUrl = zipUrl;
             this.zipHash = zipHash;
             this.modSyncVersion = modSyncVersion;
+            this.channels = channels;
+            this.matchStrictness = matchStrictness;
+            this.versionRanges = versionRanges;
         }
 
         public List<ModInfo> getRequiredMods() { return requiredMods; }
@@ -392,6 +885,9 @@ public class ModSync {
         public String getZipUrl() { return zipUrl; }
         public String getZipHash() { return zipHash; }
         public String getModSyncVersion() { return modSyncVersion; }
+        public List<String> getChannels() { return channels; }
+        public ConfigManager.ServerConfig.MatchStrictness getMatchStrictness() { return matchStrictness; }
+        public Map<String, String> getVersionRanges() { return versionRanges; }
     }
 
     public static class HandshakeComplete {
@@ -407,13 +903,78 @@ public class ModSync {
     public static class DownloadRequest {
         private final String modId;
         private final String fileName;
+        private final int preferredChunkSize;
+        private final List<ByteRange> ranges;
 
         public DownloadRequest(String modId, String fileName) {
+            this(modId, fileName, 0);
+        }
+
+        public DownloadRequest(String modId, String fileName, int preferredChunkSize) {
+            this(modId, fileName, preferredChunkSize, List.of());
+        }
+
+        public DownloadRequest(String modId, String fileName, int preferredChunkSize, List<ByteRange> ranges) {
             this.modId = modId;
             this.fileName = fileName;
+            this.preferredChunkSize = preferredChunkSize;
+            this.ranges = ranges != null ? ranges : List.of();
         }
 
         public String getModId() { return modId; }
         public String getFileName() { return fileName; }
+        public int getPreferredChunkSize() { return preferredChunkSize; }
+        // Empty means the whole file; otherwise only these ranges, e.g. to resume a transfer
+        public List<ByteRange> getRanges() { return ranges; }
+    }
+
+    /**
+     * Sent by the server before a direct transfer's chunks: the file's size and leaf hashes
+     */
+    public static class DownloadInfo {
+        private final String modId;
+        private final long fileSize;
+        private final byte[] leafHashes;
+
+        public DownloadInfo(String modId, long fileSize, byte[] leafHashes) {
+            this.modId = modId;
+            this.fileSize = fileSize;
+            this.leafHashes = leafHashes;
+        }
+
+        public String getModId() { return modId; }
+        public long getFileSize() { return fileSize; }
+        public byte[] getLeafHashes() { return leafHashes; }
+    }
+
+    /**
+     * A span of a file; a length of -1 runs to the end of the file
+     */
+    public static class ByteRange {
+        private final long offset;
+        private final long length;
+
+        public ByteRange(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public long getOffset() { return offset; }
+        public long getLength() { return length; }
+    }
+
+    /**
+     * Server side: a connection held in configuration, and when its handshake went out
+     */
+    private static class PendingConfiguration {
+        private final CompletableFuture<Void> admitted;
+        // Reported a mismatch and is now downloading, under the longer deadline
+        private final boolean downloading;
+        private final long sentAt = System.nanoTime();
+
+        PendingConfiguration(CompletableFuture<Void> admitted, boolean downloading) {
+            this.admitted = admitted;
+            this.downloading = downloading;
+        }
     }
-}
\ No newline at end of file
+}
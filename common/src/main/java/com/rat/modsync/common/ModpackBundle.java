@@ -0,0 +1,143 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip-mode modpack built by the server from its own mods, so admins don't have to build, upload
+ * and re-hash a zip by hand whenever the mod list changes.
+ *
+ * The bundle is deterministic: entries sorted by name, jars STORED (they are already compressed)
+ * and every entry stamped with the same time, so the same mods always give the same bytes and
+ * hash. It is cached in {@code config/modsync/bundle} under a key derived from the mod files, and
+ * only rebuilt when that key changes. Clients fetch it over the direct channel.
+ */
+public class ModpackBundle {
+    private static final Logger LOGGER = Logger.getLogger(ModpackBundle.class.getName());
+
+    // Sent as the handshake's zip URL: fetch the bundle from the server itself
+    public static final String BUNDLE_URL = "modsync:bundle";
+    // Pseudo mod ID the bundle travels under in direct transfers
+    public static final String BUNDLE_MOD_ID = "modsync-bundle";
+
+    private static final String BUNDLE_DIR = "bundle";
+    private static final String HASH_SUFFIX = ".sha256";
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final String sha256;
+
+    private ModpackBundle(Path file, String sha256) {
+        this.file = file;
+        this.sha256 = sha256;
+    }
+
+    public Path getFile() { return file; }
+    public String getSha256() { return sha256; }
+
+    /**
+     * Return the cached bundle for these mods, building it first if the mods have changed
+     */
+    public static ModpackBundle prepare(Path configDir, Path modsDir, List<ModInfo> mods) throws IOException {
+        // Sorted and de-duplicated by file name; mods without a file of their own are skipped
+        TreeMap<String, Path> files = new TreeMap<>();
+        for (ModInfo mod : mods) {
+            Path jar = modsDir.resolve(mod.getFileName());
+            if (Files.isRegularFile(jar)) {
+                files.put(mod.getFileName(), jar);
+            }
+        }
+
+        Path bundleDir = configDir.resolve(BUNDLE_DIR);
+        Files.createDirectories(bundleDir);
+        Path bundleFile = bundleDir.resolve("modpack-" + computeKey(files).substring(0, 16) + ".zip");
+        Path hashFile = bundleFile.resolveSibling(bundleFile.getFileName() + HASH_SUFFIX);
+
+        if (Files.exists(bundleFile) && Files.exists(hashFile)) {
+            return new ModpackBundle(bundleFile, Files.readString(hashFile, StandardCharsets.UTF_8).trim());
+        }
+
+        deleteStale(bundleDir);
+        String hash = build(files, bundleFile);
+        Files.writeString(hashFile, hash, StandardCharsets.UTF_8);
+        LOGGER.info("Built modpack bundle " + bundleFile.getFileName() + " with " + files.size() + " mods");
+        return new ModpackBundle(bundleFile, hash);
+    }
+
+    private static String build(TreeMap<String, Path> files, Path bundleFile) throws IOException {
+        MessageDigest digest = HashTree.sha256();
+        Path temp = bundleFile.resolveSibling(bundleFile.getFileName() + ".tmp");
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (OutputStream fileOut = Files.newOutputStream(temp);
+             ZipOutputStream zip = new ZipOutputStream(new DigestOutputStream(fileOut, digest))) {
+            for (var jar : files.entrySet()) {
+                // STORED entries need their size and CRC up front
+                CRC32 crc = new CRC32();
+                long size = 0;
+                try (InputStream in = Files.newInputStream(jar.getValue())) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, read);
+                        size += read;
+                    }
+                }
+
+                ZipEntry entry = new ZipEntry(jar.getKey());
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                entry.setCrc(crc.getValue());
+                entry.setTimeLocal(ENTRY_TIME);
+                zip.putNextEntry(entry);
+                try (InputStream in = Files.newInputStream(jar.getValue())) {
+                    in.transferTo(zip);
+                }
+                zip.closeEntry();
+            }
+        }
+
+        Files.move(temp, bundleFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return HashTree.toHex(digest.digest());
+    }
+
+    /**
+     * Cache key over each file's name, size and modification time
+     */
+    private static String computeKey(TreeMap<String, Path> files) throws IOException {
+        MessageDigest digest = HashTree.sha256();
+        for (var jar : files.entrySet()) {
+            String line = jar.getKey() + "|" + Files.size(jar.getValue()) + "|"
+                    + Files.getLastModifiedTime(jar.getValue()).toMillis() + "\n";
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return HashTree.toHex(digest.digest());
+    }
+
+    private static void deleteStale(Path bundleDir) throws IOException {
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(bundleDir, "modpack-*")) {
+            entries.forEach(stale::add);
+        }
+        for (Path path : stale) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.rat.modsync.common;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Channel registry shared by the loader platforms.
+ *
+ * Each channel name is assigned a compact integer ID in registration order, which is what goes
+ * on the wire (as a varint). Incoming packets are dispatched by indexing straight into a handler
+ * table, and a channel may carry any number of handlers - registering a second one appends it
+ * rather than replacing the first.
+ *
+ * The server's table is authoritative. It is sent in the handshake, and the client remaps its
+ * IDs onto the server's with {@link #applyRemoteTable}. Channels registered before the handshake
+ * (see {@link ModSync#setupNetworking}) are declared in a fixed order so their IDs agree without
+ * any remapping.
+ */
+public class PacketHandlerRegistry {
+    private static final Logger LOGGER = Logger.getLogger(PacketHandlerRegistry.class.getName());
+    private static final Platform.PacketHandler[] NO_HANDLERS = new Platform.PacketHandler[0];
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // Copy-on-write tables, indexed by local channel ID
+    private volatile String[] names = new String[0];
+    private volatile Platform.PacketHandler[][] handlers = new Platform.PacketHandler[0][];
+
+    // Peer ID <-> local ID translation, null until a remote table has been applied
+    private volatile int[] remoteToLocal;
+    private volatile int[] localToRemote;
+
+    /**
+     * Assign an ID to a channel without attaching a handler
+     */
+    public synchronized int declare(String channel) {
+        Integer existing = ids.get(channel);
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = names.length;
+        String[] newNames = Arrays.copyOf(names, id + 1);
+        newNames[id] = channel;
+        Platform.PacketHandler[][] newHandlers = Arrays.copyOf(handlers, id + 1);
+        newHandlers[id] = NO_HANDLERS;
+
+        handlers = newHandlers;
+        names = newNames;
+        ids.put(channel, id);
+        return id;
+    }
+
+    /**
+     * Add a handler to a channel, declaring the channel if needed
+     */
+    public synchronized int register(String channel, Platform.PacketHandler handler) {
+        int id = declare(channel);
+
+        Platform.PacketHandler[][] newHandlers = handlers.clone();
+        Platform.PacketHandler[] current = newHandlers[id];
+        Platform.PacketHandler[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = handler;
+        newHandlers[id] = updated;
+
+        handlers = newHandlers;
+        return id;
+    }
+
+    /**
+     * Local ID for a channel, or -1 if it has never been declared
+     */
+    public int idOf(String channel) {
+        Integer id = ids.get(channel);
+        return id != null ? id : -1;
+    }
+
+    public String nameOf(int localId) {
+        String[] current = names;
+        return localId >= 0 && localId < current.length ? current[localId] : null;
+    }
+
+    /**
+     * ID to write on the wire for an outgoing packet, translated to the peer's table when one is known
+     */
+    public int wireIdOf(String channel) {
+        int local = idOf(channel);
+        if (local < 0) {
+            throw new IllegalArgumentException("Unknown channel: " + channel);
+        }
+
+        int[] mapping = localToRemote;
+        if (mapping == null) {
+            return local;
+        }
+        int remote = local < mapping.length ? mapping[local] : -1;
+        if (remote < 0) {
+            throw new IllegalArgumentException("Channel not supported by peer: " + channel);
+        }
+        return remote;
+    }
+
+    /**
+     * Dispatch a packet carrying a wire ID
+     */
+    public void dispatch(int wireId, Object sender, byte[] data) {
+        int[] mapping = remoteToLocal;
+        int local = mapping == null ? wireId : (wireId >= 0 && wireId < mapping.length ? mapping[wireId] : -1);
+        dispatchLocal(local, sender, data);
+    }
+
+    /**
+     * Dispatch a packet to the handlers of a local channel ID
+     */
+    public void dispatchLocal(int localId, Object sender, byte[] data) {
+        Platform.PacketHandler[][] table = handlers;
+        if (localId < 0 || localId >= table.length) {
+            LOGGER.warning("Dropping packet for unknown channel ID " + localId);
+            return;
+        }
+        String name = nameOf(localId);
+        if (name != null) {
+            SyncMetrics.BYTES_RECEIVED.labels(name).add(data.length);
+            PacketTrace.record(PacketTrace.Kind.RECEIVE, name, data.length);
+        }
+
+        for (Platform.PacketHandler handler : table[localId]) {
+            handler.handle(sender, data);
+        }
+    }
+
+    /**
+     * Channel names in ID order, as sent to the peer
+     */
+    public List<String> getChannelTable() {
+        return List.of(names);
+    }
+
+    /**
+     * Adopt the peer's channel table: outgoing IDs are translated to the peer's and incoming IDs
+     * back to ours. Channels the peer does not know map to -1.
+     */
+    public synchronized void applyRemoteTable(List<String> remoteNames) {
+        String[] local = names;
+        int[] toLocal = new int[remoteNames.size()];
+        int[] toRemote = new int[local.length];
+        Arrays.fill(toRemote, -1);
+
+        for (int remoteId = 0; remoteId < remoteNames.size(); remoteId++) {
+            int localId = idOf(remoteNames.get(remoteId));
+            toLocal[remoteId] = localId;
+            if (localId >= 0) {
+                toRemote[localId] = remoteId;
+            }
+        }
+
+        remoteToLocal = toLocal;
+        localToRemote = toRemote;
+    }
+
+    /**
+     * Forget the peer's table, e.g. when the connection closes
+     */
+    public synchronized void clearRemoteTable() {
+        remoteToLocal = null;
+        localToRemote = null;
+    }
+}
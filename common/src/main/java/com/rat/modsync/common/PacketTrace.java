@@ -0,0 +1,139 @@
+package com.rat.modsync.common;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * Ring buffer of recent packets, in place of a log line per packet.
+ *
+ * Recording writes a timestamp, a size and references to existing objects (kind, channel name,
+ * thread name) into preallocated arrays, so the per-packet path builds no strings and allocates
+ * nothing. One packet in {@link #getSampleRate()} is kept and the buffer holds the last
+ * {@value #CAPACITY}. Nothing is formatted until a dump is asked for: on demand through the
+ * {@code com.rat.modsync:type=PacketTrace} MXBean, or logged when a transfer fails (at most once
+ * every {@value #ERROR_DUMP_INTERVAL_MS} ms).
+ */
+public final class PacketTrace {
+    private static final Logger LOGGER = Logger.getLogger(PacketTrace.class.getName());
+
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    private static final long ERROR_DUMP_INTERVAL_MS = 30_000;
+
+    public enum Kind {
+        SEND_TO_SERVER, SEND_TO_CLIENT, RECEIVE
+    }
+
+    // Sequence number + 1 of the record in each slot; 0 while empty or being rewritten
+    private static final AtomicLongArray stamps = new AtomicLongArray(CAPACITY);
+    private static final long[] times = new long[CAPACITY];
+    private static final String[] threads = new String[CAPACITY];
+    private static final int[] sizes = new int[CAPACITY];
+    private static final Kind[] kinds = new Kind[CAPACITY];
+    private static final String[] channels = new String[CAPACITY];
+
+    private static final AtomicLong offered = new AtomicLong();
+    private static final AtomicLong recorded = new AtomicLong();
+    private static final AtomicLong lastErrorDump = new AtomicLong();
+    private static volatile int sampleRate = 1;
+
+    private PacketTrace() {}
+
+    public static void record(Kind kind, String channel, int size) {
+        int rate = sampleRate;
+        if (rate > 1 && offered.getAndIncrement() % rate != 0) {
+            return;
+        }
+
+        long sequence = recorded.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+        stamps.set(slot, 0);
+        times[slot] = System.nanoTime();
+        threads[slot] = Thread.currentThread().getName();
+        sizes[slot] = size;
+        kinds[slot] = kind;
+        channels[slot] = channel;
+        stamps.set(slot, sequence + 1);
+    }
+
+    public static int getSampleRate() { return sampleRate; }
+
+    /**
+     * Keep one packet in {@code rate}; 1 keeps every packet
+     */
+    public static void setSampleRate(int rate) {
+        sampleRate = Math.max(1, rate);
+    }
+
+    /**
+     * The buffered packets, oldest first, with times relative to now
+     */
+    public static String dump() {
+        long end = recorded.get();
+        long start = Math.max(0, end - CAPACITY);
+        long now = System.nanoTime();
+
+        StringBuilder out = new StringBuilder(64 + (int) (end - start) * 64);
+        out.append("Last ").append(end - start).append(" of ").append(end).append(" traced packets (1 in ")
+                .append(sampleRate).append(" sampled):\n");
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & MASK);
+            long stamp = stamps.get(slot);
+            long time = times[slot];
+            String thread = threads[slot];
+            int size = sizes[slot];
+            Kind kind = kinds[slot];
+            String channel = channels[slot];
+            // Overwritten or still being written while we read it
+            if (stamp != sequence + 1 || stamps.get(slot) != stamp) continue;
+
+            out.append(String.format("%12.3f ms  %-14s %-28s %8d B  %s%n",
+                    (time - now) / 1e6, kind, channel, size, thread));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Log the buffer after a failure, unless it was logged for another failure moments ago
+     */
+    public static void dumpOnError(String reason) {
+        long now = System.currentTimeMillis();
+        long last = lastErrorDump.get();
+        if (now - last < ERROR_DUMP_INTERVAL_MS || !lastErrorDump.compareAndSet(last, now)) {
+            return;
+        }
+        LOGGER.warning("Packet trace after " + reason + ":\n" + dump());
+    }
+
+    /**
+     * Expose the trace over JMX; later calls do nothing
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Control(),
+                    new ObjectName("com.rat.modsync:type=PacketTrace"));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered
+        } catch (Exception e) {
+            LOGGER.warning("Failed to register packet trace MBean: " + e.getMessage());
+        }
+    }
+
+    public interface PacketTraceMXBean {
+        String dump();
+        int getSampleRate();
+        void setSampleRate(int rate);
+        long getPacketsRecorded();
+    }
+
+    private static class Control implements PacketTraceMXBean {
+        @Override public String dump() { return PacketTrace.dump(); }
+        @Override public int getSampleRate() { return PacketTrace.getSampleRate(); }
+        @Override public void setSampleRate(int rate) { PacketTrace.setSampleRate(rate); }
+        @Override public long getPacketsRecorded() { return recorded.get(); }
+    }
+}
@@ -0,0 +1,182 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A direct transfer's partial file plus a sidecar recording which {@link ChunkSizer#BLOCK_SIZE}
+ * blocks have been written, so an interrupted transfer can be resumed after a disconnect or
+ * restart by asking the server for only the missing ranges.
+ *
+ * Chunks always start on a block boundary and are whole blocks except at the end of the file, so
+ * a block is either fully received or not at all. The sidecar is only written after the data it
+ * describes has been forced to disk.
+ */
+public class PartialDownload {
+    private static final Logger LOGGER = Logger.getLogger(PartialDownload.class.getName());
+    private static final int SIDECAR_VERSION = 1;
+    private static final String DATA_SUFFIX = ".part";
+    private static final String SIDECAR_SUFFIX = ".blocks";
+
+    private final Path dataFile;
+    private final Path sidecarFile;
+    private final String identity;
+    private BitSet blocks = new BitSet();
+    // Learned from the server's final chunk; -1 until then
+    private long totalSize = -1;
+
+    private PartialDownload(Path dataFile, Path sidecarFile, String identity) {
+        this.dataFile = dataFile;
+        this.sidecarFile = sidecarFile;
+        this.identity = identity;
+    }
+
+    /**
+     * Open the partial state for a mod, picking up whatever a previous attempt left behind
+     */
+    public static PartialDownload open(Path partialDir, ModInfo mod) throws IOException {
+        // Same mod, version and hash means the same bytes; anything else starts afresh
+        String identity = mod.getModId() + "|" + mod.getVersion() + "|" + mod.getFileName() + "|" + mod.getSha256Hash();
+        String name = (mod.getModId() + "-" + mod.getVersion()).replaceAll("[^A-Za-z0-9._-]", "_");
+
+        Files.createDirectories(partialDir);
+        PartialDownload partial = new PartialDownload(partialDir.resolve(name + DATA_SUFFIX),
+                partialDir.resolve(name + SIDECAR_SUFFIX), identity);
+        partial.load();
+        return partial;
+    }
+
+    public Path getDataFile() { return dataFile; }
+    public long getTotalSize() { return totalSize; }
+
+    public synchronized boolean hasProgress() {
+        return !blocks.isEmpty();
+    }
+
+    public synchronized long getBytesPresent() {
+        long bytes = (long) blocks.cardinality() * ChunkSizer.BLOCK_SIZE;
+        return totalSize >= 0 ? Math.min(bytes, totalSize) : bytes;
+    }
+
+    /**
+     * Record that {@code length} bytes were written at {@code offset}
+     */
+    public synchronized void markReceived(long offset, int length) {
+        if (length <= 0) return;
+        int first = (int) (offset / ChunkSizer.BLOCK_SIZE);
+        // A short final block only happens at end of file, so it counts as complete
+        int end = (int) ((offset + length + ChunkSizer.BLOCK_SIZE - 1) / ChunkSizer.BLOCK_SIZE);
+        blocks.set(first, end);
+    }
+
+    /**
+     * Whether every block of {@code [offset, offset + length)} has been received
+     */
+    public synchronized boolean hasRange(long offset, long length) {
+        int first = (int) (offset / ChunkSizer.BLOCK_SIZE);
+        int end = (int) ((offset + length + ChunkSizer.BLOCK_SIZE - 1) / ChunkSizer.BLOCK_SIZE);
+        return blocks.nextClearBit(first) >= end;
+    }
+
+    /**
+     * Forget blocks whose contents turned out to be bad, so they are fetched again
+     */
+    public synchronized void clearRange(long offset, long length) {
+        int first = (int) (offset / ChunkSizer.BLOCK_SIZE);
+        int end = (int) ((offset + length + ChunkSizer.BLOCK_SIZE - 1) / ChunkSizer.BLOCK_SIZE);
+        blocks.clear(first, end);
+    }
+
+    public synchronized void setTotalSize(long totalSize) {
+        this.totalSize = totalSize;
+        blocks.clear(blockCount(totalSize), Math.max(blocks.length(), blockCount(totalSize)));
+    }
+
+    public synchronized boolean isComplete() {
+        return totalSize >= 0 && blocks.nextClearBit(0) >= blockCount(totalSize);
+    }
+
+    /**
+     * Byte ranges still to fetch. Empty means the whole file; a length of -1 means "to end of file".
+     */
+    public synchronized List<ModSync.ByteRange> getMissingRanges() {
+        List<ModSync.ByteRange> ranges = new ArrayList<>();
+        if (blocks.isEmpty()) {
+            return ranges;
+        }
+
+        int limit = totalSize >= 0 ? blockCount(totalSize) : Integer.MAX_VALUE;
+        int start = blocks.nextClearBit(0);
+        while (start < limit) {
+            int next = blocks.nextSetBit(start);
+            if (next < 0 || next >= limit) {
+                ranges.add(new ModSync.ByteRange((long) start * ChunkSizer.BLOCK_SIZE, -1));
+                break;
+            }
+            ranges.add(new ModSync.ByteRange((long) start * ChunkSizer.BLOCK_SIZE,
+                    (long) (next - start) * ChunkSizer.BLOCK_SIZE));
+            start = blocks.nextClearBit(next);
+        }
+        return ranges;
+    }
+
+    /**
+     * Persist the block map; callers force the data file first
+     */
+    public synchronized void save() {
+        MessageWriter writer = MessageWriter.acquire();
+        writer.writeVarInt(SIDECAR_VERSION);
+        writer.writeString(identity);
+        writer.writeVarLong(totalSize + 1);
+        writer.writeBytes(blocks.toByteArray());
+
+        try {
+            Path temp = sidecarFile.resolveSibling(sidecarFile.getFileName() + ".tmp");
+            Files.write(temp, writer.toByteArray());
+            Files.move(temp, sidecarFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to save transfer progress for " + dataFile.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forget the progress, leaving the data file for the caller to move or delete
+     */
+    public void discard() {
+        try {
+            Files.deleteIfExists(sidecarFile);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to delete " + sidecarFile.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private void load() throws IOException {
+        if (Files.exists(sidecarFile) && Files.exists(dataFile)) {
+            try {
+                MessageReader reader = new MessageReader(Files.readAllBytes(sidecarFile));
+                if (reader.readVarInt() == SIDECAR_VERSION && identity.equals(reader.readString())) {
+                    totalSize = reader.readVarLong() - 1;
+                    blocks = BitSet.valueOf(reader.readBytes());
+                    return;
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Ignoring unreadable transfer progress " + sidecarFile.getFileName());
+            }
+        }
+
+        // Nothing usable: start from an empty file
+        Files.deleteIfExists(sidecarFile);
+        Files.deleteIfExists(dataFile);
+        Files.createFile(dataFile);
+    }
+
+    private static int blockCount(long size) {
+        return (int) ((size + ChunkSizer.BLOCK_SIZE - 1) / ChunkSizer.BLOCK_SIZE);
+    }
+}
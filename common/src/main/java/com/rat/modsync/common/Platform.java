@@ -47,10 +47,28 @@ public interface Platform {
     void sendToClient(Object player, String channel, byte[] data);
 
     /**
-     * Register a packet handler for a specific channel
+     * Maximum number of data bytes a single server-to-client packet can carry,
+     * after the platform's own payload framing
+     */
+    int getMaxClientboundPayloadSize();
+
+    /**
+     * Maximum number of data bytes a single client-to-server packet can carry,
+     * after the platform's own payload framing
+     */
+    int getMaxServerboundPayloadSize();
+
+    /**
+     * Register a packet handler for a specific channel.
+     * Multiple handlers may be registered for the same channel; all of them are invoked.
      */
     void registerPacketHandler(String channel, PacketHandler handler);
 
+    /**
+     * Channel ID table used to encode and dispatch this platform's packets
+     */
+    PacketHandlerRegistry getPacketHandlerRegistry();
+
     /**
      * Schedule a client restart
      */
@@ -86,6 +104,22 @@ public interface Platform {
      */
     void connectToServer(String serverAddress);
 
+    /**
+     * Address of the server the client is connected or connecting to, or null (client-side)
+     */
+    String getCurrentServerAddress();
+
+    /**
+     * Close the client's connection to the server, in whatever phase it is in (client-side)
+     */
+    void disconnectFromServer(String reason);
+
+    /**
+     * Close a client's connection, given as the player or configuring connection that packet
+     * handlers receive as their sender (server-side)
+     */
+    void disconnectClient(Object connection, String reason);
+
     // -------------------------
     // Nested enums
     // -------------------------
@@ -0,0 +1,130 @@
+package com.rat.modsync.common;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Checks many servers for ModSync at once.
+ *
+ * Each probe gets its own thread, up to {@code parallelism} at a time, and is bounded by its own
+ * timeout. The default is larger than any ordinary server list, so a whole list refreshes in
+ * roughly one round trip; threads are started as a batch needs them and exit once idle. Results
+ * land in the {@link CompatibilityCache}; probing an address that already has a probe in flight
+ * joins it.
+ */
+public class ServerProbeEngine {
+    private static final Logger LOGGER = Logger.getLogger(ServerProbeEngine.class.getName());
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    public static final int DEFAULT_PARALLELISM = 64;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 3000;
+
+    private final ServerStatusProbe.StatusFetcher fetcher;
+    private final CompatibilityCache cache;
+    private final int timeoutMillis;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<CompatibilityCache.ProbeResult>> inFlight = new ConcurrentHashMap<>();
+
+    public ServerProbeEngine(CompatibilityCache cache) {
+        this(ServerStatusProbe.DEFAULT, cache, DEFAULT_PARALLELISM, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public ServerProbeEngine(ServerStatusProbe.StatusFetcher fetcher, CompatibilityCache cache,
+                             int parallelism, int timeoutMillis) {
+        this.fetcher = fetcher;
+        this.cache = cache;
+        this.timeoutMillis = timeoutMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism,
+                IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "ModSync-Probe-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Nothing runs between server list refreshes
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    public CompatibilityCache getCache() { return cache; }
+
+    /**
+     * Probe one server, reusing a fresh cached result unless {@code force} is set
+     */
+    public CompletableFuture<CompatibilityCache.ProbeResult> probe(String serverAddress, boolean force) {
+        if (!force) {
+            CompatibilityCache.ProbeResult cached = cache.get(serverAddress);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        CompletableFuture<CompatibilityCache.ProbeResult> created = new CompletableFuture<>();
+        CompletableFuture<CompatibilityCache.ProbeResult> existing = inFlight.putIfAbsent(serverAddress, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture.supplyAsync(() -> runProbe(serverAddress), executor)
+                // Socket timeouts bound each phase; this bounds the whole probe, queueing included
+                .completeOnTimeout(CompatibilityCache.ProbeResult.unreachable(serverAddress),
+                        timeoutMillis * 3L, TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    if (result != null) {
+                        cache.put(result);
+                    }
+                    inFlight.remove(serverAddress, created);
+                    if (error != null) {
+                        created.completeExceptionally(error);
+                    } else {
+                        created.complete(result);
+                    }
+                });
+        return created;
+    }
+
+    /**
+     * Probe a batch of servers concurrently; the future completes when every probe has finished
+     */
+    public CompletableFuture<Map<String, CompatibilityCache.ProbeResult>> probeAll(Collection<String> serverAddresses, boolean force) {
+        Map<String, CompletableFuture<CompatibilityCache.ProbeResult>> futures = new LinkedHashMap<>();
+        for (String address : serverAddresses) {
+            futures.put(address, probe(address, force));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    Map<String, CompatibilityCache.ProbeResult> results = new LinkedHashMap<>();
+                    futures.forEach((address, future) -> results.put(address, future.join()));
+                    return results;
+                });
+    }
+
+    private CompatibilityCache.ProbeResult runProbe(String serverAddress) {
+        long start = System.nanoTime();
+        try {
+            String status = fetcher.fetchStatus(serverAddress, timeoutMillis);
+            long rttMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            String payload = ServerStatusProbe.extractModSyncPayload(status);
+            return new CompatibilityCache.ProbeResult(serverAddress, true, payload != null, payload,
+                    rttMillis, System.currentTimeMillis());
+        } catch (Exception e) {
+            LOGGER.fine("Probe of " + serverAddress + " failed: " + e.getMessage());
+            return CompatibilityCache.ProbeResult.unreachable(serverAddress);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,194 @@
+package com.rat.modsync.common;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * What the client last learned about each server, kept across restarts in
+ * {@code config/modsync/servers.json}: compatibility, the digest of the server's manifest and the
+ * mods the last diff said were needed.
+ *
+ * The file is read on first use rather than during startup, and writes are coalesced onto a
+ * background thread so recording a probe result never blocks the caller on disk I/O. Records not
+ * refreshed for {@link #MAX_AGE_MILLIS} are dropped, as are the stalest beyond {@link #MAX_RECORDS},
+ * since every known server is probed again at startup.
+ */
+public class ServerStateStore {
+    private static final Logger LOGGER = Logger.getLogger(ServerStateStore.class.getName());
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type RECORDS_TYPE = new TypeToken<Map<String, ServerRecord>>(){}.getType();
+    private static final String FILE_NAME = "servers.json";
+    private static final long SAVE_DELAY_MILLIS = 2000;
+    static final int MAX_RECORDS = 64;
+    static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ModSync-State-Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path file;
+    private final Map<String, ServerRecord> records = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private volatile boolean loaded;
+
+    public ServerStateStore(Path configDir) {
+        this.file = configDir.resolve(FILE_NAME);
+    }
+
+    public ServerRecord get(String serverAddress) {
+        ensureLoaded();
+        return records.get(serverAddress);
+    }
+
+    public Set<String> getKnownServers() {
+        ensureLoaded();
+        return Collections.unmodifiableSet(records.keySet());
+    }
+
+    public void recordCompatibility(String serverAddress, boolean compatible) {
+        update(serverAddress, record -> record.withCompatibility(compatible));
+    }
+
+    /**
+     * Remember the outcome of a handshake: both manifest digests and what the diff said to fetch
+     */
+    public void recordHandshake(String serverAddress, String serverManifestDigest, String clientManifestDigest,
+                                List<ModInfo> neededMods) {
+        update(serverAddress, record -> record.withHandshake(serverManifestDigest, clientManifestDigest, neededMods));
+    }
+
+    // Records are replaced, never modified, so the writer thread always serializes whole ones
+    private void update(String serverAddress, UnaryOperator<ServerRecord> change) {
+        if (serverAddress == null) return;
+        ensureLoaded();
+
+        records.compute(serverAddress, (address, existing) ->
+                change.apply(existing != null ? existing : new ServerRecord()));
+        prune();
+        scheduleSave();
+    }
+
+    /**
+     * Drop records gone stale, then the least recently seen beyond the cap. Returns whether any went.
+     */
+    private boolean prune() {
+        long cutoff = System.currentTimeMillis() - MAX_AGE_MILLIS;
+        boolean pruned = records.values().removeIf(record -> record.getLastSeen() < cutoff);
+
+        int excess = records.size() - MAX_RECORDS;
+        if (excess > 0) {
+            records.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().getLastSeen()))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(records::remove);
+            pruned = true;
+        }
+        return pruned;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+
+        synchronized (this) {
+            if (loaded) return;
+            if (Files.exists(file)) {
+                try {
+                    Map<String, ServerRecord> stored = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), RECORDS_TYPE);
+                    if (stored != null) {
+                        records.putAll(stored);
+                        if (prune()) {
+                            scheduleSave();
+                        }
+                    }
+                } catch (Exception e) {
+                    LOGGER.warning("Failed to load " + FILE_NAME + ", starting empty: " + e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            WRITER.schedule(this::save, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void save() {
+        saveScheduled.set(false);
+        try {
+            Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+            Files.writeString(temp, GSON.toJson(new HashMap<>(records), RECORDS_TYPE), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to save " + FILE_NAME + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Persisted state for one server address; immutable, each update makes a new record
+     */
+    public static class ServerRecord {
+        private final boolean compatible;
+        private final String serverManifestDigest;
+        private final String clientManifestDigest;
+        private final List<ModInfo> neededMods;
+        private final long lastSeen;
+
+        // For Gson, and the starting point for a new address
+        private ServerRecord() {
+            this(false, null, null, null, 0);
+        }
+
+        private ServerRecord(boolean compatible, String serverManifestDigest, String clientManifestDigest,
+                             List<ModInfo> neededMods, long lastSeen) {
+            this.compatible = compatible;
+            this.serverManifestDigest = serverManifestDigest;
+            this.clientManifestDigest = clientManifestDigest;
+            this.neededMods = neededMods;
+            this.lastSeen = lastSeen;
+        }
+
+        ServerRecord withCompatibility(boolean compatible) {
+            return new ServerRecord(compatible, serverManifestDigest, clientManifestDigest, neededMods,
+                    System.currentTimeMillis());
+        }
+
+        ServerRecord withHandshake(String serverManifestDigest, String clientManifestDigest, List<ModInfo> neededMods) {
+            return new ServerRecord(true, serverManifestDigest, clientManifestDigest, List.copyOf(neededMods),
+                    System.currentTimeMillis());
+        }
+
+        public boolean isCompatible() { return compatible; }
+        public String getServerManifestDigest() { return serverManifestDigest; }
+        public String getClientManifestDigest() { return clientManifestDigest; }
+        public List<ModInfo> getNeededMods() { return neededMods != null ? neededMods : Collections.emptyList(); }
+        public long getLastSeen() { return lastSeen; }
+    }
+}
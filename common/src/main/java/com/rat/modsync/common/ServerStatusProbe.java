@@ -0,0 +1,268 @@
+package com.rat.modsync.common;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Queries a server's status the way the multiplayer screen does, over its own TCP connection,
+ * so servers can be checked without joining them.
+ *
+ * A server advertises ModSync by appending an empty text component to its MOTD whose insertion
+ * is {@link #MOTD_MARKER} followed by the payload. Vanilla renders nothing for it, so players see
+ * the MOTD unchanged; the probe finds the marker and returns the text after it. Servers from
+ * before this put the marker in the visible MOTD text, which is still recognised.
+ *
+ * Addresses resolve as vanilla resolves them: one without a port (or with the default port) is
+ * first looked up as a {@code _minecraft._tcp} SRV record, falling back to the host itself.
+ */
+public class ServerStatusProbe {
+    public static final String MOTD_MARKER = "§8[ModSync]";
+
+    private static final int DEFAULT_PORT = 25565;
+    // Status responses are one JSON string; vanilla caps it at 32767 chars
+    private static final int MAX_RESPONSE_BYTES = 32767 * 3 + 16;
+    // Any protocol number works for a status query; -1 is what vanilla uses when it doesn't care
+    private static final int STATUS_PROTOCOL_VERSION = -1;
+    private static final String SRV_PREFIX = "_minecraft._tcp.";
+
+    /**
+     * Source of status responses; the default talks to real servers, tests can supply a fake
+     */
+    @FunctionalInterface
+    public interface StatusFetcher {
+        String fetchStatus(String serverAddress, int timeoutMillis) throws IOException;
+    }
+
+    public static final StatusFetcher DEFAULT = ServerStatusProbe::fetchStatusJson;
+
+    private ServerStatusProbe() {}
+
+    /**
+     * Perform a status handshake and return the raw status JSON
+     */
+    public static String fetchStatusJson(String serverAddress, int timeoutMillis) throws IOException {
+        InetSocketAddress unresolved = resolveSrv(parseAddress(serverAddress), timeoutMillis);
+        InetSocketAddress address = new InetSocketAddress(unresolved.getHostString(), unresolved.getPort());
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(unresolved.getHostString());
+        }
+
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            socket.connect(address, timeoutMillis);
+
+            OutputStream out = socket.getOutputStream();
+
+            // Handshake: protocol, address, port, next state = status
+            MessageWriter handshake = MessageWriter.acquire();
+            handshake.writeVarInt(0x00);
+            handshake.writeVarInt(STATUS_PROTOCOL_VERSION);
+            handshake.writeString(address.getHostString());
+            handshake.writeByte(address.getPort() >> 8).writeByte(address.getPort());
+            handshake.writeVarInt(1);
+            writePacket(out, handshake.toByteArray());
+
+            // Status request: empty packet 0x00
+            writePacket(out, new byte[]{0x00});
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int length = readVarInt(in);
+            if (length <= 0 || length > MAX_RESPONSE_BYTES) {
+                throw new IOException("Bad status response length " + length);
+            }
+
+            byte[] packet = new byte[length];
+            in.readFully(packet);
+            MessageReader reader = new MessageReader(packet);
+            int packetId = reader.readVarInt();
+            if (packetId != 0x00) {
+                throw new IOException("Unexpected status packet 0x" + Integer.toHexString(packetId));
+            }
+            return reader.readString();
+        }
+    }
+
+    /**
+     * Text following the ModSync marker in a status response's MOTD, or null if the server does
+     * not advertise ModSync
+     */
+    public static String extractModSyncPayload(String statusJson) {
+        try {
+            JsonObject status = JsonParser.parseString(statusJson).getAsJsonObject();
+            String hidden = findInsertion(status.get("description"));
+            if (hidden != null) return hidden;
+
+            StringBuilder motd = new StringBuilder();
+            flattenText(status.get("description"), motd);
+
+            int idx = motd.indexOf(MOTD_MARKER);
+            if (idx == -1) return null;
+            return motd.substring(idx + MOTD_MARKER.length()).trim();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The payload carried by a text component's insertion, or null if it isn't ModSync's
+     */
+    public static String payloadFromInsertion(String insertion) {
+        if (insertion == null || !insertion.startsWith(MOTD_MARKER)) return null;
+        return insertion.substring(MOTD_MARKER.length()).trim();
+    }
+
+    private static String findInsertion(JsonElement element) {
+        if (element == null || !(element.isJsonObject() || element.isJsonArray())) return null;
+
+        Iterable<JsonElement> children;
+        if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            JsonElement insertion = object.get("insertion");
+            String payload = insertion != null && insertion.isJsonPrimitive()
+                    ? payloadFromInsertion(insertion.getAsString()) : null;
+            if (payload != null) return payload;
+            JsonElement extra = object.get("extra");
+            if (extra == null || !extra.isJsonArray()) return null;
+            children = extra.getAsJsonArray();
+        } else {
+            children = element.getAsJsonArray();
+        }
+
+        for (JsonElement child : children) {
+            String payload = findInsertion(child);
+            if (payload != null) return payload;
+        }
+        return null;
+    }
+
+    /**
+     * Collect the plain text of a chat component (string, object with text/extra, or array)
+     */
+    private static void flattenText(JsonElement element, StringBuilder out) {
+        if (element == null || element.isJsonNull()) return;
+
+        if (element.isJsonPrimitive()) {
+            out.append(element.getAsString());
+        } else if (element.isJsonArray()) {
+            for (JsonElement child : element.getAsJsonArray()) {
+                flattenText(child, out);
+            }
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            flattenText(object.get("text"), out);
+            flattenText(object.get("extra"), out);
+        }
+    }
+
+    static InetSocketAddress parseAddress(String serverAddress) {
+        String host = serverAddress.trim();
+        int port = DEFAULT_PORT;
+
+        if (host.startsWith("[")) {
+            // [ipv6]:port
+            int close = host.indexOf(']');
+            if (close > 0 && host.length() > close + 2 && host.charAt(close + 1) == ':') {
+                port = Integer.parseInt(host.substring(close + 2));
+            }
+            host = host.substring(1, close > 0 ? close : host.length());
+        } else if (host.indexOf(':') == host.lastIndexOf(':') && host.indexOf(':') > 0) {
+            int colon = host.indexOf(':');
+            port = Integer.parseInt(host.substring(colon + 1));
+            host = host.substring(0, colon);
+        }
+
+        return InetSocketAddress.createUnresolved(host, port);
+    }
+
+    /**
+     * Follow the address's SRV record if it has one, as vanilla does for default-port addresses
+     */
+    static InetSocketAddress resolveSrv(InetSocketAddress address, int timeoutMillis) {
+        String host = address.getHostString();
+        if (address.getPort() != DEFAULT_PORT || isIpLiteral(host) || host.equalsIgnoreCase("localhost")) {
+            return address;
+        }
+
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        env.put(Context.PROVIDER_URL, "dns:");
+        env.put("com.sun.jndi.dns.timeout.initial", Integer.toString(Math.max(1, timeoutMillis)));
+        env.put("com.sun.jndi.dns.timeout.retries", "1");
+        try {
+            DirContext context = new InitialDirContext(env);
+            try {
+                Attribute srv = context.getAttributes(SRV_PREFIX + host, new String[] {"SRV"}).get("srv");
+                if (srv == null || srv.size() == 0) return address;
+                return parseSrvRecord(srv.get().toString(), address);
+            } finally {
+                context.close();
+            }
+        } catch (NamingException | RuntimeException e) {
+            // No record (the usual case) or no DNS: connect to the host itself
+            return address;
+        }
+    }
+
+    /**
+     * Target of an SRV record in "priority weight port target." form, or {@code fallback} if the
+     * record can't be read
+     */
+    static InetSocketAddress parseSrvRecord(String record, InetSocketAddress fallback) {
+        String[] fields = record.trim().split("\\s+");
+        if (fields.length != 4) return fallback;
+        try {
+            int port = Integer.parseInt(fields[2]);
+            String target = fields[3].endsWith(".") ? fields[3].substring(0, fields[3].length() - 1) : fields[3];
+            if (port <= 0 || port > 0xFFFF || target.isEmpty()) return fallback;
+            return InetSocketAddress.createUnresolved(target, port);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static boolean isIpLiteral(String host) {
+        return host.indexOf(':') >= 0 || host.matches("[0-9.]+");
+    }
+
+    private static void writePacket(OutputStream out, byte[] body) throws IOException {
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(body.length + 5);
+        int value = body.length;
+        while ((value & ~0x7F) != 0) {
+            framed.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        framed.write(value);
+        framed.write(body);
+        out.write(framed.toByteArray());
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b == -1) throw new IOException("Connection closed during status response");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("VarInt too long");
+    }
+}
@@ -0,0 +1,185 @@
+package com.rat.modsync.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact summary of a server's mod list for the status (server list ping) response.
+ *
+ * Instead of the whole manifest it carries the manifest digest, the number of mods and a Bloom
+ * filter of their {@code modId@version} keys, deflated and base64url-encoded after
+ * {@link ServerStatusProbe#MOTD_MARKER}. A client tests its own mods against the filter: every
+ * server mod it does not match counts as missing. False positives can only hide a mismatch, never
+ * invent one, and the join-time handshake still does the exact comparison.
+ */
+public class StatusPayload {
+    private static final char FORMAT_VERSION = '1';
+    private static final int BITS_PER_MOD = 10;
+    private static final int HASH_COUNT = 7;
+    private static final int MIN_BITS = 64;
+
+    private final String manifestDigest;
+    private final int modCount;
+    private final long[] bits;
+
+    private StatusPayload(String manifestDigest, int modCount, long[] bits) {
+        this.manifestDigest = manifestDigest;
+        this.modCount = modCount;
+        this.bits = bits;
+    }
+
+    public String getManifestDigest() { return manifestDigest; }
+    public int getModCount() { return modCount; }
+
+    /**
+     * Build the payload text for a server's mods
+     */
+    public static String encode(List<ModInfo> serverMods) {
+        int bitCount = Math.max(MIN_BITS, serverMods.size() * BITS_PER_MOD);
+        long[] bits = new long[(bitCount + 63) / 64];
+        for (ModInfo mod : serverMods) {
+            setKey(bits, key(mod));
+        }
+
+        // Digest first: it borrows this thread's pooled writer too
+        String digest = ModListManager.computeManifestDigest(serverMods);
+
+        MessageWriter writer = MessageWriter.acquire();
+        writer.writeString(digest);
+        writer.writeVarInt(serverMods.size());
+        writer.writeVarInt(bits.length);
+        // Filter words are effectively random, so fixed width beats varints
+        for (long word : bits) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writer.writeByte((int) (word >>> shift));
+            }
+        }
+
+        return FORMAT_VERSION + Base64.getUrlEncoder().withoutPadding().encodeToString(deflate(writer.toByteArray()));
+    }
+
+    /**
+     * Parse payload text, or return null if it is not a payload this version understands
+     */
+    public static StatusPayload decode(String text) {
+        if (text == null || text.isEmpty() || text.charAt(0) != FORMAT_VERSION) {
+            return null;
+        }
+
+        try {
+            byte[] raw = inflate(Base64.getUrlDecoder().decode(text.substring(1)));
+            MessageReader reader = new MessageReader(raw);
+            String digest = reader.readString();
+            int modCount = reader.readVarInt();
+            int words = reader.readVarInt();
+            if (words <= 0 || words > raw.length) {
+                return null;
+            }
+            long[] bits = new long[words];
+            for (int i = 0; i < words; i++) {
+                long word = 0;
+                for (int b = 0; b < 8; b++) {
+                    word = (word << 8) | reader.readByte();
+                }
+                bits[i] = word;
+            }
+            return new StatusPayload(digest, modCount, bits);
+        } catch (IOException | IllegalArgumentException | DataFormatException e) {
+            return null;
+        }
+    }
+
+    public boolean mightContain(ModInfo mod) {
+        long hash = hash64(key(mod));
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * 64;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long index = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * How many of the server's mods the client appears not to have (missing or other version)
+     */
+    public int countMissing(List<ModInfo> clientMods) {
+        int matched = 0;
+        for (ModInfo mod : clientMods) {
+            if (mightContain(mod)) {
+                matched++;
+            }
+        }
+        return Math.max(0, modCount - matched);
+    }
+
+    private static String key(ModInfo mod) {
+        return mod.getModId() + "@" + mod.getVersion();
+    }
+
+    private static void setKey(long[] bits, String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * 64;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long index = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    // 64-bit FNV-1a over UTF-8; split into two 32-bit halves for double hashing
+    private static long hash64(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[1024];
+            // The status response is capped well below this; refuse anything larger
+            while (!inflater.finished() && out.size() < 256 * 1024) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
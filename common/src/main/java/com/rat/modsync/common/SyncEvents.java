@@ -0,0 +1,96 @@
+package com.rat.modsync.common;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events covering a sync from handshake to install, all under the
+ * {@code ModSync} category. A standard recording ({@code -XX:StartFlightRecording} or
+ * {@code jcmd <pid> JFR.start}) picks them up; {@code jfr print --categories ModSync} lists them.
+ *
+ * Callers fill in fields only after {@link Event#shouldCommit()}, so with recording off an event
+ * costs a {@code begin()}/{@code end()} pair and a flag check, and the JIT drops the allocation.
+ */
+public final class SyncEvents {
+    private SyncEvents() {}
+
+    @Name("com.rat.modsync.SessionTransition")
+    @Label("Sync Session Transition")
+    @Category("ModSync")
+    @Description("A client sync session moved to a new state")
+    public static class SessionTransition extends Event {
+        @Label("Session") long sessionId;
+        @Label("Server") String server;
+        @Label("From") String from;
+        @Label("To") String to;
+    }
+
+    @Name("com.rat.modsync.HandshakeReceived")
+    @Label("Handshake Received")
+    @Category("ModSync")
+    @Description("Client decoded the server's handshake and adopted its channel table")
+    public static class HandshakeReceived extends Event {
+        @Label("Server") String server;
+        @Label("Required Mods") int requiredMods;
+        @Label("Strictness") String strictness;
+        @Label("Zip Mode") boolean zipMode;
+    }
+
+    @Name("com.rat.modsync.DiffComputed")
+    @Label("Mod Diff Computed")
+    @Category("ModSync")
+    @Description("Client compared its mods with the server's list")
+    public static class DiffComputed extends Event {
+        @Label("Server") String server;
+        @Label("Client Mods") int clientMods;
+        @Label("Server Mods") int serverMods;
+        @Label("Missing") int missing;
+        @Label("Mismatched") int mismatched;
+    }
+
+    @Name("com.rat.modsync.FileTransfer")
+    @Label("Mod File Transfer")
+    @Category("ModSync")
+    @Description("Client obtained one mod file; hashing done along the way shows up as nested File Hashed events")
+    public static class FileTransfer extends Event {
+        @Label("Mod ID") String modId;
+        @Label("File") String fileName;
+        @Label("Source") @Description("existing, staged, server or url") String source;
+        @Label("Size") @DataAmount long bytes;
+    }
+
+    @Name("com.rat.modsync.FileServed")
+    @Label("Mod File Served")
+    @Category("ModSync")
+    @Description("Server streamed a mod file, or ranges of it, to a client")
+    public static class FileServed extends Event {
+        @Label("Mod ID") String modId;
+        @Label("File") String fileName;
+        @Label("Bytes Sent") @DataAmount long bytes;
+        @Label("Chunks") int chunks;
+        @Label("Hash Tree Time") @Timespan(Timespan.NANOSECONDS) long hashTreeDuration;
+    }
+
+    @Name("com.rat.modsync.FileHashed")
+    @Label("File Hashed")
+    @Category("ModSync")
+    @Description("Whole-file SHA-256 of a downloaded, staged or installed file")
+    public static class FileHashed extends Event {
+        @Label("File") String fileName;
+        @Label("Size") @DataAmount long bytes;
+    }
+
+    @Name("com.rat.modsync.ModpackEntryExtracted")
+    @Label("Modpack Entry Extracted")
+    @Category("ModSync")
+    @Description("One jar written from a modpack zip, whether extracted locally or fetched by range")
+    public static class ModpackEntryExtracted extends Event {
+        @Label("Entry") String entry;
+        @Label("Size") @DataAmount long bytes;
+    }
+}
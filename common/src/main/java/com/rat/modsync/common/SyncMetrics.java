@@ -0,0 +1,116 @@
+package com.rat.modsync.common;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * ModSync's metrics, recorded wherever the work happens. {@link #start} exposes them over JMX
+ * under {@code com.rat.modsync} and rewrites {@code metrics.prom} (Prometheus text) and
+ * {@code metrics.json} in the config directory on a fixed interval.
+ */
+public final class SyncMetrics {
+    private static final Logger LOGGER = Logger.getLogger(SyncMetrics.class.getName());
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create();
+    private static final String JMX_DOMAIN = "com.rat.modsync";
+
+    private static final double[] SECONDS = {0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+    private static final double[] MOD_COUNTS = {0, 1, 2, 5, 10, 25, 50, 100, 250};
+    private static final double[] BYTES_PER_SECOND = {64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024,
+            16 * 1024 * 1024, 64 * 1024 * 1024, 256 * 1024 * 1024};
+
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    // Handshake and diff
+    public static final MetricsRegistry.Histogram HANDSHAKE_SECONDS = REGISTRY.histogram("modsync_handshake_seconds",
+            "Server: time from sending the handshake to the client's answer", SECONDS);
+    public static final MetricsRegistry.Histogram DIFF_MISSING_MODS = REGISTRY.histogram("modsync_diff_missing_mods",
+            "Client: server mods missing on the client, per handshake", MOD_COUNTS);
+    public static final MetricsRegistry.Histogram DIFF_MISMATCHED_MODS = REGISTRY.histogram("modsync_diff_mismatched_mods",
+            "Client: mods whose client copy doesn't match the server's, per handshake", MOD_COUNTS);
+
+    // Traffic, counted per logical channel and again for the fragment channel that carries large messages
+    public static final MetricsRegistry.LabeledCounter BYTES_SENT = REGISTRY.counter("modsync_sent_bytes_total",
+            "Payload bytes sent, by channel", "channel");
+    public static final MetricsRegistry.LabeledCounter BYTES_RECEIVED = REGISTRY.counter("modsync_received_bytes_total",
+            "Payload bytes received, by channel", "channel");
+
+    // Direct transfers
+    public static final MetricsRegistry.Counter TRANSFERS = REGISTRY.counter("modsync_transfers_total",
+            "Files served (server) or downloaded (client) over the connection");
+    public static final MetricsRegistry.Counter TRANSFER_BYTES = REGISTRY.counter("modsync_transfer_bytes_total",
+            "File bytes served or downloaded over the connection");
+    public static final MetricsRegistry.Histogram TRANSFER_THROUGHPUT = REGISTRY.histogram(
+            "modsync_transfer_throughput_bytes_per_second", "Throughput of each completed transfer", BYTES_PER_SECOND);
+    public static final MetricsRegistry.Counter LEAF_FAILURES = REGISTRY.counter("modsync_leaf_verification_failures_total",
+            "Client: hash tree leaves that failed verification and were requested again");
+    public static final MetricsRegistry.Counter RETRANSMIT_ROUNDS = REGISTRY.counter("modsync_retransmit_rounds_total",
+            "Client: extra request rounds for leaves that failed verification");
+
+    // Hashing
+    public static final MetricsRegistry.LabeledCounter FILE_HASH_CACHE = REGISTRY.counter("modsync_file_hash_cache_lookups_total",
+            "Client: jar hash lookups, by hit or miss", "result");
+    public static final MetricsRegistry.LabeledCounter HASH_TREE_CACHE = REGISTRY.counter("modsync_hash_tree_cache_lookups_total",
+            "Server: hash tree lookups for served files, by hit or miss", "result");
+
+    // Install
+    public static final MetricsRegistry.Histogram EXTRACT_SECONDS = REGISTRY.histogram("modsync_extract_seconds",
+            "Client: time to install a modpack, whole-zip extraction or ranged fetch", SECONDS);
+
+    private static boolean started;
+
+    private SyncMetrics() {}
+
+    /**
+     * Register the MBeans and, if {@code intervalSeconds} is positive, start writing snapshots.
+     * Only the first call has any effect.
+     */
+    public static synchronized void start(Path configDir, int intervalSeconds) {
+        if (started) return;
+        started = true;
+        REGISTRY.registerMBeans(JMX_DOMAIN);
+
+        if (intervalSeconds > 0) {
+            ScheduledExecutorService exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ModSync-Metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            exporter.scheduleWithFixedDelay(() -> export(configDir), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Write both snapshot files now
+     */
+    public static void export(Path configDir) {
+        try {
+            writeAtomically(configDir.resolve("metrics.prom"), REGISTRY.toPrometheusText());
+
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("timestamp", System.currentTimeMillis());
+            json.put("metrics", REGISTRY.snapshot());
+            writeAtomically(configDir.resolve("metrics.json"), GSON.toJson(json));
+        } catch (Exception e) {
+            LOGGER.warning("Failed to export metrics: " + e.getMessage());
+        }
+    }
+
+    // Scrapers never see a half-written file
+    private static void writeAtomically(Path file, String content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
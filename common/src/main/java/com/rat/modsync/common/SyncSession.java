@@ -0,0 +1,164 @@
+package com.rat.modsync.common;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * One client-side sync attempt against one server.
+ *
+ * The session moves through {@link State} via compare-and-set transitions, so a network thread,
+ * the UI and a timer racing on the same session cannot both win: exactly one caller observes a
+ * successful {@link #transition}. Timers are owned by the session and cancelled as soon as it
+ * reaches a terminal state, which means a superseded or cancelled attempt never fires late.
+ */
+public class SyncSession {
+    private static final Logger LOGGER = Logger.getLogger(SyncSession.class.getName());
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private static final ScheduledExecutorService TIMERS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ModSync-Session-Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum State {
+        PINGING,
+        AWAITING_HANDSHAKE,
+        DIFFING,
+        DOWNLOADING,
+        INSTALLING,
+        DONE,
+        FAILED,
+        CANCELLED;
+
+        public boolean isTerminal() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+
+        /**
+         * Forward-only transitions; any live state may also fail or be cancelled
+         */
+        boolean canMoveTo(State next) {
+            if (isTerminal()) return false;
+            if (next == FAILED || next == CANCELLED) return true;
+            switch (this) {
+                case PINGING: return next == AWAITING_HANDSHAKE;
+                case AWAITING_HANDSHAKE: return next == DIFFING;
+                case DIFFING: return next == DOWNLOADING || next == DONE;
+                case DOWNLOADING: return next == INSTALLING;
+                case INSTALLING: return next == DONE;
+                default: return false;
+            }
+        }
+    }
+
+    private final long id = NEXT_ID.incrementAndGet();
+    private final String serverAddress;
+    private final AtomicReference<State> state;
+    private final List<ScheduledFuture<?>> timers = new CopyOnWriteArrayList<>();
+
+    private volatile ModSync.ServerHandshake handshake;
+    private volatile ModListManager.ModListComparison comparison;
+
+    public SyncSession(String serverAddress, State initialState) {
+        this.serverAddress = serverAddress;
+        this.state = new AtomicReference<>(initialState);
+    }
+
+    public long getId() { return id; }
+    public String getServerAddress() { return serverAddress; }
+    public State getState() { return state.get(); }
+    public boolean isActive() { return !state.get().isTerminal(); }
+
+    public ModSync.ServerHandshake getHandshake() { return handshake; }
+    public ModListManager.ModListComparison getComparison() { return comparison; }
+
+    /**
+     * Record the handshake and its diff once the session has entered DIFFING
+     */
+    public void setHandshakeResult(ModSync.ServerHandshake handshake, ModListManager.ModListComparison comparison) {
+        this.handshake = handshake;
+        this.comparison = comparison;
+    }
+
+    /**
+     * Move from {@code expected} to {@code next}. Returns false if the session was in any other
+     * state or the transition is not allowed, in which case nothing changes.
+     */
+    public boolean transition(State expected, State next) {
+        if (!expected.canMoveTo(next) || !state.compareAndSet(expected, next)) {
+            return false;
+        }
+
+        LOGGER.fine("Session " + id + " (" + serverAddress + "): " + expected + " -> " + next);
+        SyncEvents.SessionTransition event = new SyncEvents.SessionTransition();
+        if (event.shouldCommit()) {
+            event.sessionId = id;
+            event.server = serverAddress;
+            event.from = expected.name();
+            event.to = next.name();
+            event.commit();
+        }
+        if (next.isTerminal()) {
+            cancelTimers();
+        }
+        return true;
+    }
+
+    /**
+     * Move to a terminal state from whatever live state the session is in
+     */
+    public boolean finish(State terminal) {
+        while (true) {
+            State current = state.get();
+            if (!current.canMoveTo(terminal) || !terminal.isTerminal()) {
+                return false;
+            }
+            if (transition(current, terminal)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean cancel() {
+        return finish(State.CANCELLED);
+    }
+
+    /**
+     * Run {@code action} after a delay unless the session has ended by then
+     */
+    public void schedule(long delay, TimeUnit unit, Runnable action) {
+        if (!isActive()) return;
+
+        ScheduledFuture<?> future = TIMERS.schedule(() -> {
+            if (isActive()) {
+                action.run();
+            }
+        }, delay, unit);
+        timers.add(future);
+
+        // Lost a race with a terminal transition: make sure this timer does not outlive the session
+        if (!isActive()) {
+            future.cancel(false);
+        }
+    }
+
+    private void cancelTimers() {
+        for (ScheduledFuture<?> timer : timers) {
+            timer.cancel(false);
+        }
+        timers.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "SyncSession{id=" + id + ", server='" + serverAddress + "', state=" + state.get() + "}";
+    }
+}
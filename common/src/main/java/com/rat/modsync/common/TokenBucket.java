@@ -0,0 +1,49 @@
+package com.rat.modsync.common;
+
+/**
+ * Byte-rate limiter for background transfers.
+ *
+ * Tokens (bytes) refill continuously at {@code bytesPerSecond} up to one second's worth, so short
+ * bursts are allowed but the long-run rate stays at the cap. {@link #acquire} blocks the calling
+ * thread until enough tokens are available.
+ */
+public class TokenBucket {
+    private final long bytesPerSecond;
+    private final long capacity;
+    private long tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(1, bytesPerSecond);
+        this.capacity = this.bytesPerSecond;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Take {@code bytes} tokens, sleeping until they have accumulated
+     */
+    public synchronized void acquire(int bytes) throws InterruptedException {
+        long needed = bytes;
+        while (true) {
+            refill();
+            if (tokens >= needed || tokens == capacity) {
+                // A request larger than the bucket goes through once it is full, leaving it in debt
+                tokens -= needed;
+                return;
+            }
+            long waitNanos = (Math.min(needed, capacity) - tokens) * 1_000_000_000L / bytesPerSecond;
+            wait(Math.max(1, waitNanos / 1_000_000), (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        // More than a second idle refills the whole bucket; capping also keeps the product in range
+        long elapsed = Math.min(now - lastRefill, 1_000_000_000L);
+        long earned = elapsed * bytesPerSecond / 1_000_000_000L;
+        if (earned > 0) {
+            tokens = Math.min(capacity, tokens + earned);
+            lastRefill = now;
+        }
+    }
+}
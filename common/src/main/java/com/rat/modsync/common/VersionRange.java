@@ -0,0 +1,262 @@
+package com.rat.modsync.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of acceptable mod versions, as declared by a server admin in {@code versionRanges}.
+ *
+ * Both common notations are understood:
+ * <ul>
+ *   <li>npm-style: {@code 1.2.3}, {@code >=1.2 <2}, {@code ^1.2.3}, {@code ~1.2.3}, {@code 1.2.x},
+ *       {@code *}, with {@code ||} between alternatives</li>
+ *   <li>Maven/Forge intervals: {@code [1.2,1.3)}, {@code (,2.0]}, {@code [1.2]}, comma-separated
+ *       for a union</li>
+ * </ul>
+ * Versions are compared segment by segment, see {@link #compareVersions}.
+ */
+public class VersionRange {
+    // Alternatives (OR) of conjunctions (AND) of single comparisons
+    private final List<List<Bound>> alternatives;
+
+    private VersionRange(List<List<Bound>> alternatives) {
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the range can't be parsed
+     */
+    public static VersionRange parse(String spec) {
+        String trimmed = spec.trim();
+        List<List<Bound>> alternatives = new ArrayList<>();
+        if (trimmed.startsWith("[") || trimmed.startsWith("(")) {
+            parseIntervals(trimmed, alternatives);
+        } else {
+            for (String alternative : trimmed.split("\\|\\|")) {
+                alternatives.add(parseComparators(alternative.trim()));
+            }
+        }
+        return new VersionRange(alternatives);
+    }
+
+    public boolean contains(String version) {
+        if (version == null) return false;
+        for (List<Bound> bounds : alternatives) {
+            boolean all = true;
+            for (Bound bound : bounds) {
+                if (!bound.accepts(version)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compare two version strings: build metadata after {@code +} is ignored, dot-separated
+     * segments are compared numerically where both are numbers (missing segments count as 0), and
+     * a {@code -suffix} sorts before the same version without one.
+     */
+    public static int compareVersions(String a, String b) {
+        String[] partsA = splitRelease(a);
+        String[] partsB = splitRelease(b);
+        int result = compareSegments(partsA[0], partsB[0]);
+        if (result != 0) return result;
+
+        if (partsA[1] == null || partsB[1] == null) {
+            return partsA[1] == null ? (partsB[1] == null ? 0 : 1) : -1;
+        }
+        return compareSegments(partsA[1], partsB[1]);
+    }
+
+    private static void parseIntervals(String spec, List<List<Bound>> alternatives) {
+        int position = 0;
+        while (position < spec.length()) {
+            char open = spec.charAt(position);
+            int close = indexOfAny(spec, position + 1, ']', ')');
+            if ((open != '[' && open != '(') || close < 0) {
+                throw new IllegalArgumentException("Malformed version interval: " + spec);
+            }
+
+            String body = spec.substring(position + 1, close);
+            boolean inclusiveLow = open == '[';
+            boolean inclusiveHigh = spec.charAt(close) == ']';
+            List<Bound> bounds = new ArrayList<>();
+            int comma = body.indexOf(',');
+            if (comma < 0) {
+                // [1.2] is exactly 1.2
+                if (!inclusiveLow || !inclusiveHigh || body.isBlank()) {
+                    throw new IllegalArgumentException("Malformed version interval: " + spec);
+                }
+                bounds.add(new Bound(Op.EQ, body.trim()));
+            } else {
+                String low = body.substring(0, comma).trim();
+                String high = body.substring(comma + 1).trim();
+                if (!low.isEmpty()) bounds.add(new Bound(inclusiveLow ? Op.GE : Op.GT, low));
+                if (!high.isEmpty()) bounds.add(new Bound(inclusiveHigh ? Op.LE : Op.LT, high));
+            }
+            alternatives.add(bounds);
+
+            // Skip the comma between intervals
+            position = close + 1;
+            while (position < spec.length() && (spec.charAt(position) == ',' || Character.isWhitespace(spec.charAt(position)))) {
+                position++;
+            }
+        }
+    }
+
+    private static List<Bound> parseComparators(String spec) {
+        List<Bound> bounds = new ArrayList<>();
+        if (spec.isEmpty() || spec.equals("*")) {
+            return bounds;
+        }
+
+        for (String token : spec.split("\\s+")) {
+            if (token.startsWith(">=")) {
+                bounds.add(new Bound(Op.GE, version(token.substring(2), token)));
+            } else if (token.startsWith("<=")) {
+                bounds.add(new Bound(Op.LE, version(token.substring(2), token)));
+            } else if (token.startsWith(">")) {
+                bounds.add(new Bound(Op.GT, version(token.substring(1), token)));
+            } else if (token.startsWith("<")) {
+                bounds.add(new Bound(Op.LT, version(token.substring(1), token)));
+            } else if (token.startsWith("^")) {
+                String base = version(token.substring(1), token);
+                int[] numbers = leadingNumbers(base, 3);
+                // Up to the next change in the first non-zero segment
+                String upper = numbers[0] > 0 ? (numbers[0] + 1) + ".0.0"
+                        : numbers[1] > 0 ? "0." + (numbers[1] + 1) + ".0"
+                        : "0.0." + (numbers[2] + 1);
+                bounds.add(new Bound(Op.GE, base));
+                bounds.add(new Bound(Op.BELOW, upper));
+            } else if (token.startsWith("~")) {
+                String base = version(token.substring(1), token);
+                int[] numbers = leadingNumbers(base, 2);
+                // ~1.2.3 and ~1.2 allow patch changes, ~1 minor ones as well
+                boolean majorOnly = splitRelease(base)[0].split("\\.").length == 1;
+                bounds.add(new Bound(Op.GE, base));
+                bounds.add(new Bound(Op.BELOW, majorOnly ? (numbers[0] + 1) + ".0.0" : numbers[0] + "." + (numbers[1] + 1) + ".0"));
+            } else if (token.endsWith(".x") || token.endsWith(".*")) {
+                // 1.2.x: same leading segments, anything after
+                String prefix = token.substring(0, token.length() - 2);
+                String[] segments = prefix.split("\\.");
+                int last;
+                try {
+                    last = Integer.parseInt(segments[segments.length - 1]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Malformed wildcard version: " + token);
+                }
+                segments[segments.length - 1] = String.valueOf(last + 1);
+                bounds.add(new Bound(Op.GE, prefix));
+                bounds.add(new Bound(Op.BELOW, String.join(".", segments)));
+            } else {
+                bounds.add(new Bound(Op.EQ, version(token.startsWith("=") ? token.substring(1) : token, token)));
+            }
+        }
+        return bounds;
+    }
+
+    private static String version(String version, String token) {
+        if (version.isEmpty()) {
+            throw new IllegalArgumentException("Missing version in '" + token + "'");
+        }
+        return version;
+    }
+
+    private static int[] leadingNumbers(String version, int count) {
+        String[] segments = splitRelease(version)[0].split("\\.");
+        int[] numbers = new int[count];
+        for (int i = 0; i < count && i < segments.length; i++) {
+            try {
+                numbers[i] = Integer.parseInt(segments[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a numeric version: " + version);
+            }
+        }
+        return numbers;
+    }
+
+    private static int indexOfAny(String s, int from, char a, char b) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == a || s.charAt(i) == b) return i;
+        }
+        return -1;
+    }
+
+    // [release, pre-release or null], build metadata dropped
+    private static String[] splitRelease(String version) {
+        int plus = version.indexOf('+');
+        String core = plus >= 0 ? version.substring(0, plus) : version;
+        int dash = core.indexOf('-');
+        return dash >= 0 ? new String[]{core.substring(0, dash), core.substring(dash + 1)} : new String[]{core, null};
+    }
+
+    private static int compareSegments(String a, String b) {
+        String[] segmentsA = a.split("[.\\-]");
+        String[] segmentsB = b.split("[.\\-]");
+        for (int i = 0; i < Math.max(segmentsA.length, segmentsB.length); i++) {
+            String x = i < segmentsA.length ? segmentsA[i] : "0";
+            String y = i < segmentsB.length ? segmentsB[i] : "0";
+            boolean numericX = isNumeric(x);
+            boolean numericY = isNumeric(y);
+
+            int result;
+            if (numericX && numericY) {
+                result = compareNumeric(x, y);
+            } else if (numericX != numericY) {
+                // Numbers sort before words
+                result = numericX ? -1 : 1;
+            } else {
+                result = x.compareTo(y);
+            }
+            if (result != 0) return result;
+        }
+        return 0;
+    }
+
+    private static boolean isNumeric(String segment) {
+        if (segment.isEmpty()) return false;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    // Without parsing, so arbitrarily long segments still compare correctly
+    private static int compareNumeric(String x, String y) {
+        String a = x.replaceFirst("^0+(?=.)", "");
+        String b = y.replaceFirst("^0+(?=.)", "");
+        return a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+    }
+
+    // BELOW is the implied upper bound of ^, ~ and x ranges: unlike LT it also rejects
+    // pre-releases of the bound itself, so ^1.2.3 does not let in 2.0.0-beta.1
+    private enum Op { EQ, GT, GE, LT, LE, BELOW }
+
+    private static class Bound {
+        private final Op op;
+        private final String version;
+
+        Bound(Op op, String version) {
+            this.op = op;
+            this.version = version;
+        }
+
+        boolean accepts(String candidate) {
+            if (op == Op.BELOW) {
+                return compareSegments(splitRelease(candidate)[0], version) < 0;
+            }
+            int result = compareVersions(candidate, version);
+            switch (op) {
+                case GT: return result > 0;
+                case GE: return result >= 0;
+                case LT: return result < 0;
+                case LE: return result <= 0;
+                default: return result == 0;
+            }
+        }
+    }
+}
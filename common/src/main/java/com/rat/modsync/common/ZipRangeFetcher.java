@@ -0,0 +1,369 @@
+package com.rat.modsync.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Fetches only the parts of a remote modpack zip that the client is missing, using HTTP Range
+ * requests: the end of central directory record and the central directory first, then the local
+ * records of just the entries whose SHA-256 differs from what is installed.
+ *
+ * Only the whole zip is pinned by the handshake's hash, so each jar fetched on its own is checked
+ * against the SHA-256 the manifest gives for its file name. Jars the manifest doesn't list at all
+ * are server-only or library mods and are skipped. Anything this can't handle or verify (no Range
+ * support, ZIP64, unknown compression, a listed jar whose hash isn't known yet) throws
+ * {@link WholeZipRequiredException} so the caller can fall back to downloading the whole zip.
+ */
+public class ZipRangeFetcher {
+    private static final Logger LOGGER = Logger.getLogger(ZipRangeFetcher.class.getName());
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int MAX_CENTRAL_DIRECTORY_SIZE = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String url;
+    private final Map<String, String> expectedHashes;
+    private final FileHashCache fileHashes;
+
+    /**
+     * @param expectedHashes SHA-256 of each jar clients need, keyed by file name; null where the
+     *                       manifest lists the jar without a hash
+     * @param fileHashes     hashes of the installed jars, so unchanged ones aren't read again
+     */
+    public ZipRangeFetcher(String url, Map<String, String> expectedHashes, FileHashCache fileHashes) {
+        this.url = url;
+        this.expectedHashes = expectedHashes;
+        this.fileHashes = fileHashes;
+    }
+
+    /**
+     * Bring {@code modsDir} in line with the remote zip's .jar entries, fetching only what differs.
+     * Jars the zip doesn't contain are moved to {@code backupDir}, as a full extraction would.
+     *
+     * @return the number of entries fetched
+     */
+    public int syncInto(Path modsDir, Path backupDir) throws IOException {
+        List<Entry> entries = readCentralDirectory();
+        List<Entry> needed = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        for (Entry entry : entries) {
+            if (!isExtractable(entry.name)) continue;
+            names.add(entry.name);
+            if (!expectedHashes.containsKey(entry.name)) {
+                // Not sent to clients; a copy already installed is left alone
+                LOGGER.fine("Skipping modpack entry not in the manifest: " + entry.name);
+                continue;
+            }
+            // Checked before anything is fetched, so a fallback finds the mods directory untouched
+            if (expectedHashes.get(entry.name) == null) {
+                throw new WholeZipRequiredException("No manifest hash to verify " + entry.name + " against");
+            }
+            if (!isInstalled(modsDir.resolve(entry.name), entry, expectedHashes.get(entry.name))) {
+                needed.add(entry);
+            }
+        }
+
+        // Each local record runs up to the next record (or the central directory)
+        entries.sort(Comparator.comparingLong(e -> e.localHeaderOffset));
+        for (Entry entry : needed) {
+            int index = entries.indexOf(entry);
+            long end = index + 1 < entries.size() ? entries.get(index + 1).localHeaderOffset : entry.centralDirectoryOffset;
+            SyncEvents.ModpackEntryExtracted event = new SyncEvents.ModpackEntryExtracted();
+            event.begin();
+            fetchEntry(entry, end, modsDir.resolve(entry.name));
+            event.end();
+            if (event.shouldCommit()) {
+                event.entry = entry.name;
+                event.bytes = entry.size;
+                event.commit();
+            }
+        }
+
+        moveExtras(modsDir, backupDir, names);
+        fileHashes.save();
+        LOGGER.info("Fetched " + needed.size() + " of " + names.size() + " modpack entries");
+        return needed.size();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        // The EOCD record sits in the last 22 bytes plus however long the zip comment is
+        RangeResponse tail = get("bytes=-" + (EOCD_SIZE + MAX_COMMENT_SIZE));
+        ByteBuffer tailBuffer = ByteBuffer.wrap(tail.body).order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocd = -1;
+        for (int i = tail.body.length - EOCD_SIZE; i >= 0; i--) {
+            if (tailBuffer.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("No end of central directory record in " + url);
+        }
+
+        int entryCount = tailBuffer.getShort(eocd + 10) & 0xFFFF;
+        long cdSize = tailBuffer.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdOffset = tailBuffer.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+            throw new WholeZipRequiredException("ZIP64 modpacks are fetched whole");
+        }
+        if (cdSize > MAX_CENTRAL_DIRECTORY_SIZE) {
+            throw new IOException("Central directory too large: " + cdSize + " bytes");
+        }
+
+        // Usually already inside the tail we fetched
+        byte[] cd;
+        if (cdOffset >= tail.start) {
+            int from = (int) (cdOffset - tail.start);
+            cd = Arrays.copyOfRange(tail.body, from, from + (int) cdSize);
+        } else {
+            cd = get("bytes=" + cdOffset + "-" + (cdOffset + cdSize - 1)).body;
+        }
+
+        return parseCentralDirectory(ByteBuffer.wrap(cd).order(ByteOrder.LITTLE_ENDIAN), entryCount, cdOffset);
+    }
+
+    private static List<Entry> parseCentralDirectory(ByteBuffer cd, int entryCount, long cdOffset) throws IOException {
+        List<Entry> entries = new ArrayList<>(entryCount);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_HEADER_SIZE > cd.limit() || cd.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new IOException("Corrupt central directory");
+            }
+            int method = cd.getShort(position + 10) & 0xFFFF;
+            long crc = cd.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = cd.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = cd.getShort(position + 28) & 0xFFFF;
+            int extraLength = cd.getShort(position + 30) & 0xFFFF;
+            int commentLength = cd.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = cd.getInt(position + 42) & 0xFFFFFFFFL;
+
+            byte[] name = new byte[nameLength];
+            cd.get(position + CENTRAL_HEADER_SIZE, name);
+            entries.add(new Entry(new String(name, StandardCharsets.UTF_8), method, crc, compressedSize, size,
+                    localHeaderOffset, cdOffset));
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private void fetchEntry(Entry entry, long recordEnd, Path target) throws IOException {
+        if (entry.method != ZipEntry.STORED && entry.method != ZipEntry.DEFLATED) {
+            throw new WholeZipRequiredException("Unsupported compression method " + entry.method);
+        }
+
+        HttpURLConnection connection = open("bytes=" + entry.localHeaderOffset + "-" + (recordEnd - 1));
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".modsync", ".tmp");
+        Inflater inflater = entry.method == ZipEntry.DEFLATED ? new Inflater(true) : null;
+
+        try (InputStream record = connection.getInputStream()) {
+            // Streamed straight to disk: header, then exactly compressedSize bytes of data
+            ByteBuffer header = ByteBuffer.wrap(record.readNBytes(LOCAL_HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.limit() < LOCAL_HEADER_SIZE || header.getInt(0) != LOCAL_SIGNATURE) {
+                throw new IOException("Corrupt local header for " + entry.name);
+            }
+            int skip = (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            if (record.readNBytes(skip).length != skip) {
+                throw new IOException("Truncated entry " + entry.name);
+            }
+
+            InputStream data = new BoundedInputStream(record, entry.compressedSize);
+            if (inflater != null) {
+                data = new InflaterInputStream(data, inflater);
+            }
+
+            CRC32 crc = new CRC32();
+            MessageDigest digest = HashTree.sha256();
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                InputStream in = data;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            if (crc.getValue() != entry.crc) {
+                throw new IOException("CRC mismatch for " + entry.name);
+            }
+            // The CRC only catches corruption; the manifest hash is what pins the content
+            if (!HashTree.toHex(digest.digest()).equalsIgnoreCase(expectedHashes.get(entry.name))) {
+                throw new IOException("Hash mismatch for " + entry.name);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            fileHashes.record(target, expectedHashes.get(entry.name));
+        } finally {
+            if (inflater != null) inflater.end();
+            connection.disconnect();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private boolean isInstalled(Path file, Entry entry, String expectedHash) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != entry.size) {
+            return false;
+        }
+        return expectedHash.equalsIgnoreCase(fileHashes.getSha256(file));
+    }
+
+    private static void moveExtras(Path modsDir, Path backupDir, List<String> keep) throws IOException {
+        List<Path> extras = new ArrayList<>();
+        try (var files = Files.newDirectoryStream(modsDir, "*.jar")) {
+            for (Path file : files) {
+                if (!keep.contains(file.getFileName().toString())) {
+                    extras.add(file);
+                }
+            }
+        }
+        for (Path extra : extras) {
+            Files.createDirectories(backupDir);
+            Files.move(extra, backupDir.resolve(extra.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            LOGGER.info("Moved mod not in modpack to backup: " + extra.getFileName());
+        }
+    }
+
+    // Same rules as a full extraction: plain relative .jar paths only
+    private static boolean isExtractable(String name) {
+        return !name.endsWith("/") && !name.contains("..") && !name.startsWith("/")
+                && name.toLowerCase().endsWith(".jar");
+    }
+
+    /**
+     * Issue a Range request and check the server honoured it
+     */
+    private HttpURLConnection open(String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("User-Agent", "ModSync/" + ModSync.VERSION);
+        connection.setRequestProperty("Range", range);
+        connection.setConnectTimeout(10000);
+        connection.setReadTimeout(30000);
+
+        int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            // 200 means the server ignored the Range header and would send the whole zip
+            throw new WholeZipRequiredException("Server does not support range requests (HTTP " + responseCode + ")");
+        }
+        return connection;
+    }
+
+    private RangeResponse get(String range) throws IOException {
+        HttpURLConnection connection = open(range);
+        try {
+            // Content-Range: bytes start-end/total
+            String contentRange = connection.getHeaderField("Content-Range");
+            long start = 0;
+            if (contentRange != null && contentRange.startsWith("bytes ")) {
+                start = Long.parseLong(contentRange.substring(6, contentRange.indexOf('-')));
+            }
+
+            try (InputStream in = connection.getInputStream()) {
+                return new RangeResponse(start, in.readAllBytes());
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Reads at most {@code remaining} bytes from the underlying stream
+     */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) return -1;
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) remaining -= read;
+            return read;
+        }
+    }
+
+    /**
+     * The zip can't be fetched or verified entry by entry; download it whole instead
+     */
+    public static class WholeZipRequiredException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public WholeZipRequiredException(String message) {
+            super(message);
+        }
+    }
+
+    private static class RangeResponse {
+        private final long start;
+        private final byte[] body;
+
+        RangeResponse(long start, byte[] body) {
+            this.start = start;
+            this.body = body;
+        }
+    }
+
+    private static class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final long centralDirectoryOffset;
+
+        Entry(String name, int method, long crc, long compressedSize, long size,
+              long localHeaderOffset, long centralDirectoryOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.centralDirectoryOffset = centralDirectoryOffset;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompatibilityCacheTest {
+
+    private static CompatibilityCache.ProbeResult result(String address, long timestamp) {
+        return new CompatibilityCache.ProbeResult(address, true, true, "payload", 10, timestamp);
+    }
+
+    @Test
+    void returnsFreshEntries() {
+        CompatibilityCache cache = new CompatibilityCache(4, 60_000);
+        cache.put(result("a", System.currentTimeMillis()));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() {
+        CompatibilityCache cache = new CompatibilityCache(4, 1_000);
+        cache.put(result("old", System.currentTimeMillis() - 5_000));
+
+        assertNull(cache.get("old"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        CompatibilityCache cache = new CompatibilityCache(2, 60_000);
+        long now = System.currentTimeMillis();
+        cache.put(result("a", now));
+        cache.put(result("b", now));
+        // Touch "a" so "b" becomes the eldest
+        cache.get("a");
+        cache.put(result("c", now));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadManagerTest {
+
+    private static byte[] chunk(String modId, long offset, int declaredLength, int actualLength) {
+        byte[] id = modId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(2 + id.length + 4 + 8 + 1 + 4 + actualLength);
+        out.putShort((short) id.length).put(id).putInt(0).putLong(offset).put((byte) 0).putInt(declaredLength);
+        return out.array();
+    }
+
+    @Test
+    void chunkRoundTrips() throws IOException {
+        byte[] buffer = {9, 1, 2, 3, 9};
+        DownloadManager.DownloadChunk chunk = DownloadManager.DownloadChunk.decode(
+                DownloadManager.DownloadChunk.encode("example", 7, 1L << 33, buffer, 1, 3, true));
+
+        assertEquals("example", chunk.getModId());
+        assertEquals(7, chunk.getChunkIndex());
+        assertEquals(1L << 33, chunk.getOffset());
+        assertArrayEquals(new byte[]{1, 2, 3}, chunk.getData());
+        assertTrue(chunk.isLast());
+    }
+
+    @Test
+    void rejectsLengthsBeyondThePacket() {
+        // A lying length must fail before a buffer of that size is allocated
+        assertThrows(IOException.class, () -> DownloadManager.DownloadChunk.decode(chunk("example", 0, Integer.MAX_VALUE, 4)));
+        assertThrows(IOException.class, () -> DownloadManager.DownloadChunk.decode(chunk("example", 0, 5, 4)));
+        assertThrows(IOException.class, () -> DownloadManager.DownloadChunk.decode(chunk("example", 0, -1, 4)));
+        assertThrows(IOException.class, () -> DownloadManager.DownloadChunk.decode(new byte[]{(byte) 0xFF, (byte) 0xFF}));
+    }
+
+    @Test
+    void rejectsNegativeOffsets() {
+        assertThrows(IOException.class, () -> DownloadManager.DownloadChunk.decode(chunk("example", -1, 4, 4)));
+    }
+}
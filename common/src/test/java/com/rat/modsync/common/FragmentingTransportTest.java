@@ -0,0 +1,189 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FragmentingTransportTest {
+    private static final String CHANNEL = "modsync:test";
+    private static final int HEADER_SIZE = 24;
+    private static final int SLICE_SIZE = 16;
+    private static final Object PLAYER = new Object();
+
+    private final PacketHandlerRegistry registry = new PacketHandlerRegistry();
+    private final List<byte[]> received = new ArrayList<>();
+    private Platform platform;
+    private FragmentingTransport transport;
+
+    @BeforeEach
+    void setUp() {
+        platform = mock(Platform.class);
+        when(platform.getPacketHandlerRegistry()).thenReturn(registry);
+        when(platform.getMaxClientboundPayloadSize()).thenReturn(HEADER_SIZE + SLICE_SIZE);
+        when(platform.getMaxServerboundPayloadSize()).thenReturn(HEADER_SIZE + SLICE_SIZE);
+        doAnswer(invocation -> registry.register(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(platform).registerPacketHandler(anyString(), any());
+
+        transport = new FragmentingTransport(platform);
+        transport.registerPacketHandler(CHANNEL, (sender, data) -> received.add(data));
+    }
+
+    private static byte[] message(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        return data;
+    }
+
+    /**
+     * Fragments the transport sends to a client for {@code data}, in send order
+     */
+    private List<byte[]> fragmentsOf(byte[] data) {
+        clearInvocations(platform);
+        transport.sendToClient(PLAYER, CHANNEL, data);
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(platform, atLeastOnce()).sendToClient(eq(PLAYER), eq(ModSync.FRAGMENT_CHANNEL), captor.capture());
+        return new ArrayList<>(captor.getAllValues());
+    }
+
+    private static byte[] fragment(int messageId, int index, int count, int totalLength, int sliceSize, int channelId,
+                                   int payloadLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+        buffer.putInt(messageId).putInt(index).putInt(count).putInt(totalLength).putInt(sliceSize).putInt(channelId);
+        return buffer.array();
+    }
+
+    private void deliver(Object sender, byte[] fragment) {
+        registry.dispatchLocal(registry.idOf(ModSync.FRAGMENT_CHANNEL), sender, fragment);
+    }
+
+    @Test
+    void smallMessagesAreNotFragmented() {
+        transport.sendToClient(PLAYER, CHANNEL, message(SLICE_SIZE));
+
+        verify(platform).sendToClient(eq(PLAYER), eq(CHANNEL), any());
+        verify(platform, never()).sendToClient(any(), eq(ModSync.FRAGMENT_CHANNEL), any());
+    }
+
+    @Test
+    void reassemblesInOrder() {
+        byte[] data = message(100);
+        List<byte[]> fragments = fragmentsOf(data);
+        assertEquals(7, fragments.size());
+
+        fragments.forEach(fragment -> deliver(null, fragment));
+
+        assertEquals(1, received.size());
+        assertArrayEquals(data, received.get(0));
+        assertEquals(0, transport.getPendingReassemblies());
+    }
+
+    @Test
+    void reassemblesOutOfOrder() {
+        byte[] data = message(100);
+        List<byte[]> fragments = fragmentsOf(data);
+        Collections.reverse(fragments);
+
+        for (int i = 0; i < fragments.size() - 1; i++) {
+            deliver(null, fragments.get(i));
+            assertTrue(received.isEmpty());
+        }
+        deliver(null, fragments.get(fragments.size() - 1));
+
+        assertEquals(1, received.size());
+        assertArrayEquals(data, received.get(0));
+    }
+
+    @Test
+    void ignoresDuplicateFragments() {
+        byte[] data = message(41);
+        List<byte[]> fragments = fragmentsOf(data);
+        assertEquals(3, fragments.size());
+
+        deliver(null, fragments.get(0));
+        deliver(null, fragments.get(0));
+        deliver(null, fragments.get(1));
+        deliver(null, fragments.get(1));
+        assertTrue(received.isEmpty());
+
+        deliver(null, fragments.get(2));
+        assertEquals(1, received.size());
+        assertArrayEquals(data, received.get(0));
+        assertEquals(0, transport.getPendingReassemblies());
+    }
+
+    @Test
+    void dropsOversizedMessagesBeforeAllocating() {
+        int channelId = registry.idOf(CHANNEL);
+        int total = 64 * 1024 * 1024 + 1;
+        deliver(null, fragment(1, 0, (total + SLICE_SIZE - 1) / SLICE_SIZE, total, SLICE_SIZE, channelId, SLICE_SIZE));
+
+        // Clients may send far less than the server
+        int serverbound = 256 * 1024 + 1;
+        deliver(PLAYER, fragment(2, 0, (serverbound + SLICE_SIZE - 1) / SLICE_SIZE, serverbound, SLICE_SIZE, channelId,
+                SLICE_SIZE));
+
+        assertEquals(0, transport.getPendingReassemblies());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void dropsFragmentsWithInconsistentHeaders() {
+        int channelId = registry.idOf(CHANNEL);
+        // Slice larger than the packet limit allows
+        deliver(null, fragment(1, 0, 1, 32, 32, channelId, 32));
+        // Count that does not match the length
+        deliver(null, fragment(2, 0, 5, 32, SLICE_SIZE, channelId, SLICE_SIZE));
+        // Index past the end
+        deliver(null, fragment(3, 2, 2, 32, SLICE_SIZE, channelId, SLICE_SIZE));
+
+        assertEquals(0, transport.getPendingReassemblies());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void rejectsShortAndLongFragments() {
+        int channelId = registry.idOf(CHANNEL);
+        deliver(null, fragment(1, 0, 3, 40, SLICE_SIZE, channelId, SLICE_SIZE - 1));
+        deliver(null, fragment(1, 1, 3, 40, SLICE_SIZE, channelId, SLICE_SIZE));
+        deliver(null, fragment(1, 2, 3, 40, SLICE_SIZE, channelId, 8));
+        assertTrue(received.isEmpty());
+
+        // The final fragment must carry exactly the rest of the message
+        deliver(null, fragment(2, 0, 3, 40, SLICE_SIZE, channelId, SLICE_SIZE));
+        deliver(null, fragment(2, 1, 3, 40, SLICE_SIZE, channelId, SLICE_SIZE));
+        deliver(null, fragment(2, 2, 3, 40, SLICE_SIZE, channelId, 7));
+        assertTrue(received.isEmpty());
+
+        deliver(null, fragment(2, 2, 3, 40, SLICE_SIZE, channelId, 8));
+        assertEquals(1, received.size());
+        assertEquals(40, received.get(0).length);
+    }
+
+    @Test
+    void dropsSendersOverTheirBudget() {
+        int channelId = registry.idOf(CHANNEL);
+        for (int messageId = 1; messageId <= 4; messageId++) {
+            deliver(PLAYER, fragment(messageId, 0, 2, 32, SLICE_SIZE, channelId, SLICE_SIZE));
+        }
+        deliver(null, fragment(1, 0, 2, 32, SLICE_SIZE, channelId, SLICE_SIZE));
+        assertEquals(5, transport.getPendingReassemblies());
+
+        // A fifth message from the same player drops everything that player had in flight
+        deliver(PLAYER, fragment(5, 0, 2, 32, SLICE_SIZE, channelId, SLICE_SIZE));
+        assertEquals(1, transport.getPendingReassemblies());
+    }
+}
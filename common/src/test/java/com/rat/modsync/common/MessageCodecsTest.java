@@ -0,0 +1,151 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecsTest {
+    private static final String HASH = "ab".repeat(32);
+
+    private static ModInfo mod(String modId) {
+        return new ModInfo(modId, "1.0.0", "Mod " + modId, modId + ".jar", HASH, 12345, "https://example.com/" + modId,
+                "cd".repeat(32));
+    }
+
+    @Test
+    void pingRoundTrips() throws IOException {
+        ModSync.PingResponse response = MessageCodecs.decode(MessageCodecs.PING_RESPONSE,
+                MessageCodecs.encode(MessageCodecs.PING_RESPONSE, new ModSync.PingResponse(true, "modsync", "1.0", true)));
+
+        assertTrue(response.isCompatible());
+        assertEquals("modsync", response.getModId());
+        assertEquals("1.0", response.getVersion());
+        assertTrue(response.isZipModeEnabled());
+    }
+
+    @Test
+    void handshakeRoundTrips() throws IOException {
+        Map<String, String> ranges = new LinkedHashMap<>();
+        ranges.put("a", "^1.0.0");
+        ModInfo nested = mod("nested").withContainerId("a");
+        ModSync.ServerHandshake handshake = new ModSync.ServerHandshake(List.of(mod("a"), nested), true,
+                "https://example.com/pack.zip", HASH, "1.0.0", List.of("modsync:one", "modsync:two"),
+                ConfigManager.ServerConfig.MatchStrictness.HASH_AND_VERSION, ranges);
+
+        ModSync.ServerHandshake decoded = MessageCodecs.decode(MessageCodecs.SERVER_HANDSHAKE,
+                MessageCodecs.encode(MessageCodecs.SERVER_HANDSHAKE, handshake));
+
+        assertTrue(decoded.isZipMode());
+        assertEquals("https://example.com/pack.zip", decoded.getZipUrl());
+        assertEquals(HASH, decoded.getZipHash());
+        assertEquals("1.0.0", decoded.getModSyncVersion());
+        assertEquals(List.of("modsync:one", "modsync:two"), decoded.getChannels());
+        assertEquals(ConfigManager.ServerConfig.MatchStrictness.HASH_AND_VERSION, decoded.getMatchStrictness());
+        assertEquals(ranges, decoded.getVersionRanges());
+
+        assertEquals(2, decoded.getRequiredMods().size());
+        ModInfo first = decoded.getRequiredMods().get(0);
+        assertEquals("a", first.getModId());
+        assertEquals("1.0.0", first.getVersion());
+        assertEquals("a.jar", first.getFileName());
+        assertEquals(HASH, first.getSha256Hash());
+        assertEquals(12345, first.getFileSize());
+        assertEquals("https://example.com/a", first.getDownloadUrl());
+        assertEquals("cd".repeat(32), first.getHashTreeRoot());
+        assertNull(first.getContainerId());
+        assertEquals("a", decoded.getRequiredMods().get(1).getContainerId());
+    }
+
+    @Test
+    void readsHandshakeWithoutAppendedFields() throws IOException {
+        // The original layout: version, zip settings, mods and channels, nothing after
+        MessageWriter out = MessageWriter.acquire();
+        out.writeString("1.0.0");
+        out.writeBoolean(false);
+        out.writeNullableString(null);
+        out.writeNullableString(null);
+        out.writeVarInt(1);
+        MessageCodecs.MOD_INFO.write(new ModInfo("a", "2.0", null, "a.jar", null, 0, null), out);
+        out.writeVarInt(0);
+
+        ModSync.ServerHandshake decoded = MessageCodecs.decode(MessageCodecs.SERVER_HANDSHAKE, out.toByteArray());
+
+        assertEquals(1, decoded.getRequiredMods().size());
+        assertNull(decoded.getRequiredMods().get(0).getHashTreeRoot());
+        assertNull(decoded.getRequiredMods().get(0).getContainerId());
+        assertTrue(decoded.getChannels().isEmpty());
+        assertEquals(ConfigManager.ServerConfig.MatchStrictness.VERSION, decoded.getMatchStrictness());
+        assertTrue(decoded.getVersionRanges().isEmpty());
+    }
+
+    @Test
+    void downloadRequestRoundTrips() throws IOException {
+        ModSync.DownloadRequest request = new ModSync.DownloadRequest("a", "a.jar", 65536,
+                List.of(new ModSync.ByteRange(0, 16384), new ModSync.ByteRange(32768, -1)));
+
+        ModSync.DownloadRequest decoded = MessageCodecs.decode(MessageCodecs.DOWNLOAD_REQUEST,
+                MessageCodecs.encode(MessageCodecs.DOWNLOAD_REQUEST, request));
+
+        assertEquals("a", decoded.getModId());
+        assertEquals(65536, decoded.getPreferredChunkSize());
+        assertEquals(2, decoded.getRanges().size());
+        assertEquals(32768, decoded.getRanges().get(1).getOffset());
+        assertEquals(-1, decoded.getRanges().get(1).getLength());
+    }
+
+    @Test
+    void readsDownloadRequestWithoutRanges() throws IOException {
+        byte[] old = MessageWriter.acquire().writeString("a").writeString("a.jar").writeVarInt(0).toByteArray();
+
+        ModSync.DownloadRequest decoded = MessageCodecs.decode(MessageCodecs.DOWNLOAD_REQUEST, old);
+
+        assertEquals("a", decoded.getModId());
+        assertTrue(decoded.getRanges().isEmpty());
+    }
+
+    @Test
+    void downloadInfoRoundTrips() throws IOException {
+        byte[] leaves = new byte[64];
+        Arrays.fill(leaves, (byte) 7);
+
+        ModSync.DownloadInfo decoded = MessageCodecs.decode(MessageCodecs.DOWNLOAD_INFO,
+                MessageCodecs.encode(MessageCodecs.DOWNLOAD_INFO, new ModSync.DownloadInfo("a", 300_000, leaves)));
+
+        assertEquals("a", decoded.getModId());
+        assertEquals(300_000, decoded.getFileSize());
+        assertArrayEquals(leaves, decoded.getLeafHashes());
+    }
+
+    @Test
+    void rejectsTruncatedAndOversizedInput() {
+        byte[] encoded = MessageCodecs.encode(MessageCodecs.PING, new ModSync.PingMessage("modsync", "1.0.0"));
+        assertThrows(IOException.class,
+                () -> MessageCodecs.decode(MessageCodecs.PING, Arrays.copyOf(encoded, encoded.length - 2)));
+
+        // A string claiming far more bytes than the message holds
+        byte[] lying = MessageWriter.acquire().writeVarInt(Integer.MAX_VALUE).toByteArray();
+        assertThrows(IOException.class, () -> MessageCodecs.decode(MessageCodecs.PING, lying));
+    }
+
+    @Test
+    void tellsLegacyJsonFromBinaryMessages() {
+        assertTrue(MessageCodecs.isLegacyJson("{\"modId\":\"modsync\",\"version\":\"1.0.0\"}"
+                .getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(MessageCodecs.isLegacyJson(MessageCodecs.encode(MessageCodecs.PING,
+                new ModSync.PingMessage("modsync", ModSync.VERSION))));
+        assertFalse(MessageCodecs.isLegacyJson(MessageCodecs.encode(MessageCodecs.PING_RESPONSE,
+                new ModSync.PingResponse(true, "modsync", ModSync.VERSION, false))));
+        assertFalse(MessageCodecs.isLegacyJson(MessageCodecs.encode(MessageCodecs.SERVER_HANDSHAKE,
+                new ModSync.ServerHandshake(List.of(mod("a")), false, null, null, ModSync.VERSION, List.of(),
+                        ConfigManager.ServerConfig.MatchStrictness.VERSION, Map.of()))));
+        assertFalse(MessageCodecs.isLegacyJson(new byte[0]));
+    }
+}
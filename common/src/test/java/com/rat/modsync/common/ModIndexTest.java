@@ -0,0 +1,164 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModIndexTest {
+
+    private static ModInfo mod(String modId, String version) {
+        return new ModInfo(modId, version, modId, modId + "-" + version + ".jar", null, 0, null);
+    }
+
+    /**
+     * The comparison ModIndex replaced: every server mod scans the whole client list
+     */
+    private static ModListManager.ModListComparison naiveDiff(List<ModInfo> clientMods, List<ModInfo> serverMods) {
+        List<ModInfo> missing = new ArrayList<>();
+        List<ModListManager.ModMismatch> mismatched = new ArrayList<>();
+        List<ModInfo> identical = new ArrayList<>();
+
+        for (ModInfo serverMod : serverMods) {
+            ModInfo first = null;
+            ModInfo match = null;
+            for (ModInfo clientMod : clientMods) {
+                if (!clientMod.getModId().equals(serverMod.getModId())) continue;
+                if (first == null) first = clientMod;
+                if (match == null && ModMatcher.VERSION.matches(clientMod, serverMod)) match = clientMod;
+            }
+
+            if (match != null) {
+                identical.add(match);
+                continue;
+            }
+            if (serverMod.isNested()) {
+                boolean containerListed = false;
+                for (ModInfo other : serverMods) {
+                    containerListed |= other.getModId().equals(serverMod.getContainerId());
+                }
+                if (containerListed) continue;
+            }
+            if (first == null) {
+                missing.add(serverMod);
+            } else {
+                mismatched.add(new ModListManager.ModMismatch(first, serverMod));
+            }
+        }
+
+        List<ModInfo> extra = new ArrayList<>();
+        for (ModInfo clientMod : clientMods) {
+            boolean listed = false;
+            for (ModInfo serverMod : serverMods) {
+                listed |= serverMod.getModId().equals(clientMod.getModId());
+            }
+            if (!listed) extra.add(clientMod);
+        }
+        // The index reports extras in ID order
+        extra.sort(Comparator.comparing(ModInfo::getModId));
+
+        return new ModListManager.ModListComparison(missing, mismatched, extra, identical);
+    }
+
+    private static void assertSameMods(List<ModInfo> expected, List<ModInfo> actual, String what) {
+        assertEquals(expected.size(), actual.size(), what);
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i), what + " #" + i);
+        }
+    }
+
+    private static void assertSameDiff(ModListManager.ModListComparison expected, ModListManager.ModListComparison actual) {
+        assertSameMods(expected.getMissingMods(), actual.getMissingMods(), "missing");
+        assertSameMods(expected.getIdenticalMods(), actual.getIdenticalMods(), "identical");
+        assertSameMods(expected.getExtraMods(), actual.getExtraMods(), "extra");
+        assertEquals(expected.getMismatchedMods().size(), actual.getMismatchedMods().size(), "mismatched");
+        for (int i = 0; i < expected.getMismatchedMods().size(); i++) {
+            assertSame(expected.getMismatchedMods().get(i).getClientMod(), actual.getMismatchedMods().get(i).getClientMod());
+            assertSame(expected.getMismatchedMods().get(i).getServerMod(), actual.getMismatchedMods().get(i).getServerMod());
+        }
+    }
+
+    @Test
+    void findsEveryId() {
+        List<ModInfo> mods = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            mods.add(mod("mod" + i, "1"));
+        }
+        ModIndex index = ModIndex.of(mods);
+
+        assertEquals(100, index.size());
+        for (ModInfo mod : mods) {
+            assertSame(mod, index.get(mod.getModId()));
+        }
+        assertNull(index.get("absent"));
+    }
+
+    @Test
+    void classifiesEachMod() {
+        ModInfo same = mod("same", "1");
+        ModInfo oldVersion = mod("changed", "1");
+        ModInfo extra = mod("extra", "1");
+        List<ModInfo> server = List.of(mod("same", "1"), mod("changed", "2"), mod("new", "1"));
+
+        ModListManager.ModListComparison diff = ModIndex.of(List.of(same, oldVersion, extra)).diff(server);
+
+        assertSameMods(List.of(server.get(2)), diff.getMissingMods(), "missing");
+        assertSameMods(List.of(same), diff.getIdenticalMods(), "identical");
+        assertSameMods(List.of(extra), diff.getExtraMods(), "extra");
+        assertEquals(1, diff.getMismatchedMods().size());
+        assertSame(oldVersion, diff.getMismatchedMods().get(0).getClientMod());
+        assertFalse(diff.isCompatible());
+    }
+
+    @Test
+    void anyDuplicateCopyCanMatch() {
+        ModInfo older = mod("dup", "1");
+        ModInfo newer = mod("dup", "2");
+
+        ModListManager.ModListComparison diff = ModIndex.of(List.of(older, newer)).diff(List.of(mod("dup", "2")));
+
+        assertTrue(diff.isCompatible());
+        assertSameMods(List.of(newer), diff.getIdenticalMods(), "identical");
+        assertTrue(diff.getExtraMods().isEmpty());
+    }
+
+    @Test
+    void nestedModsAreLeftToTheirContainer() {
+        List<ModInfo> server = List.of(mod("container", "2"), mod("nested", "2").withContainerId("container"),
+                mod("orphan", "1").withContainerId("unlisted"));
+
+        ModListManager.ModListComparison diff = ModIndex.of(List.of(mod("container", "1"), mod("nested", "1"))).diff(server);
+
+        assertEquals(1, diff.getMismatchedMods().size());
+        assertEquals("container", diff.getMismatchedMods().get(0).getModId());
+        assertSameMods(List.of(server.get(2)), diff.getMissingMods(), "missing");
+    }
+
+    @Test
+    void matchesTheNaiveComparison() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<ModInfo> client = randomMods(random, random.nextInt(40));
+            List<ModInfo> server = randomMods(random, random.nextInt(40));
+
+            assertSameDiff(naiveDiff(client, server), ModIndex.of(client).diff(server));
+        }
+    }
+
+    private static List<ModInfo> randomMods(Random random, int count) {
+        List<ModInfo> mods = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // A small ID pool makes duplicates and overlaps common
+            ModInfo mod = mod("mod" + random.nextInt(30), String.valueOf(random.nextInt(3)));
+            if (random.nextInt(5) == 0) {
+                mod = mod.withContainerId("mod" + random.nextInt(30));
+            }
+            mods.add(mod);
+        }
+        return mods;
+    }
+}
@@ -0,0 +1,66 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ModListManagerTest {
+
+    @TempDir
+    Path dir;
+
+    private static ModInfo mod(String modId) {
+        return new ModInfo(modId, "1.0", modId, modId + ".jar", null, 0, null);
+    }
+
+    private List<String> serverModIds(List<ModInfo> loaded, Map<String, ModInfo.Environment> overrides) {
+        Platform platform = mock(Platform.class);
+        when(platform.isServer()).thenReturn(true);
+        when(platform.getLoadedMods()).thenReturn(loaded);
+
+        ConfigManager.ServerConfig serverConfig = new ConfigManager.ServerConfig();
+        serverConfig.setModEnvironments(overrides);
+        ConfigManager configManager = mock(ConfigManager.class);
+        when(configManager.getConfigDir()).thenReturn(dir);
+        when(configManager.getServerConfig()).thenReturn(serverConfig);
+
+        return new ModListManager(platform, configManager).getServerMods().stream()
+                .map(ModInfo::getModId)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void leavesOutServerOnlyAndLibraryMods() {
+        List<ModInfo> loaded = List.of(mod("both"), mod("client").withEnvironment(ModInfo.Environment.CLIENT),
+                mod("server").withEnvironment(ModInfo.Environment.SERVER),
+                mod("library").withEnvironment(ModInfo.Environment.LIBRARY));
+
+        assertEquals(List.of("both", "client"), serverModIds(loaded, Map.of()));
+    }
+
+    @Test
+    void overridesTakePrecedence() {
+        List<ModInfo> loaded = List.of(mod("both"), mod("server").withEnvironment(ModInfo.Environment.SERVER));
+
+        assertEquals(List.of("server"), serverModIds(loaded,
+                Map.of("both", ModInfo.Environment.SERVER, "server", ModInfo.Environment.BOTH)));
+    }
+
+    @Test
+    void nestedModsFollowTheirContainersOverride() {
+        List<ModInfo> loaded = List.of(mod("container"), mod("nested").withContainerId("container"),
+                mod("own").withContainerId("container"));
+
+        assertEquals(List.of(), serverModIds(loaded, Map.of("container", ModInfo.Environment.SERVER)));
+        // A nested mod's own override still wins
+        assertEquals(List.of("own"), serverModIds(loaded,
+                Map.of("container", ModInfo.Environment.SERVER, "own", ModInfo.Environment.BOTH)));
+    }
+}
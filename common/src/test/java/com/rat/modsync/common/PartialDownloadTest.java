@@ -0,0 +1,137 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartialDownloadTest {
+    private static final int BLOCK = ChunkSizer.BLOCK_SIZE;
+
+    @TempDir
+    Path dir;
+
+    private static ModInfo mod(String version, String hash) {
+        return new ModInfo("example", version, "Example", "example-" + version + ".jar", hash, 10L * BLOCK, null);
+    }
+
+    private static void assertRange(long offset, long length, ModSync.ByteRange range) {
+        assertEquals(offset, range.getOffset(), "offset");
+        assertEquals(length, range.getLength(), "length");
+    }
+
+    @Test
+    void freshDownloadFetchesEverything() throws IOException {
+        PartialDownload partial = PartialDownload.open(dir, mod("1.0", "aa"));
+
+        assertFalse(partial.hasProgress());
+        assertTrue(partial.getMissingRanges().isEmpty());
+        assertTrue(Files.exists(partial.getDataFile()));
+        assertEquals(-1, partial.getTotalSize());
+    }
+
+    @Test
+    void missingRangesCoverTheGaps() throws IOException {
+        PartialDownload partial = PartialDownload.open(dir, mod("1.0", "aa"));
+        partial.markReceived(0, 2 * BLOCK);
+        partial.markReceived(4L * BLOCK, BLOCK);
+
+        // Without a known size the tail runs to end of file
+        List<ModSync.ByteRange> ranges = partial.getMissingRanges();
+        assertEquals(2, ranges.size());
+        assertRange(2L * BLOCK, 2L * BLOCK, ranges.get(0));
+        assertRange(5L * BLOCK, -1, ranges.get(1));
+
+        // A short final block counts as received
+        partial.setTotalSize(9L * BLOCK + 100);
+        partial.markReceived(9L * BLOCK, 100);
+        ranges = partial.getMissingRanges();
+        assertEquals(2, ranges.size());
+        assertRange(2L * BLOCK, 2L * BLOCK, ranges.get(0));
+        assertRange(5L * BLOCK, 4L * BLOCK, ranges.get(1));
+        assertFalse(partial.isComplete());
+
+        partial.markReceived(2L * BLOCK, 2 * BLOCK);
+        partial.markReceived(5L * BLOCK, 4 * BLOCK);
+        assertTrue(partial.getMissingRanges().isEmpty());
+        assertTrue(partial.isComplete());
+        assertEquals(9L * BLOCK + 100, partial.getBytesPresent());
+    }
+
+    @Test
+    void clearedBlocksAreFetchedAgain() throws IOException {
+        PartialDownload partial = PartialDownload.open(dir, mod("1.0", "aa"));
+        partial.setTotalSize(4L * BLOCK);
+        partial.markReceived(0, 4 * BLOCK);
+        assertTrue(partial.isComplete());
+
+        partial.clearRange(BLOCK, BLOCK);
+
+        assertFalse(partial.hasRange(0, 2L * BLOCK));
+        assertTrue(partial.hasRange(2L * BLOCK, 2L * BLOCK));
+        List<ModSync.ByteRange> ranges = partial.getMissingRanges();
+        assertEquals(1, ranges.size());
+        assertRange(BLOCK, BLOCK, ranges.get(0));
+    }
+
+    @Test
+    void blockMapSurvivesReopening() throws IOException {
+        PartialDownload partial = PartialDownload.open(dir, mod("1.0", "aa"));
+        partial.markReceived(0, BLOCK);
+        partial.markReceived(3L * BLOCK, 2 * BLOCK);
+        partial.setTotalSize(6L * BLOCK);
+        partial.save();
+
+        PartialDownload reopened = PartialDownload.open(dir, mod("1.0", "aa"));
+
+        assertTrue(reopened.hasProgress());
+        assertEquals(6L * BLOCK, reopened.getTotalSize());
+        List<ModSync.ByteRange> ranges = reopened.getMissingRanges();
+        assertEquals(2, ranges.size());
+        assertRange(BLOCK, 2L * BLOCK, ranges.get(0));
+        // A gap running to the end is still asked for open-ended
+        assertRange(5L * BLOCK, -1, ranges.get(1));
+    }
+
+    @Test
+    void otherContentStartsAfresh() throws IOException {
+        PartialDownload partial = PartialDownload.open(dir, mod("1.0", "aa"));
+        Files.write(partial.getDataFile(), new byte[BLOCK]);
+        partial.markReceived(0, BLOCK);
+        partial.save();
+
+        // Same file name, different bytes
+        PartialDownload reopened = PartialDownload.open(dir, mod("1.0", "bb"));
+
+        assertFalse(reopened.hasProgress());
+        assertEquals(0, Files.size(reopened.getDataFile()));
+    }
+
+    @Test
+    void unreadableSidecarStartsAfresh() throws IOException {
+        PartialDownload partial = PartialDownload.open(dir, mod("1.0", "aa"));
+        partial.markReceived(0, BLOCK);
+        partial.save();
+        try (var files = Files.list(dir)) {
+            Path sidecar = files.filter(p -> p.toString().endsWith(".blocks")).findFirst().orElseThrow();
+            Files.write(sidecar, new byte[]{1, (byte) 0xFF});
+        }
+
+        assertFalse(PartialDownload.open(dir, mod("1.0", "aa")).hasProgress());
+    }
+
+    @Test
+    void discardForgetsProgress() throws IOException {
+        PartialDownload partial = PartialDownload.open(dir, mod("1.0", "aa"));
+        partial.markReceived(0, BLOCK);
+        partial.save();
+        partial.discard();
+
+        assertFalse(PartialDownload.open(dir, mod("1.0", "aa")).hasProgress());
+    }
+}
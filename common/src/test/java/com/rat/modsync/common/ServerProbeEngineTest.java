@@ -0,0 +1,196 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerProbeEngineTest {
+    private static final String MODSYNC_STATUS = "{\"description\":{\"text\":\"\",\"extra\":[{\"text\":\"\",\"insertion\":\""
+            + ServerStatusProbe.MOTD_MARKER + "payload\"}]}}";
+    private static final String PLAIN_STATUS = "{\"description\":\"A Minecraft Server\"}";
+
+    private final List<ServerProbeEngine> engines = new ArrayList<>();
+    private final List<ServerSocket> sockets = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        engines.forEach(ServerProbeEngine::shutdown);
+        for (ServerSocket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private ServerProbeEngine engine(ServerStatusProbe.StatusFetcher fetcher, CompatibilityCache cache, int timeoutMillis) {
+        ServerProbeEngine engine = new ServerProbeEngine(fetcher, cache, 8, timeoutMillis);
+        engines.add(engine);
+        return engine;
+    }
+
+    @Test
+    void probesAListWithAFakeFetcher() throws Exception {
+        ServerStatusProbe.StatusFetcher fetcher = (address, timeout) -> {
+            switch (address) {
+                case "modsync": return MODSYNC_STATUS;
+                case "vanilla": return PLAIN_STATUS;
+                default: throw new IOException("Connection refused");
+            }
+        };
+        ServerProbeEngine engine = engine(fetcher, new CompatibilityCache(16, 60_000), 1000);
+
+        Map<String, CompatibilityCache.ProbeResult> results =
+                engine.probeAll(List.of("modsync", "vanilla", "down"), false).get(5, TimeUnit.SECONDS);
+
+        assertTrue(results.get("modsync").isCompatible());
+        assertEquals("payload", results.get("modsync").getModSyncPayload());
+        assertTrue(results.get("vanilla").isReachable());
+        assertFalse(results.get("vanilla").isCompatible());
+        assertFalse(results.get("down").isReachable());
+    }
+
+    @Test
+    void reusesCachedResultsUntilForcedOrExpired() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        ServerStatusProbe.StatusFetcher fetcher = (address, timeout) -> {
+            fetches.incrementAndGet();
+            return MODSYNC_STATUS;
+        };
+        ServerProbeEngine engine = engine(fetcher, new CompatibilityCache(16, 200), 1000);
+
+        engine.probeAll(List.of("a"), false).get(5, TimeUnit.SECONDS);
+        engine.probeAll(List.of("a"), false).get(5, TimeUnit.SECONDS);
+        assertEquals(1, fetches.get());
+
+        engine.probeAll(List.of("a"), true).get(5, TimeUnit.SECONDS);
+        assertEquals(2, fetches.get());
+
+        Thread.sleep(300);
+        engine.probeAll(List.of("a"), false).get(5, TimeUnit.SECONDS);
+        assertEquals(3, fetches.get());
+    }
+
+    @Test
+    void evictedServersAreProbedAgain() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        ServerStatusProbe.StatusFetcher fetcher = (address, timeout) -> {
+            fetches.incrementAndGet();
+            return PLAIN_STATUS;
+        };
+        CompatibilityCache cache = new CompatibilityCache(2, 60_000);
+        ServerProbeEngine engine = engine(fetcher, cache, 1000);
+
+        engine.probeAll(List.of("a", "b", "c"), false).get(5, TimeUnit.SECONDS);
+        assertEquals(3, fetches.get());
+        assertEquals(2, cache.size());
+
+        engine.probeAll(List.of("a", "b", "c"), false).get(5, TimeUnit.SECONDS);
+        assertTrue(fetches.get() > 3, "the evicted server should be fetched again");
+    }
+
+    @Test
+    void slowFetchesTimeOutAsUnreachable() throws Exception {
+        ServerStatusProbe.StatusFetcher fetcher = (address, timeout) -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return MODSYNC_STATUS;
+        };
+        ServerProbeEngine engine = engine(fetcher, new CompatibilityCache(16, 60_000), 100);
+
+        long start = System.nanoTime();
+        Map<String, CompatibilityCache.ProbeResult> results =
+                engine.probeAll(List.of("slow"), false).get(5, TimeUnit.SECONDS);
+
+        assertFalse(results.get("slow").isReachable());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    void probesALoopbackServer() throws Exception {
+        ServerSocket server = listen();
+        Thread responder = new Thread(() -> {
+            try (Socket client = server.accept()) {
+                DataInputStream in = new DataInputStream(client.getInputStream());
+                // Handshake, then the empty status request
+                in.readFully(new byte[readVarInt(in)]);
+                in.readFully(new byte[readVarInt(in)]);
+
+                // writeBytes adds the packet's length prefix
+                byte[] body = MessageWriter.acquire().writeVarInt(0x00).writeString(MODSYNC_STATUS).toByteArray();
+                byte[] framed = MessageWriter.acquire().writeBytes(body).toByteArray();
+                OutputStream out = client.getOutputStream();
+                out.write(framed);
+                out.flush();
+            } catch (IOException ignored) {
+            }
+        });
+        responder.setDaemon(true);
+        responder.start();
+
+        String address = "127.0.0.1:" + server.getLocalPort();
+        ServerProbeEngine engine = engine(ServerStatusProbe.DEFAULT, new CompatibilityCache(16, 60_000), 2000);
+        CompatibilityCache.ProbeResult result = engine.probe(address, false).get(10, TimeUnit.SECONDS);
+
+        assertTrue(result.isReachable());
+        assertTrue(result.isCompatible());
+        assertEquals("payload", result.getModSyncPayload());
+    }
+
+    @Test
+    void silentLoopbackServerTimesOut() throws Exception {
+        // Accepts (via the backlog) but never answers
+        ServerSocket server = listen();
+
+        String address = "127.0.0.1:" + server.getLocalPort();
+        ServerProbeEngine engine = engine(ServerStatusProbe.DEFAULT, new CompatibilityCache(16, 60_000), 200);
+        CompatibilityCache.ProbeResult result = engine.probe(address, false).get(10, TimeUnit.SECONDS);
+
+        assertFalse(result.isReachable());
+    }
+
+    @Test
+    void closedPortIsUnreachable() throws Exception {
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+
+        ServerProbeEngine engine = engine(ServerStatusProbe.DEFAULT, new CompatibilityCache(16, 60_000), 500);
+        CompatibilityCache.ProbeResult result = engine.probe("127.0.0.1:" + port, false).get(10, TimeUnit.SECONDS);
+
+        assertFalse(result.isReachable());
+        assertFalse(result.isCompatible());
+    }
+
+    private ServerSocket listen() throws IOException {
+        ServerSocket socket = new ServerSocket(0, 4, InetAddress.getLoopbackAddress());
+        sockets.add(socket);
+        return socket;
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b == -1) throw new IOException("closed");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("VarInt too long");
+    }
+}
@@ -0,0 +1,57 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerStateStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void remembersWhatWasRecorded() {
+        ServerStateStore store = new ServerStateStore(dir);
+        store.recordCompatibility("a.example", true);
+        store.recordHandshake("b.example", "server", "client", List.of());
+
+        assertTrue(store.get("a.example").isCompatible());
+        assertEquals("server", store.get("b.example").getServerManifestDigest());
+        assertNull(store.get("c.example"));
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentServers() throws InterruptedException {
+        ServerStateStore store = new ServerStateStore(dir);
+        for (int i = 0; i < ServerStateStore.MAX_RECORDS + 5; i++) {
+            store.recordCompatibility("server" + i, true);
+            // Distinct timestamps, so the eviction order is deterministic
+            Thread.sleep(2);
+        }
+
+        assertEquals(ServerStateStore.MAX_RECORDS, store.getKnownServers().size());
+        assertNull(store.get("server0"));
+        assertNotNull(store.get("server" + (ServerStateStore.MAX_RECORDS + 4)));
+    }
+
+    @Test
+    void dropsStaleRecordsOnLoad() throws IOException {
+        long now = System.currentTimeMillis();
+        long stale = now - ServerStateStore.MAX_AGE_MILLIS - 1000;
+        Files.writeString(dir.resolve("servers.json"), "{"
+                + "\"fresh.example\":{\"compatible\":true,\"lastSeen\":" + now + "},"
+                + "\"stale.example\":{\"compatible\":true,\"lastSeen\":" + stale + "}}");
+
+        ServerStateStore store = new ServerStateStore(dir);
+
+        assertEquals(1, store.getKnownServers().size());
+        assertTrue(store.get("fresh.example").isCompatible());
+        assertNull(store.get("stale.example"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerStatusProbeTest {
+
+    @Test
+    void parsesHostAndPort() {
+        InetSocketAddress plain = ServerStatusProbe.parseAddress("play.example.com");
+        assertEquals("play.example.com", plain.getHostString());
+        assertEquals(25565, plain.getPort());
+
+        InetSocketAddress withPort = ServerStatusProbe.parseAddress("play.example.com:25570");
+        assertEquals(25570, withPort.getPort());
+
+        InetSocketAddress ipv6 = ServerStatusProbe.parseAddress("[::1]:25580");
+        assertEquals("::1", ipv6.getHostString());
+        assertEquals(25580, ipv6.getPort());
+    }
+
+    @Test
+    void skipsSrvLookupForExplicitPortsAndLiterals() {
+        InetSocketAddress explicit = InetSocketAddress.createUnresolved("play.example.com", 25570);
+        assertSame(explicit, ServerStatusProbe.resolveSrv(explicit, 100));
+
+        InetSocketAddress literal = InetSocketAddress.createUnresolved("127.0.0.1", 25565);
+        assertSame(literal, ServerStatusProbe.resolveSrv(literal, 100));
+    }
+
+    @Test
+    void readsSrvRecords() {
+        InetSocketAddress fallback = InetSocketAddress.createUnresolved("example.com", 25565);
+
+        InetSocketAddress target = ServerStatusProbe.parseSrvRecord("0 5 25599 mc.example.net.", fallback);
+        assertEquals("mc.example.net", target.getHostString());
+        assertEquals(25599, target.getPort());
+
+        assertSame(fallback, ServerStatusProbe.parseSrvRecord("0 5 mc.example.net.", fallback));
+        assertSame(fallback, ServerStatusProbe.parseSrvRecord("0 5 99999 mc.example.net.", fallback));
+    }
+
+    @Test
+    void extractsPayloadFromInsertion() {
+        String status = "{\"description\":{\"text\":\"Welcome\",\"extra\":[{\"text\":\"\",\"insertion\":\""
+                + ServerStatusProbe.MOTD_MARKER + "abc\"}]}}";
+        assertEquals("abc", ServerStatusProbe.extractModSyncPayload(status));
+    }
+
+    @Test
+    void extractsPayloadFromLegacyMotd() {
+        String status = "{\"description\":{\"text\":\"Welcome " + ServerStatusProbe.MOTD_MARKER + "abc\"}}";
+        assertEquals("abc", ServerStatusProbe.extractModSyncPayload(status));
+    }
+
+    @Test
+    void plainMotdHasNoPayload() {
+        assertNull(ServerStatusProbe.extractModSyncPayload("{\"description\":\"A Minecraft Server\"}"));
+        assertNull(ServerStatusProbe.extractModSyncPayload("not json"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.rat.modsync.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionRangeTest {
+
+    private static void assertContains(String range, String... versions) {
+        VersionRange parsed = VersionRange.parse(range);
+        for (String version : versions) {
+            assertTrue(parsed.contains(version), range + " should contain " + version);
+        }
+    }
+
+    private static void assertExcludes(String range, String... versions) {
+        VersionRange parsed = VersionRange.parse(range);
+        for (String version : versions) {
+            assertFalse(parsed.contains(version), range + " should not contain " + version);
+        }
+    }
+
+    @Test
+    void comparesVersions() {
+        assertTrue(VersionRange.compareVersions("1.10.0", "1.9.0") > 0);
+        assertEquals(0, VersionRange.compareVersions("1.2", "1.2.0"));
+        assertTrue(VersionRange.compareVersions("1.2.0-beta", "1.2.0") < 0);
+        assertTrue(VersionRange.compareVersions("1.2.0-alpha", "1.2.0-beta") < 0);
+        assertEquals(0, VersionRange.compareVersions("1.2.0+build.5", "1.2.0"));
+        assertTrue(VersionRange.compareVersions("1.0.00000000000000000000001", "1.0.0") > 0);
+    }
+
+    @Test
+    void exactVersions() {
+        assertContains("1.2.3", "1.2.3", "1.2.3+build");
+        assertContains("=1.2.3", "1.2.3");
+        assertExcludes("1.2.3", "1.2.4", "1.2.3-beta");
+    }
+
+    @Test
+    void comparators() {
+        assertContains(">=1.2 <2", "1.2", "1.9.9");
+        assertExcludes(">=1.2 <2", "1.1.9", "2.0.0");
+        assertContains(">1.0 <=1.5", "1.0.1", "1.5");
+        assertExcludes(">1.0 <=1.5", "1.0", "1.5.1");
+    }
+
+    @Test
+    void caretRanges() {
+        assertContains("^1.2.3", "1.2.3", "1.9.0");
+        assertExcludes("^1.2.3", "1.2.2", "2.0.0", "2.0.0-beta.1");
+        assertContains("^0.2.3", "0.2.9");
+        assertExcludes("^0.2.3", "0.3.0", "0.3.0-rc.1");
+        assertContains("^0.0.3", "0.0.3");
+        assertExcludes("^0.0.3", "0.0.4", "0.0.4-alpha");
+    }
+
+    @Test
+    void tildeRanges() {
+        assertContains("~1.2.3", "1.2.3", "1.2.9");
+        assertExcludes("~1.2.3", "1.3.0", "1.3.0-beta");
+        assertContains("~1.2", "1.2.0", "1.2.9");
+        assertExcludes("~1.2", "1.3.0");
+        // npm: ~1 is 1.x
+        assertContains("~1", "1.0.0", "1.5.2");
+        assertExcludes("~1", "0.9.9", "2.0.0", "2.0.0-beta");
+    }
+
+    @Test
+    void wildcardsAndAlternatives() {
+        assertContains("1.2.x", "1.2.0", "1.2.99");
+        assertExcludes("1.2.x", "1.3.0", "1.3.0-pre");
+        assertContains("*", "0.0.1", "99");
+        assertContains("1.2.3 || ^2.0.0", "1.2.3", "2.5.0");
+        assertExcludes("1.2.3 || ^2.0.0", "1.2.4", "3.0.0");
+    }
+
+    @Test
+    void mavenIntervals() {
+        assertContains("[1.2,1.3)", "1.2", "1.2.9");
+        assertExcludes("[1.2,1.3)", "1.1", "1.3");
+        assertContains("(,2.0]", "0.1", "2.0");
+        assertExcludes("(,2.0]", "2.0.1");
+        assertContains("(1.0,)", "1.0.1", "100");
+        assertExcludes("(1.0,)", "1.0");
+        assertContains("[1.2]", "1.2.0");
+        assertExcludes("[1.2]", "1.2.1");
+        assertContains("[1.0,1.1),[2.0,2.1)", "1.0.5", "2.0.5");
+        assertExcludes("[1.0,1.1),[2.0,2.1)", "1.5");
+    }
+
+    @Test
+    void rejectsMalformedRanges() {
+        assertThrows(IllegalArgumentException.class, () -> VersionRange.parse("[1.2"));
+        assertThrows(IllegalArgumentException.class, () -> VersionRange.parse("(1.2)"));
+        assertThrows(IllegalArgumentException.class, () -> VersionRange.parse(">="));
+        assertThrows(IllegalArgumentException.class, () -> VersionRange.parse("^a.b"));
+        assertThrows(IllegalArgumentException.class, () -> VersionRange.parse("a.x"));
+    }
+}
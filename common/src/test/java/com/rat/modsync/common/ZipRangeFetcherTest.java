@@ -0,0 +1,187 @@
+package com.rat.modsync.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipRangeFetcherTest {
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private byte[] zip;
+    private boolean rangesSupported = true;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/pack.zip", this::serve);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        byte[] body = zip;
+        int status = 200;
+
+        if (rangesSupported && range != null && range.startsWith("bytes=")) {
+            String spec = range.substring(6);
+            int start;
+            int end = zip.length - 1;
+            if (spec.startsWith("-")) {
+                start = Math.max(0, zip.length - Integer.parseInt(spec.substring(1)));
+            } else {
+                String[] bounds = spec.split("-");
+                start = Integer.parseInt(bounds[0]);
+                if (bounds.length > 1) end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            body = Arrays.copyOfRange(zip, start, end + 1);
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + zip.length);
+        }
+
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/pack.zip";
+    }
+
+    private ZipRangeFetcher fetcher(Map<String, String> hashes) {
+        return new ZipRangeFetcher(url(), hashes, new FileHashCache(dir));
+    }
+
+    private static byte[] jar(String content) {
+        return content.repeat(200).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(byte[] data) {
+        return HashTree.toHex(HashTree.sha256().digest(data));
+    }
+
+    private static byte[] buildZip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void fetchesOnlyWhatDiffers() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("same.jar", jar("same"));
+        entries.put("changed.jar", jar("new"));
+        entries.put("missing.jar", jar("missing"));
+        entries.put("config/readme.txt", jar("ignored"));
+        zip = buildZip(entries);
+
+        Path mods = Files.createDirectories(dir.resolve("mods"));
+        Files.write(mods.resolve("same.jar"), jar("same"));
+        Files.write(mods.resolve("changed.jar"), jar("old"));
+        Files.write(mods.resolve("extra.jar"), jar("extra"));
+
+        Map<String, String> hashes = new HashMap<>();
+        for (String name : new String[]{"same.jar", "changed.jar", "missing.jar"}) {
+            hashes.put(name, sha256(entries.get(name)));
+        }
+
+        int fetched = fetcher(hashes).syncInto(mods, dir.resolve("backup"));
+
+        assertEquals(2, fetched);
+        assertArrayEquals(jar("new"), Files.readAllBytes(mods.resolve("changed.jar")));
+        assertArrayEquals(jar("missing"), Files.readAllBytes(mods.resolve("missing.jar")));
+        assertFalse(Files.exists(mods.resolve("extra.jar")));
+        assertTrue(Files.exists(dir.resolve("backup").resolve("extra.jar")));
+        assertFalse(Files.exists(mods.resolve("config")));
+
+        // Fetched jars were recorded in the hash cache, and are now installed
+        assertEquals(0, fetcher(hashes).syncInto(mods, dir.resolve("backup")));
+        assertTrue(Files.exists(dir.resolve("file_hashes.json")));
+    }
+
+    @Test
+    void skipsJarsTheManifestDoesNotList() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("client.jar", jar("client"));
+        entries.put("server-only.jar", jar("server"));
+        zip = buildZip(entries);
+
+        Path mods = Files.createDirectories(dir.resolve("mods"));
+        Files.write(mods.resolve("server-only.jar"), jar("local"));
+
+        int fetched = fetcher(Map.of("client.jar", sha256(entries.get("client.jar"))))
+                .syncInto(mods, dir.resolve("backup"));
+
+        assertEquals(1, fetched);
+        assertArrayEquals(jar("client"), Files.readAllBytes(mods.resolve("client.jar")));
+        // Neither fetched nor backed up as an extra
+        assertArrayEquals(jar("local"), Files.readAllBytes(mods.resolve("server-only.jar")));
+    }
+
+    @Test
+    void rejectsHashMismatches() throws IOException {
+        zip = buildZip(Map.of("mod.jar", jar("tampered")));
+        Path mods = Files.createDirectories(dir.resolve("mods"));
+
+        assertThrows(IOException.class, () -> fetcher(Map.of("mod.jar", sha256(jar("expected"))))
+                .syncInto(mods, dir.resolve("backup")));
+        assertFalse(Files.exists(mods.resolve("mod.jar")));
+    }
+
+    @Test
+    void fallsBackForListedJarsWithoutAHash() throws IOException {
+        zip = buildZip(Map.of("mod.jar", jar("mod")));
+        Map<String, String> hashes = new HashMap<>();
+        hashes.put("mod.jar", null);
+
+        assertThrows(ZipRangeFetcher.WholeZipRequiredException.class,
+                () -> fetcher(hashes).syncInto(dir, dir.resolve("backup")));
+    }
+
+    @Test
+    void fallsBackWithoutRangeSupport() throws IOException {
+        zip = buildZip(Map.of("mod.jar", jar("mod")));
+        rangesSupported = false;
+
+        assertThrows(ZipRangeFetcher.WholeZipRequiredException.class,
+                () -> fetcher(Map.of("mod.jar", sha256(jar("mod")))).syncInto(dir, dir.resolve("backup")));
+        assertEquals(1, requests.get());
+    }
+}
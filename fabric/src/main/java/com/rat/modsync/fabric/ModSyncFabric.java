@@ -4,16 +4,27 @@ import com.rat.modsync.common.*;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.client.networking.v1.ClientConfigurationConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientConfigurationNetworking;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.networking.v1.PacketSender;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerConfigurationConnectionEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerConfigurationNetworking;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
-import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.ModContainer;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
+import net.minecraft.client.toast.SystemToast;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerConfigurationNetworkHandler;
+import net.minecraft.server.network.ServerPlayerConfigurationTask;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
 import net.minecraft.server.network.ServerPlayerEntity;
@@ -21,9 +32,8 @@ import io.netty.buffer.Unpooled;
 
 import java.nio.file.Path;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -31,7 +41,13 @@ public class ModSyncFabric implements ModInitializer, ClientModInitializer, Dedi
     private static final Logger LOGGER = Logger.getLogger(ModSyncFabric.class.getName());
     private static ModSyncFabric INSTANCE;
 
-    private final Map<String, PacketHandler> packetHandlers = new ConcurrentHashMap<>();
+    private final PacketHandlerRegistry packetHandlers = new PacketHandlerRegistry();
+    // Reply channel of the configuration-phase connection, used to disconnect before play starts
+    private volatile PacketSender configurationSender;
+
+    private static final int MAX_CLIENTBOUND_PAYLOAD = 1024 * 1024;
+    private static final int MAX_SERVERBOUND_PAYLOAD = 32767;
+    private static final int PAYLOAD_FRAMING_RESERVE = 1024;
 
     public static final Identifier GENERIC_PACKET_ID = Identifier.of(ModSync.MOD_ID, "generic");
 
@@ -48,57 +64,46 @@ public class ModSyncFabric implements ModInitializer, ClientModInitializer, Dedi
         LOGGER.info("ModSyncFabric: Client initialization started");
         ModSync.initialize(this);
         ModSync.handleStartup();
+
+        // A connection can close in either phase; the next server brings its own channel table
+        ClientConfigurationConnectionEvents.DISCONNECT.register((handler, client) -> ModSync.handleDisconnect());
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> ModSync.handleDisconnect());
     }
 
     @Override
     public void onInitializeServer() {
-        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
-            sendServerHandshake(handler.getPlayer());
+        // Sync while the connection is still configuring, before a player exists in the world
+        ServerConfigurationConnectionEvents.CONFIGURE.register((handler, server) -> {
+            if (ServerConfigurationNetworking.canSend(handler, GenericPayload.ID)) {
+                handler.addTask(new SyncConfigurationTask(handler, server));
+            }
         });
+        ServerConfigurationConnectionEvents.DISCONNECT.register((handler, server) ->
+                ModSync.endConfigurationSync(handler));
     }
 
     private void setupNetworking() {
         // Register the payload type
         PayloadTypeRegistry.playS2C().register(GenericPayload.ID, GenericPayload.CODEC);
         PayloadTypeRegistry.playC2S().register(GenericPayload.ID, GenericPayload.CODEC);
+        PayloadTypeRegistry.configurationS2C().register(GenericPayload.ID, GenericPayload.CODEC);
+        PayloadTypeRegistry.configurationC2S().register(GenericPayload.ID, GenericPayload.CODEC);
 
-        // Client-side handler
+        // Client-side handlers
         if (isClient()) {
-            ClientPlayNetworking.registerGlobalReceiver(GenericPayload.ID, (payload, context) -> {
-                PacketHandler handlerImpl = packetHandlers.get(payload.channel());
-                if (handlerImpl != null) {
-                    handlerImpl.handle(null, payload.data());
-                }
+            ClientPlayNetworking.registerGlobalReceiver(GenericPayload.ID, (payload, context) ->
+                    packetHandlers.dispatch(payload.channelId(), null, payload.data()));
+            ClientConfigurationNetworking.registerGlobalReceiver(GenericPayload.ID, (payload, context) -> {
+                configurationSender = context.responseSender();
+                packetHandlers.dispatch(payload.channelId(), null, payload.data());
             });
         }
 
-        // Server-side handler
-        ServerPlayNetworking.registerGlobalReceiver(GenericPayload.ID, (payload, context) -> {
-            PacketHandler handlerImpl = packetHandlers.get(payload.channel());
-            if (handlerImpl != null) {
-                handlerImpl.handle(context.player(), payload.data());
-            }
-        });
-    }
-
-    private void sendServerHandshake(ServerPlayerEntity player) {
-        LOGGER.info("Server > Checking client for ModSync");
-        List<ModInfo> serverMods = getLoadedMods();
-        ConfigManager.ServerConfig config = ModSync.getConfigManager().getServerConfig();
-        ModSync.ServerHandshake handshake = new ModSync.ServerHandshake(
-                serverMods,
-                config.isZipModeEnabled(),
-                config.getZipUrl(),
-                config.getZipHash(),
-                ModSync.VERSION
-        );
-        try {
-            String json = new com.google.gson.Gson().toJson(handshake);
-            sendToClient(player, ModSync.HANDSHAKE_CHANNEL, json.getBytes());
-            LOGGER.info("Server > Sent handshake to client");
-        } catch (Exception e) {
-            LOGGER.warning("Failed to send handshake to player: " + e.getMessage());
-        }
+        // Server-side handlers; during configuration the sender is the connection's handler
+        ServerPlayNetworking.registerGlobalReceiver(GenericPayload.ID, (payload, context) ->
+                packetHandlers.dispatch(payload.channelId(), context.player(), payload.data()));
+        ServerConfigurationNetworking.registerGlobalReceiver(GenericPayload.ID, (payload, context) ->
+                packetHandlers.dispatch(payload.channelId(), context.networkHandler(), payload.data()));
     }
 
     @Override
@@ -123,10 +128,12 @@ public class ModSyncFabric implements ModInitializer, ClientModInitializer, Dedi
 
     @Override
     public List<ModInfo> getLoadedMods() {
+        // Mods nested in an excluded jar (fabric-api's modules, say) are excluded with it
         return FabricLoader.getInstance().getAllMods().stream()
-                .filter(mod -> !mod.getMetadata().getId().equals("minecraft") &&
-                        !mod.getMetadata().getId().equals("fabricloader") &&
-                        !mod.getMetadata().getId().equals("fabric-api"))
+                .filter(mod -> {
+                    String rootId = getOutermostContainer(mod).getMetadata().getId();
+                    return !rootId.equals("minecraft") && !rootId.equals("fabricloader") && !rootId.equals("fabric-api");
+                })
                 .map(this::convertToModInfo)
                 .collect(Collectors.toList());
     }
@@ -135,37 +142,89 @@ public class ModSyncFabric implements ModInitializer, ClientModInitializer, Dedi
         String modId = container.getMetadata().getId();
         String version = container.getMetadata().getVersion().getFriendlyString();
         String name = container.getMetadata().getName();
+        // Nested mods live in their outermost container's jar, which is what gets downloaded
+        ModContainer root = getOutermostContainer(container);
         String fileName;
         try {
-            // Some mod origins (NESTED, BUILTIN, etc.) do not support getPaths()
-            if (container.getOrigin().getKind().name().equalsIgnoreCase("PATH")) {
-                fileName = container.getOrigin().getPaths().get(0).getFileName().toString();
+            // Some mod origins (BUILTIN, etc.) do not support getPaths()
+            if (root.getOrigin().getKind().name().equalsIgnoreCase("PATH")) {
+                fileName = root.getOrigin().getPaths().get(0).getFileName().toString();
             } else {
-                fileName = modId + ".jar"; // Fallback for NESTED or BUILTIN mods
+                fileName = modId + ".jar"; // Fallback for BUILTIN mods
             }
         } catch (Exception e) {
             fileName = modId + ".jar"; // Fallback on error
         }
-        return new ModInfo(modId, version, name, fileName);
+
+        ModInfo info = new ModInfo(modId, version, name, fileName).withEnvironment(getEnvironment(root));
+        return root != container ? info.withContainerId(root.getMetadata().getId()) : info;
+    }
+
+    private static ModContainer getOutermostContainer(ModContainer container) {
+        ModContainer root = container;
+        while (root.getContainingMod().isPresent()) {
+            root = root.getContainingMod().get();
+        }
+        return root;
+    }
+
+    private ModInfo.Environment getEnvironment(ModContainer container) {
+        // Builtin mods come with the loader itself
+        if (!container.getOrigin().getKind().name().equalsIgnoreCase("PATH")) {
+            return ModInfo.Environment.LIBRARY;
+        }
+        switch (container.getMetadata().getEnvironment()) {
+            case CLIENT: return ModInfo.Environment.CLIENT;
+            case SERVER: return ModInfo.Environment.SERVER;
+            default: return ModInfo.Environment.BOTH;
+        }
     }
 
     @Override
     public void sendToServer(String channel, byte[] data) {
         if (!isClient()) return;
-        LOGGER.info("Client > Sending packet to server on channel: " + channel);
-        ClientPlayNetworking.send(new GenericPayload(channel, data));
+        PacketTrace.record(PacketTrace.Kind.SEND_TO_SERVER, channel, data.length);
+        GenericPayload payload = new GenericPayload(packetHandlers.wireIdOf(channel), data);
+        if (MinecraftClient.getInstance().getNetworkHandler() != null) {
+            ClientPlayNetworking.send(payload);
+        } else {
+            // No play handler yet: still in the configuration phase
+            ClientConfigurationNetworking.send(payload);
+        }
     }
 
     @Override
     public void sendToClient(Object player, String channel, byte[] data) {
-        if (!(player instanceof ServerPlayerEntity)) return;
-        LOGGER.info("Server > Sending packet to client on channel: " + channel);
-        ServerPlayNetworking.send((ServerPlayerEntity) player, new GenericPayload(channel, data));
+        PacketTrace.record(PacketTrace.Kind.SEND_TO_CLIENT, channel, data.length);
+        // The server's table is authoritative, so local IDs are already the client's wire IDs
+        GenericPayload payload = new GenericPayload(packetHandlers.wireIdOf(channel), data);
+        if (player instanceof ServerPlayerEntity serverPlayer) {
+            ServerPlayNetworking.send(serverPlayer, payload);
+        } else if (player instanceof ServerConfigurationNetworkHandler handler) {
+            ServerConfigurationNetworking.send(handler, payload);
+        }
+    }
+
+    @Override
+    public int getMaxClientboundPayloadSize() {
+        // Vanilla caps clientbound custom payloads at 1 MiB; leave room for our channel framing
+        return MAX_CLIENTBOUND_PAYLOAD - PAYLOAD_FRAMING_RESERVE;
+    }
+
+    @Override
+    public int getMaxServerboundPayloadSize() {
+        // Vanilla caps serverbound custom payloads at 32 KiB
+        return MAX_SERVERBOUND_PAYLOAD - PAYLOAD_FRAMING_RESERVE;
     }
 
     @Override
     public void registerPacketHandler(String channel, PacketHandler handler) {
-        packetHandlers.put(channel, handler);
+        packetHandlers.register(channel, handler);
+    }
+
+    @Override
+    public PacketHandlerRegistry getPacketHandlerRegistry() {
+        return packetHandlers;
     }
 
     @Override
@@ -178,9 +237,15 @@ public class ModSyncFabric implements ModInitializer, ClientModInitializer, Dedi
     public void showNotification(String title, String message, NotificationType type) {
         if (!isClient()) return;
         MinecraftClient mc = MinecraftClient.getInstance();
-        if (mc.player != null) {
-            mc.player.sendMessage(Text.literal("[" + title + "] " + message), false);
-        }
+        mc.execute(() -> {
+            if (mc.player != null) {
+                mc.player.sendMessage(Text.literal("[" + title + "] " + message), false);
+            } else {
+                // No player while the connection is configuring, which is when syncing happens
+                SystemToast.add(mc.getToastManager(), SystemToast.Type.PERIODIC_NOTIFICATION,
+                        Text.literal(title), Text.literal(message));
+            }
+        });
     }
 
     @Override
@@ -221,6 +286,64 @@ public class ModSyncFabric implements ModInitializer, ClientModInitializer, Dedi
                 showNotification("ModSync", "Reconnecting to " + serverAddress, NotificationType.INFO));
     }
 
+    @Override
+    public String getCurrentServerAddress() {
+        if (!isClient()) return null;
+        ServerInfo server = MinecraftClient.getInstance().getCurrentServerEntry();
+        return server != null ? server.address : null;
+    }
+
+    @Override
+    public void disconnectFromServer(String reason) {
+        if (!isClient()) return;
+        MinecraftClient client = MinecraftClient.getInstance();
+        client.execute(() -> {
+            Text message = Text.literal("[ModSync] " + reason);
+            if (client.getNetworkHandler() != null) {
+                client.getNetworkHandler().getConnection().disconnect(message);
+            } else if (configurationSender != null) {
+                configurationSender.disconnect(message);
+            }
+        });
+    }
+
+    @Override
+    public void disconnectClient(Object connection, String reason) {
+        Text message = Text.literal(reason);
+        if (connection instanceof ServerPlayerEntity player) {
+            player.networkHandler.disconnect(message);
+        } else if (connection instanceof ServerConfigurationNetworkHandler handler) {
+            handler.disconnect(message);
+        }
+    }
+
+    /**
+     * Holds a configuring connection until ModSync's handshake has been answered
+     */
+    private static class SyncConfigurationTask implements ServerPlayerConfigurationTask {
+        private static final ServerPlayerConfigurationTask.Key KEY = new ServerPlayerConfigurationTask.Key(ModSync.MOD_ID + ":sync");
+
+        private final ServerConfigurationNetworkHandler handler;
+        private final MinecraftServer server;
+
+        SyncConfigurationTask(ServerConfigurationNetworkHandler handler, MinecraftServer server) {
+            this.handler = handler;
+            this.server = server;
+        }
+
+        @Override
+        public void sendPacket(Consumer<Packet<?>> sender) {
+            // Goes out through the transport, which fragments large handshakes
+            ModSync.beginConfigurationSync(handler)
+                    .thenRun(() -> server.execute(() -> handler.completeTask(KEY)));
+        }
+
+        @Override
+        public ServerPlayerConfigurationTask.Key getKey() {
+            return KEY;
+        }
+    }
+
     /**
      * Custom payload for Fabric networking
      */
@@ -228,22 +351,22 @@ public class ModSyncFabric implements ModInitializer, ClientModInitializer, Dedi
         public static final CustomPayload.Id<GenericPayload> ID = new CustomPayload.Id<>(GENERIC_PACKET_ID);
         public static final PacketCodec<PacketByteBuf, GenericPayload> CODEC = PacketCodec.of(
                 (value, buf) -> {
-                    buf.writeString(value.channel);
+                    buf.writeVarInt(value.channelId);
                     buf.writeByteArray(value.data);
                 },
-                (buf) -> new GenericPayload(buf.readString(), buf.readByteArray())
+                (buf) -> new GenericPayload(buf.readVarInt(), buf.readByteArray())
         );
 
-        private final String channel;
+        private final int channelId;
         private final byte[] data;
 
-        public GenericPayload(String channel, byte[] data) {
-            this.channel = channel;
+        public GenericPayload(int channelId, byte[] data) {
+            this.channelId = channelId;
             this.data = data;
         }
 
-        public String channel() {
-            return channel;
+        public int channelId() {
+            return channelId;
         }
 
         public byte[] data() {
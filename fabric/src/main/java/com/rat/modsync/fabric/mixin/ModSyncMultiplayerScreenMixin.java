@@ -1,9 +1,30 @@
 package com.rat.modsync.fabric.mixin;
 
+import com.rat.modsync.common.ModSync;
+import net.minecraft.client.gui.screen.multiplayer.MultiplayerScreen;
+import net.minecraft.client.option.ServerList;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
-// This mixin is disabled. Update the target class when ready to re-enable.
-@Mixin(Object.class)
+import java.util.ArrayList;
+import java.util.List;
+
+// Probe the saved servers for ModSync whenever the multiplayer screen is (re)built
+@Mixin(MultiplayerScreen.class)
 public class ModSyncMultiplayerScreenMixin {
-    // Mixin logic disabled
+    @Shadow
+    private ServerList serverList;
+
+    @Inject(method = "init", at = @At("TAIL"))
+    private void modsync$probeServers(CallbackInfo ci) {
+        List<String> addresses = new ArrayList<>(serverList.size());
+        for (int i = 0; i < serverList.size(); i++) {
+            addresses.add(serverList.get(i).address);
+        }
+        // Fresh results come from the cache, so re-inits on resize cost nothing
+        ModSync.probeServers(addresses);
+    }
 }
@@ -1,18 +0,0 @@
-// This mixin is disabled because ServerListEntry does not exist in Yarn mappings for 1.21.1.
-// Remove or update this file once the correct target class is identified.
-// package com.rat.modsync.fabric.mixin;
-//
-// import org.spongepowered.asm.mixin.Mixin;
-// import org.spongepowered.asm.mixin.gen.Accessor;
-// import org.spongepowered.asm.mixin.Mutable;
-// import net.minecraft.client.gui.screen.multiplayer.ServerListEntry;
-//
-// @Mixin(ServerListEntry.class)
-// public interface ModSyncServerListEntryAccessor {
-//     @Mutable
-//     @Accessor("modsyncMissingMods")
-//     void setModsyncMissingMods(boolean missing);
-//     @Accessor("modsyncMissingMods")
-//     boolean getModsyncMissingMods();
-// }
-
@@ -1,6 +1,82 @@
 package com.rat.modsync.fabric.mixin;
 
-// This mixin is disabled because ServerListEntry does not exist in Yarn mappings for 1.21.1.
-// Remove or update this file once the correct target class is identified.
+import com.rat.modsync.common.ModSync;
+import com.rat.modsync.common.ServerStatusProbe;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.screen.multiplayer.MultiplayerServerListWidget;
+import net.minecraft.client.network.ServerInfo;
+import net.minecraft.text.Text;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+// Mark each server list entry with what ModSync knows about it
+@Mixin(MultiplayerServerListWidget.ServerEntry.class)
 public class ModSyncServerListEntryMixin {
+    @Unique private static final int COMPATIBLE_COLOR = 0x55FF55;
+    @Unique private static final int MISSING_COLOR = 0xFFAA00;
+
+    @Shadow @Final private MinecraftClient client;
+    @Shadow @Final private ServerInfo server;
+
+    // The MOTD the badge was worked out for; a new ping replaces it
+    @Unique private Text modsync$checkedLabel;
+    @Unique private Text modsync$badge;
+    @Unique private int modsync$badgeColor;
+
+    @Inject(method = "render", at = @At("TAIL"))
+    private void modsync$renderBadge(DrawContext context, int index, int y, int x, int entryWidth, int entryHeight,
+                                     int mouseX, int mouseY, boolean hovered, float tickDelta, CallbackInfo ci) {
+        if (server.label != modsync$checkedLabel) {
+            modsync$checkedLabel = server.label;
+            modsync$updateBadge();
+        }
+        if (modsync$badge != null) {
+            int width = client.textRenderer.getWidth(modsync$badge);
+            context.drawTextWithShadow(client.textRenderer, modsync$badge, x + entryWidth - width - 5,
+                    y + entryHeight - client.textRenderer.fontHeight, modsync$badgeColor);
+        }
+    }
+
+    @Unique
+    private void modsync$updateBadge() {
+        String payload = server.label != null ? modsync$findPayload(server.label) : null;
+        if (payload != null) {
+            int missing = ModSync.getModListManager().checkStatusPayload(payload);
+            modsync$badge = Text.literal(missing > 0 ? "ModSync: " + missing + " missing" : "ModSync");
+            modsync$badgeColor = missing > 0 ? MISSING_COLOR : COMPATIBLE_COLOR;
+        } else if (ModSync.isServerCompatible(server.address)) {
+            // No payload in this ping (an older ModSync server, say), but a probe or a join found ModSync
+            modsync$badge = Text.literal("ModSync");
+            modsync$badgeColor = COMPATIBLE_COLOR;
+        } else {
+            modsync$badge = null;
+        }
+    }
+
+    @Unique
+    private static String modsync$findPayload(Text label) {
+        String payload = modsync$findInsertion(label);
+        if (payload != null) return payload;
+        // Servers from before the payload moved out of sight put it in the MOTD text
+        String plain = label.getString();
+        int idx = plain.indexOf(ServerStatusProbe.MOTD_MARKER);
+        return idx >= 0 ? plain.substring(idx + ServerStatusProbe.MOTD_MARKER.length()).trim() : null;
+    }
+
+    @Unique
+    private static String modsync$findInsertion(Text text) {
+        String payload = ServerStatusProbe.payloadFromInsertion(text.getStyle().getInsertion());
+        if (payload != null) return payload;
+        for (Text sibling : text.getSiblings()) {
+            payload = modsync$findInsertion(sibling);
+            if (payload != null) return payload;
+        }
+        return null;
+    }
 }
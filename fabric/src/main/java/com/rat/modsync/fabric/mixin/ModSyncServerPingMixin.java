@@ -1,7 +1,21 @@
 package com.rat.modsync.fabric.mixin;
 
-// This mixin is disabled because the injection point and MOTD handling are invalid for Minecraft 1.21.1.
-// Update the method name and MOTD logic once the correct mappings are available.
+import com.llamalad7.mixinextras.injector.ModifyExpressionValue;
+import com.rat.modsync.common.ModSync;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.text.Text;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+// Carry the ModSync status payload in the status response without changing what players see
+@Mixin(MinecraftServer.class)
 public class ModSyncServerPingMixin {
-    // Mixin logic disabled
+    @ModifyExpressionValue(method = "createMetadata",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/text/Text;of(Ljava/lang/String;)Lnet/minecraft/text/Text;"))
+    private Text modsync$appendStatusPayload(Text description) {
+        String insertion = ModSync.getStatusInsertion();
+        if (insertion == null) return description;
+        // An empty component renders as nothing; its insertion is only read by ModSync clients
+        return description.copy().append(Text.literal("").styled(style -> style.withInsertion(insertion)));
+    }
 }
@@ -0,0 +1,237 @@
+package com.rat.modsync.forge;
+
+import com.rat.modsync.common.ModSync;
+import com.rat.modsync.common.PacketHandlerRegistry;
+import net.minecraft.network.Connection;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.network.CustomPayloadEvent;
+import net.minecraftforge.network.ChannelBuilder;
+import net.minecraftforge.network.PacketDistributor;
+import net.minecraftforge.network.SimpleChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Forge implementation of the ModSync packet transport.
+ *
+ * All ModSync traffic travels on one Forge channel as {@link BatchPayload}s, each carrying one
+ * or more (channel ID, data) frames that are dispatched through the {@link PacketHandlerRegistry}.
+ * Small control messages are queued per destination and flushed together once per tick; anything
+ * at or above {@link #STREAM_THRESHOLD} (e.g. download chunks) flushes the queue and goes out
+ * immediately, so bulk transfers are not held back by the tick rate and ordering is preserved.
+ *
+ * On the server a destination is a {@link ServerPlayer}, or the {@link Connection} itself while
+ * it is still configuring and has no player yet.
+ */
+public class ForgeTransport {
+    private static final int STREAM_THRESHOLD = 16 * 1024;
+    // Per-frame overhead: two varints (channel ID, data length)
+    private static final int FRAME_OVERHEAD = 10;
+    // Key for the client's single destination
+    private static final Object SERVER = new Object();
+
+    private final PacketHandlerRegistry registry;
+    private final int maxClientboundBatch;
+    private final int maxServerboundBatch;
+    private final SimpleChannel channel;
+    private final Map<Object, PendingBatch> pending = new ConcurrentHashMap<>();
+    // Client side: the connection ModSync last heard from the server on, in whichever phase
+    private final AtomicReference<Connection> serverConnection = new AtomicReference<>();
+
+    public ForgeTransport(PacketHandlerRegistry registry, int maxClientboundBatch, int maxServerboundBatch) {
+        this.registry = registry;
+        this.maxClientboundBatch = maxClientboundBatch;
+        this.maxServerboundBatch = maxServerboundBatch;
+        this.channel = ChannelBuilder.named(ResourceLocation.fromNamespaceAndPath(ModSync.MOD_ID, "main"))
+                .networkProtocolVersion(1)
+                .optional()
+                .simpleChannel();
+
+        channel.messageBuilder(BatchPayload.class)
+                .encoder(BatchPayload::encode)
+                .decoder(BatchPayload::decode)
+                .consumerMainThread(this::handle)
+                .add();
+    }
+
+    public void sendToServer(String channelName, byte[] data) {
+        send(SERVER, registry.wireIdOf(channelName), data, maxServerboundBatch);
+    }
+
+    public void sendToClient(Object destination, String channelName, byte[] data) {
+        send(destination, registry.wireIdOf(channelName), data, maxClientboundBatch);
+    }
+
+    /**
+     * Client side: the connection to the server, or null if ModSync hasn't heard from one. Unlike
+     * the play listener this also exists during the configuration phase.
+     */
+    public Connection getServerConnection() {
+        return serverConnection.get();
+    }
+
+    /**
+     * Client side: forget the server connection if it is still {@code connection}. Returns
+     * whether it was.
+     */
+    public boolean forgetServerConnection(Connection connection) {
+        return serverConnection.compareAndSet(connection, null);
+    }
+
+    /**
+     * Whether the client on the other end of a connection has ModSync's channel
+     */
+    public boolean isRemotePresent(Connection connection) {
+        return channel.isRemotePresent(connection);
+    }
+
+    private void send(Object destination, int channelId, byte[] data, int maxBatch) {
+        if (data.length >= STREAM_THRESHOLD) {
+            // Keep ordering: anything queued for this destination goes first
+            flush(destination);
+            deliver(destination, new BatchPayload(List.of(new Frame(channelId, data))));
+            return;
+        }
+
+        PendingBatch batch = pending.computeIfAbsent(destination, d -> new PendingBatch());
+        List<Frame> overflow = batch.add(new Frame(channelId, data), maxBatch);
+        if (overflow != null) {
+            deliver(destination, new BatchPayload(overflow));
+        }
+    }
+
+    /**
+     * Send everything queued, one payload per destination. Called at the end of each tick.
+     */
+    public void flushAll() {
+        for (Object destination : pending.keySet()) {
+            flush(destination);
+        }
+    }
+
+    /**
+     * Drop anything still queued for a player that has left
+     */
+    public void forget(ServerPlayer player) {
+        pending.remove(player);
+    }
+
+    private void flush(Object destination) {
+        PendingBatch batch = pending.get(destination);
+        if (batch == null) return;
+
+        // A connection that closed while configuring never gets a logout event
+        if (destination instanceof Connection connection && !connection.isConnected()) {
+            pending.remove(destination);
+            return;
+        }
+
+        List<Frame> frames = batch.drain();
+        if (!frames.isEmpty()) {
+            deliver(destination, new BatchPayload(frames));
+        }
+    }
+
+    private void deliver(Object destination, BatchPayload payload) {
+        if (destination == SERVER) {
+            // The SERVER distributor goes through the play listener, which configuration lacks
+            Connection connection = serverConnection.get();
+            if (connection != null) {
+                channel.send(payload, connection);
+            } else {
+                channel.send(payload, PacketDistributor.SERVER.noArg());
+            }
+        } else if (destination instanceof Connection connection) {
+            channel.send(payload, connection);
+        } else {
+            channel.send(payload, PacketDistributor.PLAYER.with((ServerPlayer) destination));
+        }
+    }
+
+    private void handle(BatchPayload payload, CustomPayloadEvent.Context context) {
+        // Handlers get no sender for packets from the server, and the connection for a client still configuring
+        Object sender = null;
+        if (context.isServerSide()) {
+            sender = context.getSender() != null ? context.getSender() : context.getConnection();
+        } else {
+            serverConnection.set(context.getConnection());
+        }
+        for (Frame frame : payload.frames) {
+            registry.dispatch(frame.channelId, sender, frame.data);
+        }
+        context.setPacketHandled(true);
+    }
+
+    /**
+     * Frames waiting for the next flush to one destination
+     */
+    private static class PendingBatch {
+        private List<Frame> frames = new ArrayList<>();
+        private int size;
+
+        /**
+         * Queue a frame; if it would overflow one payload, return the frames queued so far to send now
+         */
+        synchronized List<Frame> add(Frame frame, int maxBatch) {
+            List<Frame> overflow = null;
+            int frameSize = frame.data.length + FRAME_OVERHEAD;
+            if (!frames.isEmpty() && size + frameSize > maxBatch) {
+                overflow = drain();
+            }
+            frames.add(frame);
+            size += frameSize;
+            return overflow;
+        }
+
+        synchronized List<Frame> drain() {
+            List<Frame> drained = frames;
+            frames = new ArrayList<>();
+            size = 0;
+            return drained;
+        }
+    }
+
+    private static class Frame {
+        private final int channelId;
+        private final byte[] data;
+
+        Frame(int channelId, byte[] data) {
+            this.channelId = channelId;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Wire format: varint frame count, then per frame a varint channel ID and a length-prefixed byte array
+     */
+    public static class BatchPayload {
+        private final List<Frame> frames;
+
+        BatchPayload(List<Frame> frames) {
+            this.frames = frames;
+        }
+
+        public void encode(FriendlyByteBuf buf) {
+            buf.writeVarInt(frames.size());
+            for (Frame frame : frames) {
+                buf.writeVarInt(frame.channelId);
+                buf.writeByteArray(frame.data);
+            }
+        }
+
+        public static BatchPayload decode(FriendlyByteBuf buf) {
+            int count = buf.readVarInt();
+            List<Frame> frames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                frames.add(new Frame(buf.readVarInt(), buf.readByteArray()));
+            }
+            return new BatchPayload(frames);
+        }
+    }
+}
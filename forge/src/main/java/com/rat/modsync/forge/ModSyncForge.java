@@ -1,18 +1,28 @@
 package com.rat.modsync.forge;
 
 import com.rat.modsync.common.*;
+import com.rat.modsync.forge.mixin.ModSyncConfigurationListenerAccessor;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.components.toasts.SystemToast;
 import net.minecraft.client.gui.screens.ConnectScreen;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.client.gui.screens.multiplayer.JoinMultiplayerScreen;
 import net.minecraft.client.multiplayer.ServerData;
+import net.minecraft.client.multiplayer.ServerList;
+import net.minecraft.network.Connection;
 import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.network.ConfigurationTask;
+import net.minecraft.server.network.ServerConfigurationPacketListenerImpl;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import net.minecraftforge.client.event.ScreenEvent;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.network.GatherLoginConfigurationTasksEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModContainer;
 import net.minecraftforge.fml.ModList;
@@ -20,13 +30,16 @@ import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+import net.minecraftforge.fml.loading.FMLEnvironment;
 import net.minecraftforge.forgespi.language.IModInfo;
+import net.minecraftforge.server.ServerLifecycleHooks;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -34,10 +47,19 @@ import java.util.stream.Collectors;
 public class ModSyncForge implements Platform {
     private static final Logger LOGGER = Logger.getLogger(ModSyncForge.class.getName());
     private static ModSyncForge INSTANCE;
+    private static final int MAX_CLIENTBOUND_PAYLOAD = 1024 * 1024;
+    private static final int MAX_SERVERBOUND_PAYLOAD = 32767;
+    private static final int PAYLOAD_FRAMING_RESERVE = 1024;
+
+    private final PacketHandlerRegistry packetHandlers = new PacketHandlerRegistry();
+    private final ForgeTransport transport;
 
     public ModSyncForge() {
         INSTANCE = this;
 
+        // Networking channels must exist before registries freeze, so build the transport here
+        transport = new ForgeTransport(packetHandlers, getMaxClientboundPayloadSize(), getMaxServerboundPayloadSize());
+
         // Register event bus
         MinecraftForge.EVENT_BUS.register(this);
         FMLJavaModLoadingContext.get().getModEventBus().addListener(this::commonSetup);
@@ -69,7 +91,8 @@ public class ModSyncForge implements Platform {
 
     @Override
     public boolean isClient() {
-        return Minecraft.getInstance() != null;
+        // Don't touch Minecraft here: the class does not exist on a dedicated server
+        return FMLEnvironment.dist == Dist.CLIENT;
     }
 
     @Override
@@ -95,30 +118,60 @@ public class ModSyncForge implements Platform {
         String version = modInfo.getVersion().toString();
         String name = modInfo.getDisplayName();
         String fileName = modInfo.getOwningFile().getFile().getFileName().toString();
-        return new ModInfo(modId, version, name, fileName);
+        return new ModInfo(modId, version, name, fileName).withEnvironment(getEnvironment(modInfo));
+    }
+
+    private ModInfo.Environment getEnvironment(IModInfo modInfo) {
+        // Jar-in-jar mods are loaded from outside the mods directory, inside their container
+        Path file = modInfo.getOwningFile().getFile().getFilePath();
+        Path parent = file.getParent();
+        if (parent == null || !parent.toAbsolutePath().normalize().equals(getModsDirectory().toAbsolutePath().normalize())) {
+            return ModInfo.Environment.LIBRARY;
+        }
+
+        // mods.toml displayTest: clients don't need a mod that ignores the server's version
+        String displayTest = modInfo.getConfig().<String>getConfigElement("displayTest").orElse("MATCH_VERSION");
+        if (displayTest.equals("IGNORE_SERVER_VERSION") || displayTest.equals("IGNORE_ALL_VERSION")) {
+            return ModInfo.Environment.SERVER;
+        }
+        return ModInfo.Environment.BOTH;
     }
 
     @Override
     public void sendToServer(String channel, byte[] data) {
         if (!isClient()) return;
-        LOGGER.info("Client > Sending packet to server on channel: " + channel);
-        // TODO: Implement networking - Forge's networking API has changed significantly
-        // This will need to use the new packet system
-        LOGGER.info("Sending packet to server on channel: " + channel);
+        PacketTrace.record(PacketTrace.Kind.SEND_TO_SERVER, channel, data.length);
+        transport.sendToServer(channel, data);
     }
 
     @Override
     public void sendToClient(Object player, String channel, byte[] data) {
-        if (!(player instanceof ServerPlayer)) return;
-        LOGGER.info("Server > Sending packet to client on channel: " + channel);
-        // TODO: Implement networking - Forge's networking API has changed significantly
-        LOGGER.info("Sending packet to client on channel: " + channel);
+        // A configuring client has a connection but no player yet
+        if (!(player instanceof ServerPlayer) && !(player instanceof Connection)) return;
+        PacketTrace.record(PacketTrace.Kind.SEND_TO_CLIENT, channel, data.length);
+        transport.sendToClient(player, channel, data);
+    }
+
+    @Override
+    public int getMaxClientboundPayloadSize() {
+        // Vanilla caps clientbound custom payloads at 1 MiB; leave room for our channel framing
+        return MAX_CLIENTBOUND_PAYLOAD - PAYLOAD_FRAMING_RESERVE;
+    }
+
+    @Override
+    public int getMaxServerboundPayloadSize() {
+        // Vanilla caps serverbound custom payloads at 32 KiB
+        return MAX_SERVERBOUND_PAYLOAD - PAYLOAD_FRAMING_RESERVE;
     }
 
     @Override
     public void registerPacketHandler(String channel, PacketHandler handler) {
-        // Store handlers for when networking is implemented
-        PacketHandlerRegistry.register(channel, handler);
+        packetHandlers.register(channel, handler);
+    }
+
+    @Override
+    public PacketHandlerRegistry getPacketHandlerRegistry() {
+        return packetHandlers;
     }
 
     @Override
@@ -135,11 +188,17 @@ public class ModSyncForge implements Platform {
     @OnlyIn(Dist.CLIENT)
     public void showNotification(String title, String message, NotificationType type) {
         Minecraft mc = Minecraft.getInstance();
-        if (mc.player != null) {
-            // Show as chat message (simple implementation)
-            String prefix = getNotificationPrefix(type);
-            mc.player.sendSystemMessage(Component.literal(prefix + "[" + title + "] " + message));
-        }
+        mc.execute(() -> {
+            if (mc.player != null) {
+                // Show as chat message (simple implementation)
+                String prefix = getNotificationPrefix(type);
+                mc.player.sendSystemMessage(Component.literal(prefix + "[" + title + "] " + message));
+            } else {
+                // No player while configuring or on the title screen, so use a toast
+                SystemToast.add(mc.getToasts(), SystemToast.SystemToastId.PERIODIC_NOTIFICATION,
+                        Component.literal(title), Component.literal(message));
+            }
+        });
     }
 
     private String getNotificationPrefix(NotificationType type) {
@@ -199,63 +258,117 @@ public class ModSyncForge implements Platform {
         });
     }
 
+    @Override
+    public String getCurrentServerAddress() {
+        if (!isClient()) return null;
+        ServerData server = Minecraft.getInstance().getCurrentServer();
+        return server != null ? server.ip : null;
+    }
+
+    @Override
+    public void disconnectFromServer(String reason) {
+        if (!isClient()) return;
+        Minecraft minecraft = Minecraft.getInstance();
+        minecraft.execute(() -> {
+            Component message = Component.literal("[ModSync] " + reason);
+            if (minecraft.getConnection() != null) {
+                minecraft.getConnection().getConnection().disconnect(message);
+            } else if (transport.getServerConnection() != null) {
+                // Still configuring: there is no play listener yet
+                transport.getServerConnection().disconnect(message);
+            }
+        });
+    }
+
+    @Override
+    public void disconnectClient(Object connection, String reason) {
+        Component message = Component.literal(reason);
+        if (connection instanceof ServerPlayer player) {
+            player.connection.disconnect(message);
+        } else if (connection instanceof Connection configuring) {
+            configuring.disconnect(message);
+        }
+    }
+
     @SubscribeEvent
     @OnlyIn(Dist.CLIENT)
     public void onScreenInit(ScreenEvent.Init.Post event) {
         Screen screen = event.getScreen();
 
-        if (screen instanceof JoinMultiplayerScreen) {
-            // TODO: Add ModSync compatibility indicators to server list
-            // This would require rendering overlay icons next to server entries
+        if (screen instanceof JoinMultiplayerScreen multiplayer) {
+            // Probe the saved servers for ModSync; fresh results come from the cache
+            ServerList servers = multiplayer.getServers();
+            List<String> addresses = new ArrayList<>(servers.size());
+            for (int i = 0; i < servers.size(); i++) {
+                addresses.add(servers.get(i).ip);
+            }
+            ModSync.probeServers(addresses);
         }
     }
 
+    // Sync while the connection is still configuring, before a player exists in the world
     @SubscribeEvent
-    public void onPlayerJoin(PlayerEvent.PlayerLoggedInEvent event) {
+    public void onGatherConfigurationTasks(GatherLoginConfigurationTasksEvent event) {
         if (!isServer()) return;
 
-        // Send handshake to joining player
-        ServerPlayer player = (ServerPlayer) event.getEntity();
-        LOGGER.info("Player joined: " + player.getName().getString());
-        sendServerHandshake(player);
-    }
-
-    private void sendServerHandshake(ServerPlayer player) {
-        LOGGER.info("Server > Checking client for ModSync");
-        List<ModInfo> serverMods = getLoadedMods();
-        ConfigManager.ServerConfig config = ModSync.getConfigManager().getServerConfig();
-        ModSync.ServerHandshake handshake = new ModSync.ServerHandshake(
-                serverMods,
-                config.isZipModeEnabled(),
-                config.getZipUrl(),
-                config.getZipHash(),
-                ModSync.VERSION
-        );
-        try {
-            String json = new com.google.gson.Gson().toJson(handshake);
-            sendToClient(player, ModSync.HANDSHAKE_CHANNEL, json.getBytes());
-            LOGGER.info("Server > Sent handshake to client");
-        } catch (Exception e) {
-            LOGGER.warning("Failed to send handshake to player: " + e.getMessage());
+        Connection connection = event.getConnection();
+        if (transport.isRemotePresent(connection)) {
+            event.addTask(new SyncConfigurationTask(connection));
+        }
+    }
+
+    @SubscribeEvent
+    public void onPlayerLeave(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (event.getEntity() instanceof ServerPlayer player) {
+            transport.forget(player);
+        }
+    }
+
+    // Coalesced control messages go out once per tick
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent.Post event) {
+        transport.flushAll();
+    }
+
+    @SubscribeEvent
+    @OnlyIn(Dist.CLIENT)
+    public void onClientTick(TickEvent.ClientTickEvent.Post event) {
+        transport.flushAll();
+
+        // LoggingOut needs a player, so it misses connections closed during configuration; watch
+        // the connection itself, which covers both phases
+        Connection connection = transport.getServerConnection();
+        if (connection != null && !connection.isConnected() && transport.forgetServerConnection(connection)) {
+            ModSync.handleDisconnect();
         }
     }
 
     /**
-     * Simple registry for packet handlers until networking is fully implemented
+     * Holds a configuring connection until ModSync's handshake has been answered
      */
-    private static class PacketHandlerRegistry {
-        private static final ConcurrentHashMap<String, PacketHandler> handlers = new ConcurrentHashMap<>();
+    private static class SyncConfigurationTask implements ConfigurationTask {
+        private static final ConfigurationTask.Type TYPE = new ConfigurationTask.Type(ModSync.MOD_ID + ":sync");
+
+        private final Connection connection;
 
-        public static void register(String channel, PacketHandler handler) {
-            handlers.put(channel, handler);
+        SyncConfigurationTask(Connection connection) {
+            this.connection = connection;
         }
 
-        public static PacketHandler get(String channel) {
-            return handlers.get(channel);
+        @Override
+        public void start(Consumer<Packet<?>> sender) {
+            MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+            // Goes out through the transport, which fragments large handshakes
+            ModSync.beginConfigurationSync(connection).thenRun(() -> server.execute(() -> {
+                if (connection.getPacketListener() instanceof ServerConfigurationPacketListenerImpl listener) {
+                    ((ModSyncConfigurationListenerAccessor) listener).modsync$finishCurrentTask(TYPE);
+                }
+            }));
         }
 
-        public static void clear() {
-            handlers.clear();
+        @Override
+        public ConfigurationTask.Type type() {
+            return TYPE;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package com.rat.modsync.forge.mixin;
+
+import net.minecraft.server.network.ConfigurationTask;
+import net.minecraft.server.network.ServerConfigurationPacketListenerImpl;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+// Lets ModSync's configuration task finish itself once the client has answered
+@Mixin(ServerConfigurationPacketListenerImpl.class)
+public interface ModSyncConfigurationListenerAccessor {
+    @Invoker("finishCurrentTask")
+    void modsync$finishCurrentTask(ConfigurationTask.Type type);
+}
@@ -0,0 +1,82 @@
+package com.rat.modsync.forge.mixin;
+
+import com.rat.modsync.common.ModSync;
+import com.rat.modsync.common.ServerStatusProbe;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.client.gui.screens.multiplayer.ServerSelectionList;
+import net.minecraft.client.multiplayer.ServerData;
+import net.minecraft.network.chat.Component;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+// Mark each server list entry with what ModSync knows about it
+@Mixin(ServerSelectionList.OnlineServerEntry.class)
+public class ModSyncServerEntryMixin {
+    @Unique private static final int COMPATIBLE_COLOR = 0x55FF55;
+    @Unique private static final int MISSING_COLOR = 0xFFAA00;
+
+    @Shadow @Final private Minecraft minecraft;
+    @Shadow @Final private ServerData serverData;
+
+    // The MOTD the badge was worked out for; a new ping replaces it
+    @Unique private Component modsync$checkedMotd;
+    @Unique private Component modsync$badge;
+    @Unique private int modsync$badgeColor;
+
+    @Inject(method = "render", at = @At("TAIL"))
+    private void modsync$renderBadge(GuiGraphics graphics, int index, int top, int left, int width, int height,
+                                     int mouseX, int mouseY, boolean hovering, float partialTick, CallbackInfo ci) {
+        if (serverData.motd != modsync$checkedMotd) {
+            modsync$checkedMotd = serverData.motd;
+            modsync$updateBadge();
+        }
+        if (modsync$badge != null) {
+            int badgeWidth = minecraft.font.width(modsync$badge);
+            graphics.drawString(minecraft.font, modsync$badge, left + width - badgeWidth - 5,
+                    top + height - minecraft.font.lineHeight, modsync$badgeColor);
+        }
+    }
+
+    @Unique
+    private void modsync$updateBadge() {
+        String payload = serverData.motd != null ? modsync$findPayload(serverData.motd) : null;
+        if (payload != null) {
+            int missing = ModSync.getModListManager().checkStatusPayload(payload);
+            modsync$badge = Component.literal(missing > 0 ? "ModSync: " + missing + " missing" : "ModSync");
+            modsync$badgeColor = missing > 0 ? MISSING_COLOR : COMPATIBLE_COLOR;
+        } else if (ModSync.isServerCompatible(serverData.ip)) {
+            // No payload in this ping (an older ModSync server, say), but a probe or a join found ModSync
+            modsync$badge = Component.literal("ModSync");
+            modsync$badgeColor = COMPATIBLE_COLOR;
+        } else {
+            modsync$badge = null;
+        }
+    }
+
+    @Unique
+    private static String modsync$findPayload(Component motd) {
+        String payload = modsync$findInsertion(motd);
+        if (payload != null) return payload;
+        // Servers from before the payload moved out of sight put it in the MOTD text
+        String plain = motd.getString();
+        int idx = plain.indexOf(ServerStatusProbe.MOTD_MARKER);
+        return idx >= 0 ? plain.substring(idx + ServerStatusProbe.MOTD_MARKER.length()).trim() : null;
+    }
+
+    @Unique
+    private static String modsync$findInsertion(Component component) {
+        String payload = ServerStatusProbe.payloadFromInsertion(component.getStyle().getInsertion());
+        if (payload != null) return payload;
+        for (Component sibling : component.getSiblings()) {
+            payload = modsync$findInsertion(sibling);
+            if (payload != null) return payload;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,21 @@
+package com.rat.modsync.forge.mixin;
+
+import com.llamalad7.mixinextras.injector.ModifyExpressionValue;
+import com.rat.modsync.common.ModSync;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+// Carry the ModSync status payload in the status response without changing what players see
+@Mixin(MinecraftServer.class)
+public class ModSyncServerStatusMixin {
+    @ModifyExpressionValue(method = "buildServerStatus",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/network/chat/Component;nullToEmpty(Ljava/lang/String;)Lnet/minecraft/network/chat/Component;"))
+    private Component modsync$appendStatusPayload(Component description) {
+        String insertion = ModSync.getStatusInsertion();
+        if (insertion == null) return description;
+        // An empty component renders as nothing; its insertion is only read by ModSync clients
+        return description.copy().append(Component.literal("").withStyle(style -> style.withInsertion(insertion)));
+    }
+}